@@ -377,8 +377,10 @@ defn (fn defn [&form &env name & fdecl]
   ([a b] [a b])
   ([a b c] [a b c])
   ([a b c d] [a b c d])
-  ([a b c d & args]
-     (. clojure.lang.LazilyPersistentVector (create (cons a (cons b (cons c (cons d args))))))))
+  ([a b c d e] [a b c d e])
+  ([a b c d e f] [a b c d e f])
+  ([a b c d e f & args]
+     (. clojure.lang.LazilyPersistentVector (create (cons a (cons b (cons c (cons d (cons e (cons f args))))))))))
 
 (defn vec
   "Creates a new vector containing the contents of coll. Java arrays
@@ -447,6 +449,46 @@ defn (fn defn [&form &env name & fdecl]
   ([comparator & keys]
    (clojure.lang.PersistentTreeSet/create comparator keys)))
 
+(defn btree-map
+  "keyval => key val
+  Returns a new sorted map with supplied mappings, held in a B+tree of
+  wide nodes rather than the binary tree of sorted-map. It also
+  supports nth by index, and reduce-kv and fold.  If any keys are
+  equal, they are handled as if by repeated uses of assoc."
+  {:added "1.7"
+   :static true}
+  ([& keyvals]
+   (clojure.lang.PersistentBTreeMap/create keyvals)))
+
+(defn btree-map-by
+  "keyval => key val
+  Returns a new B+tree sorted map with supplied mappings, using the
+  supplied comparator.  If any keys are equal, they are handled as if
+  by repeated uses of assoc."
+  {:added "1.7"
+   :static true}
+  ([comparator & keyvals]
+   (clojure.lang.PersistentBTreeMap/create comparator keyvals)))
+
+(defn btree-set
+  "Returns a new sorted set with supplied keys, held in a B+tree of
+  wide nodes rather than the binary tree of sorted-set. It also
+  supports nth by index, and fold.  Any equal keys are handled as if
+  by repeated uses of conj."
+  {:added "1.7"
+   :static true}
+  ([& keys]
+   (clojure.lang.PersistentBTreeSet/create keys)))
+
+(defn btree-set-by
+  "Returns a new B+tree sorted set with supplied keys, using the
+  supplied comparator.  Any equal keys are handled as if by repeated
+  uses of conj."
+  {:added "1.7"
+   :static true}
+  ([comparator & keys]
+   (clojure.lang.PersistentBTreeSet/create comparator keys)))
+
  
 ;;;;;;;;;;;;;;;;;;;;
 (defn nil?
@@ -3597,13 +3639,17 @@ defmacro (fn [&form &env
                            (if (keyword? t) t (class x)))))
 (defmulti print-dup (fn [x writer] (class x)))
 
+;; print-method methods that clojure.lang.EdnPrinter may bypass, set in core_print
+(def ^:private builtin-print-methods nil)
+
 (defn pr-on
   {:private true
    :static true}
   [x w]
-  (if *print-dup*
-    (print-dup x w)
-    (print-method x w))
+  (cond
+   *print-dup* (print-dup x w)
+   builtin-print-methods (clojure.lang.EdnPrinter/print x w print-method builtin-print-methods)
+   :else (print-method x w))
   nil)
 
 (defn pr
@@ -6353,6 +6399,16 @@ defmacro (fn [&form &env
   Supported options:
   :elide-meta - a collection of metadata keys to elide during compilation.
   :disable-locals-clearing - set to true to disable clearing, useful for using a debugger
+  :merge-fns - set to true to have AOT compilation write simple top-level fns
+    (fixed arity, no primitive hints, no metadata) of a file into shared classes
+    rather than a class per fn, reducing class count and Metaspace use
+  :infer-types - set to true to have (if (instance? C x) ...) treat local x as
+    hinted with C in its then branch, and, with *warn-on-reflection*, print a
+    report of the reflective sites left in each loaded file, deepest loops first
+  :hoist-vars - set to true to read the roots of the non-dynamic vars named in a
+    loop body once, before the loop, rather than on every iteration. Roots
+    altered while a loop runs are then not seen until it is entered again.
+    Fns made in the loop body still read the roots when called
   Alpha, subject to change."
   {:added "1.4"})
 
@@ -6724,8 +6780,18 @@ defmacro (fn [&form &env
   [amap f init]
   (.kvreduce amap f init))
 
+ clojure.lang.PersistentBTreeMap
+ (kv-reduce
+  [amap f init]
+  (.kvreduce amap f init))
+
  clojure.lang.PersistentVector
  (kv-reduce 
+  [vec f init]
+  (.kvreduce vec f init))
+
+ clojure.lang.Tuple$ATuple
+ (kv-reduce
   [vec f init]
   (.kvreduce vec f init)))
 
@@ -85,6 +85,27 @@
   (coll-reduce
    ([coll f] (seq-reduce coll f))
    ([coll f val] (seq-reduce coll f val)))
+
+  clojure.lang.Tuple$ATuple
+  (coll-reduce
+   ([coll f] (.reduce coll f))
+   ([coll f val] (.reduce coll f val)))
+
+  ;;lists and queues reduce in place, without a seq or iter
+  clojure.lang.PersistentList
+  (coll-reduce
+   ([coll f] (.reduce coll f))
+   ([coll f val] (.reduce coll f val)))
+
+  clojure.lang.PersistentList$EmptyList
+  (coll-reduce
+   ([coll f] (.reduce coll f))
+   ([coll f val] (.reduce coll f val)))
+
+  clojure.lang.PersistentQueue
+  (coll-reduce
+   ([coll f] (.reduce coll f))
+   ([coll f val] (.reduce coll f val)))
   
   Iterable
   (coll-reduce
@@ -364,6 +364,16 @@
   [v n combinef reducef]
   (foldvec v n combinef reducef))
 
+ clojure.lang.PersistentBTreeMap
+ (coll-fold
+  [m n combinef reducef]
+  (.fold m n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
+ clojure.lang.PersistentBTreeSet
+ (coll-fold
+  [s n combinef reducef]
+  (.fold s n combinef reducef fjinvoke fjtask fjfork fjjoin))
+
  clojure.lang.PersistentHashMap
  (coll-fold
   [m n combinef reducef]
@@ -318,6 +318,7 @@
 (defmethod print-dup clojure.lang.PersistentHashMap [o w] (print-method o w))
 (defmethod print-dup clojure.lang.PersistentHashSet [o w] (print-method o w))
 (defmethod print-dup clojure.lang.PersistentVector [o w] (print-method o w))
+(defmethod print-dup clojure.lang.Tuple$ATuple [o w] (print-method o w))
 (defmethod print-dup clojure.lang.LazilyPersistentVector [o w] (print-method o w))
 
 (def primitives-classnames
@@ -444,4 +445,23 @@
   (when (:splicing? o) (.write w "@"))
   (print-method (:form o) w))
 
+;; methods pr-on can print directly in clojure.lang.EdnPrinter, by kind.
+;; Values dispatching to any other method, including a user defined
+;; replacement of one of these, still go through print-method.
+(def ^:private builtin-print-methods
+  (let [m #(get-method print-method %)]
+    {(m nil) :nil
+     (m String) :string
+     (m clojure.lang.Keyword) :keyword
+     (m clojure.lang.Symbol) :symbol
+     (m Number) :number
+     (m clojure.lang.BigInt) :bigint
+     (m java.math.BigDecimal) :bigdec
+     (m Boolean) :boolean
+     (m Character) :char
+     (m clojure.lang.ISeq) :seq
+     (m clojure.lang.IPersistentVector) :vector
+     (m clojure.lang.IPersistentMap) :map
+     (m clojure.lang.IPersistentSet) :set}))
+
 (def ^{:private true} print-initialized true)
@@ -64,6 +64,36 @@
                        (if (vector? b) b (vec b))
                        (range (max (count a) (count b)))))))
 
+(defn- diff-map
+  [a b]
+  (diff-associative a b (set/union (keys a) (keys b))))
+
+;; persistent collections of the same kind give the keys or indexes
+;; where they differ, skipping the structure they share, and the things
+;; in both are made from a
+
+(defn- diff-changed-keys
+  "Diff maps a and b, which are equal at every key not in ks."
+  [a b ks]
+  (let [[a* b* ab] (diff-associative a b ks)]
+    [a* b* (not-empty (with-meta (into (apply dissoc a ks) ab) nil))]))
+
+(defn- diff-changed-indexes
+  "Diff vectors a and b, which are equal at every index not in is."
+  [a b is]
+  (let [[a* b* ab] (diff-associative a b is)
+        changed (set is)
+        top (loop [i (dec (min (count a) (count b)))]
+              (if (and (>= i 0) (contains? changed i) (not (contains? ab i)))
+                (recur (dec i))
+                i))
+        ab (when-not (neg? top)
+             (reduce (fn [v i] (if (<= i top) (assoc v i (get ab i)) v))
+                     (loop [v (with-meta a nil)]
+                       (if (> (count v) (inc top)) (recur (pop v)) v))
+                     is))]
+    [(vectorize a*) (vectorize b*) ab]))
+
 (defprotocol ^{:added "1.3"} EqualityPartition
   "Implementation detail. Subject to change."
   (^{:added "1.3"} equality-partition [x] "Implementation detail. Subject to change."))
@@ -115,7 +145,26 @@
   
   java.util.Map
   (diff-similar [a b]
-    (diff-associative a b (set/union (keys a) (keys b)))))
+    (diff-map a b))
+
+  clojure.lang.PersistentHashMap
+  (diff-similar [a b]
+    (if (instance? clojure.lang.PersistentHashMap b)
+      (diff-changed-keys a b (clojure.lang.PersistentHashMap/diffKeys a b))
+      (diff-map a b)))
+
+  clojure.lang.PersistentTreeMap
+  (diff-similar [^clojure.lang.PersistentTreeMap a b]
+    (if (and (instance? clojure.lang.PersistentTreeMap b)
+             (identical? (.comparator a) (.comparator ^clojure.lang.PersistentTreeMap b)))
+      (diff-changed-keys a b (clojure.lang.PersistentTreeMap/diffKeys a b))
+      (diff-map a b)))
+
+  clojure.lang.PersistentVector
+  (diff-similar [a b]
+    (if (instance? clojure.lang.PersistentVector b)
+      (diff-changed-indexes a b (clojure.lang.PersistentVector/diffIndices a b))
+      (diff-sequential a b))))
 
 (defn diff
   "Recursively compares a and b, returning a tuple of
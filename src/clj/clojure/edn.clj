@@ -13,8 +13,8 @@
 
 (defn read
   "Reads the next object from stream, which must be an instance of
-  java.io.PushbackReader or some derivee.  stream defaults to the
-  current value of *in*.
+  java.io.PushbackReader or some derivee, or a reader returned by
+  buffer-reader.  stream defaults to the current value of *in*.
 
   Reads data in the edn format (subset of Clojure data):
   http://edn-format.org
@@ -32,7 +32,33 @@
   ([stream]
    (read {} stream))
   ([opts stream]
-     (clojure.lang.EdnReader/read stream opts)))
+     (if (instance? clojure.lang.EdnBufferReader stream)
+       (.read ^clojure.lang.EdnBufferReader stream opts)
+       (clojure.lang.EdnReader/read stream opts))))
+
+(defn buffer-reader
+  "Returns a reader of the edn data in source, a String, char array,
+  java.nio.CharBuffer or java.io.Reader, for use as the stream argument
+  to read. Tokens are scanned in place rather than one char at a time,
+  which makes reading large inputs considerably faster. A Reader source
+  is read ahead in large blocks, so it should not be read from otherwise
+  afterwards; closing the returned reader closes it. Not thread safe."
+  {:added "1.7"}
+  ^clojure.lang.EdnBufferReader [source]
+  (clojure.lang.EdnBufferReader/create source))
+
+(defn read-elements
+  "Returns a reducible (IReduceInit) and Iterable of the elements of the
+  next object in source, which must be a vector or list. source is
+  anything accepted by buffer-reader. Elements are read one at a time
+  as the result is reduced or iterated, so memory use does not grow with
+  the size of the collection, and reduction stops reading early when
+  reduced. The result can be consumed only once. opts are as per read."
+  {:added "1.7"}
+  ([source]
+   (read-elements {} source))
+  ([opts source]
+   (.elements (buffer-reader source) opts)))
 
 (defn read-string
   "Reads one object from the string s. Returns nil when s is nil or empty.
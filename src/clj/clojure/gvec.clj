@@ -509,3 +509,117 @@
      (if xn
        (recur (.cons v (first xn)) (next xn))
        v))))
+
+;; bulk numeric operations over arrays and Vecs, by clojure.lang.NumericArrays
+
+(defn- vec-array
+  "The elements of Vec v in a new array of its type."
+  [^clojure.core.Vec v]
+  (let [am ^clojure.core.ArrayManager (.am v)
+        cnt (.cnt v)
+        arr (.array am cnt)]
+    (loop [i 0]
+      (if (< i cnt)
+        (let [node (.arrayFor v i)
+              n (.alength am node)]
+          (System/arraycopy node 0 arr i n)
+          (recur (+ i n)))
+        arr))))
+
+(defn- array-vec
+  "A Vec of the elements of arr, an array of the type of am, built a
+  level of the tree at a time."
+  [^clojure.core.ArrayManager am arr]
+  (let [cnt (.alength am arr)
+        tailoff (if (< cnt 32) 0 (bit-shift-left (unsigned-bit-shift-right (dec cnt) 5) 5))
+        copy (fn [from to]
+               (let [a (.array am (- to from))]
+                 (System/arraycopy arr from a 0 (- to from))
+                 a))
+        node (fn [^objects children from to]
+               (let [a (object-array 32)]
+                 (System/arraycopy children from a 0 (- to from))
+                 (VecNode. nil a)))]
+    (loop [^objects nodes (let [leaves (object-array (quot tailoff 32))]
+                            (dotimes [i (alength leaves)]
+                              (aset leaves i (VecNode. nil (copy (* i 32) (* (inc i) 32)))))
+                            leaves)
+           shift 5]
+      (let [n (alength nodes)]
+        (if (<= n 32)
+          (Vec. am cnt shift (if (zero? tailoff) EMPTY-NODE (node nodes 0 n)) (copy tailoff cnt) nil)
+          (let [parents (object-array (quot (+ n 31) 32))]
+            (dotimes [i (alength parents)]
+              (aset parents i (node nodes (* i 32) (min n (* (inc i) 32)))))
+            (recur parents (+ shift 5))))))))
+
+(defn- numeric-array [a]
+  (if (instance? clojure.core.Vec a)
+    (vec-array a)
+    a))
+
+(defn- like
+  "arr as a Vec if a is one."
+  [a arr]
+  (if (instance? clojure.core.Vec a)
+    (array-vec (.am ^clojure.core.Vec a) arr)
+    arr))
+
+(defn asum
+  "Returns the sum of the numbers in a, a long, double or int array, or a
+  vector-of :long, :double or :int. Longs and ints are summed as by +,
+  throwing on overflow, doubles in order, as by (reduce + a)."
+  {:added "1.7"}
+  [a]
+  (clojure.lang.NumericArrays/sum ^Object (numeric-array a)))
+
+(defn adot
+  "Returns the dot product of a and b, arrays or primitive vectors (see
+  asum) of the same type and length."
+  {:added "1.7"}
+  [a b]
+  (clojure.lang.NumericArrays/dot ^Object (numeric-array a) ^Object (numeric-array b)))
+
+(defn axpy
+  "Returns a new array or primitive vector (see asum), of the type of y,
+  of (+ (* a xi) yi) for the elements of x and y. x and y must be of the
+  same type and length, and a an integer when they hold longs or ints."
+  {:added "1.7"}
+  [a x y]
+  (like y (clojure.lang.NumericArrays/axpy ^Object a ^Object (numeric-array x) ^Object (numeric-array y))))
+
+(defn amin
+  "Returns the least number in a, a non-empty array or primitive vector (see
+  asum)."
+  {:added "1.7"}
+  [a]
+  (clojure.lang.NumericArrays/min ^Object (numeric-array a)))
+
+(defn amax
+  "Returns the greatest number in a, a non-empty array or primitive vector
+  (see asum)."
+  {:added "1.7"}
+  [a]
+  (clojure.lang.NumericArrays/max ^Object (numeric-array a)))
+
+(defn aprefix-sum
+  "Returns a new array or primitive vector of the type of a (see asum) of
+  the running sums of its numbers."
+  {:added "1.7"}
+  [a]
+  (like a (clojure.lang.NumericArrays/prefixSum ^Object (numeric-array a))))
+
+(defn ahistogram
+  "Returns a long array of the counts of the numbers in a (see asum) falling
+  in each of bins equal parts of the range from lo to hi. hi counts in the
+  last bin, numbers outside the range are not counted."
+  {:added "1.7"}
+  [a bins lo hi]
+  (clojure.lang.NumericArrays/histogram ^Object (numeric-array a) ^Object bins ^Object lo ^Object hi))
+
+(defn asort
+  "Returns a sorted copy of a, an array or primitive vector (see asum), in
+  the order of java.util.Arrays/sort."
+  {:added "1.7"}
+  [a]
+  (like a (clojure.lang.NumericArrays/sort ^Object (numeric-array a))))
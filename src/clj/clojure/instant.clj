@@ -7,8 +7,9 @@
 ;   You must not remove this notice, or any other, from this software.
 
 (ns clojure.instant
-  (:import [java.util Calendar Date GregorianCalendar TimeZone]
-           [java.sql Timestamp]))
+  (:import [java.util Calendar Date]
+           [java.sql Timestamp]
+           [clojure.lang Instants]))
 
 
 ;;; ------------------------------------------------------------------------
@@ -34,17 +35,6 @@
 ;;; ------------------------------------------------------------------------
 ;;; parser implementation
 
-(defn- parse-int [^String s]
-  (Long/parseLong s))
-
-(defn- zero-fill-right [^String s width]
-  (cond (= width (count s)) s
-        (< width (count s)) (.substring s 0 width)
-        :else (loop [b (StringBuilder. s)]
-                (if (< (.length b) width)
-                  (recur (.append b \0))
-                  (.toString b)))))
-
 (def parse-timestamp
      "Parse a string containing an RFC3339-like like timestamp.
 
@@ -96,26 +86,8 @@ Though time-offset is syntactically optional, a missing time-offset
 will be treated as if the time-offset zero (+00:00) had been
 specified.
 "
-     (let [timestamp #"(\d\d\d\d)(?:-(\d\d)(?:-(\d\d)(?:[T](\d\d)(?::(\d\d)(?::(\d\d)(?:[.](\d+))?)?)?)?)?)?(?:[Z]|([-+])(\d\d):(\d\d))?"]
-
-       (fn [new-instant ^CharSequence cs]
-         (if-let [[_ years months days hours minutes seconds fraction
-                   offset-sign offset-hours offset-minutes]
-                  (re-matches timestamp cs)]
-           (new-instant
-            (parse-int years)
-            (if-not months   1 (parse-int months))
-            (if-not days     1 (parse-int days))
-            (if-not hours    0 (parse-int hours))
-            (if-not minutes  0 (parse-int minutes))
-            (if-not seconds  0 (parse-int seconds))
-            (if-not fraction 0 (parse-int (zero-fill-right fraction 9)))
-            (cond (= "-" offset-sign) -1
-                  (= "+" offset-sign)  1
-                  :else                0)
-            (if-not offset-hours   0 (parse-int offset-hours))
-            (if-not offset-minutes 0 (parse-int offset-minutes)))
-           (fail (str "Unrecognized date/time syntax: " cs))))))
+     (fn [new-instant cs]
+       (Instants/parse new-instant cs)))
 
 
 ;;; ------------------------------------------------------------------------
@@ -157,22 +129,13 @@ with invalid arguments."
 ;;; ------------------------------------------------------------------------
 ;;; print integration
 
-(def ^:private thread-local-utc-date-format
-  ;; SimpleDateFormat is not thread-safe, so we use a ThreadLocal proxy for access.
-  ;; http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4228335
-  (proxy [ThreadLocal] []
-    (initialValue []
-      (doto (java.text.SimpleDateFormat. "yyyy-MM-dd'T'HH:mm:ss.SSS-00:00")
-        ;; RFC3339 says to use -00:00 when the timezone is unknown (+00:00 implies a known GMT)
-        (.setTimeZone (java.util.TimeZone/getTimeZone "GMT"))))))
+;; the printers write Gregorian instants straight from their milliseconds,
+;; falling back to SimpleDateFormat and format for the rest
 
 (defn- print-date
   "Print a java.util.Date as RFC3339 timestamp, always in UTC."
   [^java.util.Date d, ^java.io.Writer w]
-  (let [utc-format (.get thread-local-utc-date-format)]
-    (.write w "#inst \"")
-    (.write w (.format utc-format d))
-    (.write w "\"")))
+  (.write w (Instants/printString d)))
 
 (defmethod print-method java.util.Date
   [^java.util.Date d, ^java.io.Writer w]
@@ -185,14 +148,7 @@ with invalid arguments."
 (defn- print-calendar
   "Print a java.util.Calendar as RFC3339 timestamp, preserving timezone."
   [^java.util.Calendar c, ^java.io.Writer w]
-  (let [calstr (format "%1$tFT%1$tT.%1$tL%1$tz" c)
-        offset-minutes (- (.length calstr) 2)]
-    ;; calstr is almost right, but is missing the colon in the offset
-    (.write w "#inst \"")
-    (.write w calstr 0 offset-minutes)
-    (.write w ":")
-    (.write w calstr offset-minutes 2)
-    (.write w "\"")))
+  (.write w (Instants/printString c)))
 
 (defmethod print-method java.util.Calendar
   [^java.util.Calendar c, ^java.io.Writer w]
@@ -202,25 +158,10 @@ with invalid arguments."
   [^java.util.Calendar c, ^java.io.Writer w]
   (print-calendar c w))
 
-
-(def ^:private thread-local-utc-timestamp-format
-  ;; SimpleDateFormat is not thread-safe, so we use a ThreadLocal proxy for access.
-  ;; http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4228335
-  (proxy [ThreadLocal] []
-    (initialValue []
-      (doto (java.text.SimpleDateFormat. "yyyy-MM-dd'T'HH:mm:ss")
-        (.setTimeZone (java.util.TimeZone/getTimeZone "GMT"))))))
-
 (defn- print-timestamp
   "Print a java.sql.Timestamp as RFC3339 timestamp, always in UTC."
   [^java.sql.Timestamp ts, ^java.io.Writer w]
-  (let [utc-format (.get thread-local-utc-timestamp-format)]
-    (.write w "#inst \"")
-    (.write w (.format utc-format ts))
-    ;; add on nanos and offset
-    ;; RFC3339 says to use -00:00 when the timezone is unknown (+00:00 implies a known GMT)
-    (.write w (format ".%09d-00:00" (.getNanos ts)))
-    (.write w "\"")))
+  (.write w (Instants/printString ts)))
 
 (defmethod print-method java.sql.Timestamp
   [^java.sql.Timestamp ts, ^java.io.Writer w]
@@ -230,60 +171,34 @@ with invalid arguments."
   [^java.sql.Timestamp ts, ^java.io.Writer w]
   (print-timestamp ts w))
 
+;; let pr-on print these in clojure.lang.EdnPrinter
+(alter-var-root #'clojure.core/builtin-print-methods assoc
+                (get-method print-method Date) :inst
+                (get-method print-method Calendar) :inst
+                (get-method print-method Timestamp) :inst)
+
 
 ;;; ------------------------------------------------------------------------
 ;;; reader integration
 
-(defn- construct-calendar
-  "Construct a java.util.Calendar, preserving the timezone
-offset, but truncating the subsecond fraction to milliseconds."
-  ^GregorianCalendar
-  [years months days hours minutes seconds nanoseconds
-   offset-sign offset-hours offset-minutes]
-  (doto (GregorianCalendar. years (dec months) days hours minutes seconds)
-    (.set Calendar/MILLISECOND (quot nanoseconds 1000000))
-    (.setTimeZone (TimeZone/getTimeZone
-                   (format "GMT%s%02d:%02d"
-                           (if (neg? offset-sign) "-" "+")
-                           offset-hours offset-minutes)))))
-
-(defn- construct-date
-  "Construct a java.util.Date, which expresses the original instant as
-milliseconds since the epoch, UTC."
-  [years months days hours minutes seconds nanoseconds
-   offset-sign offset-hours offset-minutes]
-  (.getTime (construct-calendar years months days
-                                hours minutes seconds nanoseconds
-                                offset-sign offset-hours offset-minutes)))
-
-(defn- construct-timestamp
-  "Construct a java.sql.Timestamp, which has nanosecond precision."
-  [years months days hours minutes seconds nanoseconds
-   offset-sign offset-hours offset-minutes]
-  (doto (Timestamp.
-         (.getTimeInMillis
-          (construct-calendar years months days
-                              hours minutes seconds 0
-                              offset-sign offset-hours offset-minutes)))
-    ;; nanos must be set separately, pass 0 above for the base calendar
-    (.setNanos nanoseconds)))
+;; the readers parse, validate (as validated) and construct in clojure.lang.Instants
 
 (def read-instant-date
   "To read an instant as a java.util.Date, bind *data-readers* to a map with
 this var as the value for the 'inst key. The timezone offset will be used
 to convert into UTC."
-  (partial parse-timestamp (validated construct-date)))
+  (fn [cs] (Instants/readDate cs)))
 
 (def read-instant-calendar
   "To read an instant as a java.util.Calendar, bind *data-readers* to a map with
 this var as the value for the 'inst key.  Calendar preserves the timezone
 offset."
-  (partial parse-timestamp (validated construct-calendar)))
+  (fn [cs] (Instants/readCalendar cs)))
 
 (def read-instant-timestamp
   "To read an instant as a java.sql.Timestamp, bind *data-readers* to a
 map with this var as the value for the 'inst key. Timestamp preserves
 fractional seconds with nanosecond precision. The timezone offset will
 be used to convert into UTC."
-  (partial parse-timestamp (validated construct-timestamp)))
+  (fn [cs] (Instants/readTimestamp cs)))
 
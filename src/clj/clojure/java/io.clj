@@ -439,3 +439,106 @@
   {:added "1.2"}
   ([n] (resource n (.getContextClassLoader (Thread/currentThread))))
   ([n ^ClassLoader loader] (.getResource loader n)))
+
+(defn- reducible-records
+  "Returns a reducible of (record line) for the lines of x, opening x for
+   each reduction and closing it when the reduction ends. Readers and char
+   arrays are read as chars, anything else through make-input-stream."
+  [x opts record]
+  (let [reduce-lines (fn [f init]
+                       (let [f (if (identical? record identity)
+                                 f
+                                 (fn [ret line] (f ret (record line))))]
+                         (if (or (instance? Reader x) (instance? char-array-type x))
+                           (with-open [r (make-reader x opts)]
+                             (clojure.lang.Lines/reduce ^Reader r ^clojure.lang.IFn f init))
+                           (with-open [in (make-input-stream x opts)]
+                             (clojure.lang.Lines/reduce ^InputStream in
+                                                        (java.nio.charset.Charset/forName (encoding opts))
+                                                        ^clojure.lang.IFn f init)))))]
+    (reify clojure.lang.IReduce
+      (reduce [_ f]
+        (let [ret (reduce-lines (fn [ret x] (if (identical? ret ::none) x (f ret x))) ::none)]
+          (if (identical? ret ::none) (f) ret)))
+      (reduce [_ f init]
+        (reduce-lines f init)))))
+
+(defn reducible-lines
+  "Returns a reducible (IReduceInit) of the lines of x, as by line-seq but
+   without a seq. Each reduction opens x with reader, taking the same
+   options, and closes it on completion, on reduced, or on an exception.
+   A reader or stream given as x can only be reduced once."
+  {:added "1.7"}
+  [x & opts]
+  (reducible-records x (when opts (apply hash-map opts)) identity))
+
+(defn- split-delimited [^String line ^String delim]
+  (let [n (.length delim)]
+    (loop [v (transient []) start 0]
+      (let [i (.indexOf line delim start)]
+        (if (neg? i)
+          (persistent! (conj! v (subs line start)))
+          (recur (conj! v (subs line start i)) (+ i n)))))))
+
+(defn delimited-records
+  "Returns a reducible of the lines of x split into vectors of fields at
+   each occurrence of delim, a char or string. Empty fields are kept, and
+   there is no quoting. Opens and closes x as reducible-lines does."
+  {:added "1.7"}
+  [x delim & opts]
+  (let [delim (str delim)]
+    (reducible-records x (when opts (apply hash-map opts))
+                       #(split-delimited % delim))))
+
+(defn fixed-width-records
+  "Returns a reducible of the lines of x split into vectors of fields of
+   the given widths. Fields past the end of a short line are cut short or
+   empty, and any text past the last field is ignored. Opens and closes x
+   as reducible-lines does."
+  {:added "1.7"}
+  [x widths & opts]
+  (let [^ints ends (int-array (next (reduce #(conj %1 (+ (peek %1) %2)) [0] widths)))]
+    (reducible-records x (when opts (apply hash-map opts))
+                       (fn [^String line]
+                         (let [len (.length line)]
+                           (loop [v (transient []) start 0 i 0]
+                             (if (< i (alength ends))
+                               (let [end (min (aget ends i) len)
+                                     start (min start len)]
+                                 (recur (conj! v (subs line start end)) (aget ends i) (inc i)))
+                               (persistent! v))))))))
+
+(defn- ^clojure.lang.MappedFile mapped-file [f opts]
+  (clojure.lang.MappedFile. (as-file f) (encoding opts)))
+
+(defn mapped-lines
+  "Returns a reducible (IReduceInit) of the lines of file f, read through
+   a memory mapping of the file. Each line is decoded when the reduction
+   reaches it. Lines end as for BufferedReader's readLine.
+
+   Options are key/value pairs:
+     :encoding  string name of encoding to use, e.g. \"UTF-8\"."
+  {:added "1.7"}
+  [f & opts]
+  (.lines (mapped-file f (when opts (apply hash-map opts)))))
+
+(defn ^CharSequence mapped-chars
+  "Returns the text of file f as a CharSequence over a memory mapping of
+   the file, e.g. for re-seq, clojure.string or clojure.edn/buffer-reader.
+   ISO-8859-1 and ASCII text is a view of the mapped bytes, other text
+   is decoded once. Files must be under 2GB. Takes the same options as
+   mapped-lines."
+  {:added "1.7"}
+  [f & opts]
+  (.chars (mapped-file f (when opts (apply hash-map opts)))))
+
+(defn ^clojure.lang.LineNumberingPushbackReader mapped-reader
+  "Returns a LineNumberingPushbackReader of file f that decodes from a
+   memory mapping of the file straight into its buffer, for use with read
+   and clojure.edn/read. Takes the same options as mapped-lines.
+
+   Should be used inside with-open to ensure the Reader is properly
+   closed."
+  {:added "1.7"}
+  [f & opts]
+  (.reader (mapped-file f (when opts (apply hash-map opts)))))
@@ -20,6 +20,7 @@
 
 ;;; Forward references
 (declare compile-format)
+(declare cached-compile)
 (declare execute-format)
 (declare init-navigator)
 ;;; End forward references
@@ -59,7 +60,7 @@ http://www.lispworks.com/documentation/HyperSpec/Body/22_c.htm
               ["http://www.lispworks.com/documentation/HyperSpec/Body/22_c.htm"
                "Common Lisp HyperSpec"]]}
   [writer format-in & args]
-  (let [compiled-format (if (string? format-in) (compile-format format-in) format-in)
+  (let [compiled-format (if (string? format-in) (cached-compile format-in) format-in)
         navigator (init-navigator args)]
     (execute-format writer compiled-format navigator)))
 
@@ -103,7 +104,7 @@ http://www.lispworks.com/documentation/HyperSpec/Body/22_c.htm
 (defn- get-format-arg [navigator]
   (let [[raw-format navigator] (next-arg navigator)
         compiled-format (if (instance? String raw-format) 
-                               (compile-format raw-format)
+                               (cached-compile raw-format)
                                raw-format)]
     [compiled-format navigator]))
 
@@ -121,7 +122,7 @@ http://www.lispworks.com/documentation/HyperSpec/Body/22_c.htm
       (struct arg-navigator (:seq navigator) (drop position (:rest navigator)) newpos))))
 
 (defstruct ^{:private true}
-  compiled-directive :func :def :params :offset)
+  compiled-directive :func :def :params :offset :static-params)
 
 ;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;
 ;;; When looking at the parameter list, we may need to manipulate
@@ -191,12 +192,18 @@ http://www.lispworks.com/documentation/HyperSpec/Body/22_c.htm
                                 (:colinc params) )
                           1)
                        (:colinc params))))
-         chars (apply str (repeat (- width base-width) (:padchar params)))]
-    (if (:at params)
-      (print (str chars base-output))
-      (print (str base-output chars)))
+         ^java.io.Writer w *out*]
+    (if (= width base-width)
+      (.write w base-output)
+      (let [chars (apply str (repeat (- width base-width) (:padchar params)))]
+        (if (:at params)
+          (.write w (str chars base-output))
+          (.write w (str base-output chars)))))
     arg-navigator))
 
+(defn- ascii-str [x]
+  (if (instance? String x) x (print-str x)))
+
 ;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;
 ;;; Support for the integer directives ~D, ~X, ~O, ~B and some
 ;;; of ~R
@@ -276,7 +283,7 @@ for improved performance"
                                                  (:padchar params)))
                               signed-str)
                          signed-str)]
-        (print padded-str))
+        (.write ^java.io.Writer *out* ^String padded-str))
       (format-ascii print-str {:mincol (:mincol params) :colinc 1 :minpad 0 
                                :padchar (:padchar params) :at true} 
                     (init-navigator [arg]) nil))
@@ -1335,7 +1342,7 @@ not a pretty writer (which keeps track of columns), this function always outputs
   (\A 
    [ :mincol [0 Integer] :colinc [1 Integer] :minpad [0 Integer] :padchar [\space Character] ] 
    #{ :at :colon :both} {}
-   #(format-ascii print-str %1 %2 %3))
+   #(format-ascii ascii-str %1 %2 %3))
 
   (\S 
    [ :mincol [0 Integer] :colinc [1 Integer] :minpad [0 Integer] :padchar [\space Character] ] 
@@ -1712,6 +1719,14 @@ of parameters as well."
    (reduce #(apply assoc %1 %2) {} (filter #(first (nth % 1)) (zipmap (keys (:params def)) params))) ; add the specified parameters, filtering out nils
    flags))                                ; and finally add the flags
 
+(defn- static-params
+  "The params and offsets of a directive as execute-format realizes them, when
+none of them are taken from the arguments. These can be worked out once, when
+the directive is compiled."
+  [params]
+  (if-not (some #(contains? special-params (first (val %))) params)
+    (unzip-map params)))
+
 (defn- compile-directive [s offset]
   (let [[raw-params [rest offset]] (extract-params s offset)
         [_ [rest offset flags]] (extract-flags rest offset)
@@ -1722,7 +1737,8 @@ of parameters as well."
       (format-error "Format string ended in the middle of a directive" offset))
     (if (not def)
       (format-error (str "Directive \"" directive "\" is undefined") offset))
-    [(struct compiled-directive ((:generator-fn def) params offset) def params offset)
+    [(struct compiled-directive ((:generator-fn def) params offset) def params offset
+             (static-params params))
      (let [remainder (subs rest 1) 
            offset (inc offset)
            trim? (and (= \newline (:directive def))
@@ -1733,7 +1749,8 @@ of parameters as well."
        [remainder offset])]))
     
 (defn- compile-raw-string [s offset]
-  (struct compiled-directive (fn [_ a _] (print s) a) nil { :string s } offset))
+  (struct compiled-directive (fn [_ a _] (.write ^java.io.Writer *out* ^String s) a) nil { :string s } offset
+          (static-params { :string s })))
 
 (defn- right-bracket [this] (:right (:bracket-info (:def this))))
 (defn- separator? [this] (:separator (:bracket-info (:def this))))
@@ -1747,11 +1764,11 @@ of parameters as well."
 (defn- process-bracket [this remainder]
   (let [[subex remainder] (collect-clauses (:bracket-info (:def this))
                                            (:offset this) remainder)]
-    [(struct compiled-directive 
-             (:func this) (:def this) 
-             (merge (:params this) (tuple-map subex (:offset this)))
-             (:offset this))
-     remainder]))
+    (let [params (merge (:params this) (tuple-map subex (:offset this)))]
+      [(struct compiled-directive 
+               (:func this) (:def this) params (:offset this)
+               (static-params params))
+       remainder])))
 
 (defn- process-clause [bracket-info offset remainder]
   (consume 
@@ -1899,18 +1916,35 @@ column number or pretty printing"
       (fn [element context]
         (if (abort? context)
           [nil context]
-          (let [[params args] (realize-parameter-list 
-                               (:params element) context)
-                [params offsets] (unzip-map params)
+          (let [[params offsets args] (if-let [[params offsets] (:static-params element)]
+                                        [params offsets context]
+                                        (let [[params args] (realize-parameter-list 
+                                                             (:params element) context)
+                                              [params offsets] (unzip-map params)]
+                                          [params offsets args]))
                 params (assoc params :base-args args)]
-            [nil (apply (:func element) [params args offsets])])))
+            [nil ((:func element) params args offsets)])))
       args
       format)
      nil))
 
+;;; Compiled formats are cached by format string, so that cl-format with a
+;;; string that is used over and over only compiles it once. The cache is
+;;; bounded, the least recently used format being dropped.
+(def ^{:private true} format-cache-size 512)
+
+(def ^{:private true} ^java.util.Map format-cache
+  (proxy [java.util.LinkedHashMap] [(int 64) (float 0.75) true]
+    (removeEldestEntry [_]
+      (> (.size ^java.util.Map this) format-cache-size))))
+
 ;;; This is a bad idea, but it prevents us from leaking private symbols
 ;;; This should all be replaced by really compiled formats anyway.
-(def ^{:private true} cached-compile (memoize compile-format))
+(defn- cached-compile [format-str]
+  (or (locking format-cache (.get format-cache format-str))
+      (let [compiled (compile-format format-str)]
+        (locking format-cache (.put format-cache format-str compiled))
+        compiled)))
 
 (defmacro formatter
   "Makes a function which can directly run format-in. The function is
@@ -12,12 +12,13 @@
 ;; Author: Tom Faulhaber
 ;; April 3, 2009
 ;; Revised to use proxy instead of gen-class April 2010
+;; The writer itself is clojure.lang.ColumnWriter
 
 ;; This module implements a column-aware wrapper around an instance of java.io.Writer
 
 (in-ns 'clojure.pprint)
 
-(import [clojure.lang IDeref]
+(import [clojure.lang ColumnWriter]
         [java.io Writer])
 
 (def ^:dynamic ^{:private true} *default-page-width* 72)
@@ -25,9 +26,6 @@
 (defn- get-field [^Writer this sym]
   (sym @@this))
 
-(defn- set-field [^Writer this sym new-val] 
-  (alter @this assoc sym new-val))
-
 (defn- get-column [this]
   (get-field this :cur))
 
@@ -37,47 +35,14 @@
 (defn- get-max-column [this]
   (get-field this :max))
 
-(defn- set-max-column [this new-max]
-  (dosync (set-field this :max new-max))
+(defn- set-max-column [^ColumnWriter this new-max]
+  (.setMaxColumn this new-max)
   nil)
 
 (defn- get-writer [this]
   (get-field this :base))
 
-(defn- c-write-char [^Writer this ^Integer c]
-  (dosync (if (= c (int \newline))
-	    (do
-              (set-field this :cur 0)
-              (set-field this :line (inc (get-field this :line))))
-	    (set-field this :cur (inc (get-field this :cur)))))
-  (.write ^Writer (get-field this :base) c))
-
 (defn- column-writer   
   ([writer] (column-writer writer *default-page-width*))
   ([writer max-columns]
-     (let [fields (ref {:max max-columns, :cur 0, :line 0 :base writer})]
-       (proxy [Writer IDeref] []
-         (deref [] fields)
-         (flush []
-           (.flush writer))
-         (write
-          ([^chars cbuf ^Integer off ^Integer len] 
-             (let [^Writer writer (get-field this :base)] 
-               (.write writer cbuf off len)))
-          ([x]
-             (condp = (class x)
-               String 
-               (let [^String s x
-                     nl (.lastIndexOf s (int \newline))]
-                 (dosync (if (neg? nl)
-                           (set-field this :cur (+ (get-field this :cur) (count s)))
-                           (do
-                             (set-field this :cur (- (count s) nl 1))
-                             (set-field this :line (+ (get-field this :line)
-                                                      (count (filter #(= % \newline) s)))))))
-                 (.write ^Writer (get-field this :base) s))
-
-               Integer
-               (c-write-char this x)
-               Long
-               (c-write-char this x))))))))
+     (ColumnWriter. writer max-columns)))
@@ -31,7 +31,7 @@
       [acc context]
     (let [this (first lis)
           remainder (next lis)
-          [result new-context] (apply func [this context])]
+          [result new-context] (func this context)]
       (recur new-context remainder (conj acc result))))))
 
 (defn- consume [func initial-context]
@@ -16,6 +16,10 @@
   (let [max (apply max-key k coll)]
     (cons max (remove #(identical? max %) coll))))
 
+(defn- hash-sets? [s1 s2]
+  (and (instance? clojure.lang.PersistentHashSet s1)
+       (instance? clojure.lang.PersistentHashSet s2)))
+
 (defn union
   "Return a set that is the union of the input sets"
   {:added "1.0"}
@@ -23,19 +27,23 @@
   ([s1] s1)
   ([s1 s2]
      (if (< (count s1) (count s2))
-       (reduce conj s2 s1)
-       (reduce conj s1 s2)))
+       (recur s2 s1)
+       (if (hash-sets? s1 s2)
+         (clojure.lang.PersistentHashSet/union s1 s2)
+         (reduce conj s1 s2))))
   ([s1 s2 & sets]
      (let [bubbled-sets (bubble-max-key count (conj sets s2 s1))]
-       (reduce into (first bubbled-sets) (rest bubbled-sets)))))
+       (reduce union (first bubbled-sets) (rest bubbled-sets)))))
 
 (defn intersection
   "Return a set that is the intersection of the input sets"
   {:added "1.0"}
   ([s1] s1)
   ([s1 s2]
-     (if (< (count s2) (count s1))
-       (recur s2 s1)
+     (cond
+      (< (count s2) (count s1)) (recur s2 s1)
+      (hash-sets? s1 s2) (clojure.lang.PersistentHashSet/intersection s1 s2)
+      :else
        (reduce (fn [result item]
                    (if (contains? s2 item)
 		     result
@@ -50,12 +58,15 @@
   {:added "1.0"}
   ([s1] s1)
   ([s1 s2] 
-     (if (< (count s1) (count s2))
+     (cond
+      (hash-sets? s1 s2) (clojure.lang.PersistentHashSet/difference s1 s2)
+      (< (count s1) (count s2))
        (reduce (fn [result item] 
                    (if (contains? s2 item) 
                      (disj result item) 
                      result))
                s1 s1)
+      :else
        (reduce disj s1 s2)))
   ([s1 s2 & sets] 
      (reduce difference s1 (conj sets s2))))
@@ -72,7 +83,7 @@
   "Returns a rel of the elements of xrel with only the keys in ks"
   {:added "1.0"}
   [xrel ks]
-  (with-meta (set (map #(select-keys % ks) xrel)) (meta xrel)))
+  (with-meta (into #{} (map #(select-keys % ks)) xrel) (meta xrel)))
 
 (defn rename-keys
   "Returns the map with the keys in kmap renamed to the vals in kmap"
@@ -89,24 +100,51 @@
   "Returns a rel of the maps in xrel with the keys in kmap renamed to the vals in kmap"
   {:added "1.0"}
   [xrel kmap]
-  (with-meta (set (map #(rename-keys % kmap) xrel)) (meta xrel)))
+  (with-meta (into #{} (map #(rename-keys % kmap)) xrel) (meta xrel)))
 
 (defn index
   "Returns a map of the distinct values of ks in the xrel mapped to a
   set of the maps in xrel with the corresponding values of ks."
   {:added "1.0"}
   [xrel ks]
-    (reduce
-     (fn [m x]
-       (let [ik (select-keys x ks)]
-         (assoc m ik (conj (get m ik #{}) x))))
-     {} xrel))
+    (persistent!
+     (reduce
+      (fn [m x]
+        (let [ik (select-keys x ks)]
+          (assoc! m ik (conj (get m ik #{}) x))))
+      (transient {}) xrel)))
    
 (defn map-invert
   "Returns the map with the vals mapped to the keys."
   {:added "1.0"}
   [m] (reduce (fn [m [k v]] (assoc m v k)) {} m))
 
+(def ^:private missing (Object.))
+
+(defn- key-fn
+  "Returns a fn of a map to the values of ks in it, equal for two maps
+  when their select-keys of ks are."
+  [ks]
+  (let [fs (map (fn [k] #(get % k missing)) ks)]
+    (case (count fs)
+      0 (constantly [])
+      1 (first fs)
+      (apply juxt fs))))
+
+(defn- probe
+  "A transducer of maps to their merges onto each map in idx (a map
+  from group-by kf) with the same key."
+  [idx kf]
+  (fn [rf]
+    (fn
+      ([] (rf))
+      ([ret] (rf ret))
+      ([ret x]
+         (reduce (fn [ret y]
+                   (let [ret (rf ret (if y (conj y x) x))]
+                     (if (reduced? ret) (reduced ret) ret)))
+                 ret (get idx (kf x)))))))
+
 (defn join
   "When passed 2 rels, returns the rel corresponding to the natural
   join. When passed an additional keymap, joins on the corresponding
@@ -118,25 +156,45 @@
            [r s] (if (<= (count xrel) (count yrel))
                    [xrel yrel]
                    [yrel xrel])
-           idx (index r ks)]
-       (reduce (fn [ret x]
-                 (let [found (idx (select-keys x ks))]
-                   (if found
-                     (reduce #(conj %1 (merge %2 x)) ret found)
-                     ret)))
-               #{} s))
+           kf (key-fn ks)]
+       (into #{} (probe (group-by kf r) kf) s))
      #{}))
   ([xrel yrel km] ;arbitrary key mapping
    (let [[r s k] (if (<= (count xrel) (count yrel))
                    [xrel yrel (map-invert km)]
-                   [yrel xrel km])
-         idx (index r (vals k))]
-     (reduce (fn [ret x]
-               (let [found (idx (rename-keys (select-keys x (keys k)) k))]
-                 (if found
-                   (reduce #(conj %1 (merge %2 x)) ret found)
-                   ret)))
-             #{} s))))
+                   [yrel xrel km])]
+     (into #{} (probe (group-by (key-fn (vals k)) r) (key-fn (keys k))) s))))
+
+(defn hash-join
+  "Like join, but returns a reducible (and seqable) of the joined maps,
+  made each time it is reduced, rather than a set of them. An index is
+  built from xrel, which should be the smaller, and yrel is streamed
+  through it, so yrel can be any reducible and the results need not
+  fit in memory. Duplicate results are not removed, otherwise they are
+  those of join when xrel is no larger than yrel. A natural join is on
+  the keys of the first map of xrel that are in the first map of yrel
+  met by the reduction. When passed ks, joins on them: a map of keys in
+  xrel to the corresponding keys in yrel, or a collection of keys both
+  have."
+  {:added "1.7"}
+  ([xrel yrel] ;natural join
+   (let [xks (set (keys (first xrel)))
+         index (memoize #(let [kf (key-fn %)] [kf (group-by kf xrel)]))]
+     (eduction
+      (fn [rf]
+        (let [step (volatile! nil)]
+          (fn
+            ([] (rf))
+            ([ret] (rf ret))
+            ([ret y]
+               (when-not @step
+                 (let [[kf idx] (index (intersection xks (set (keys y))))]
+                   (vreset! step ((probe idx kf) rf))))
+               (@step ret y)))))
+      yrel)))
+  ([xrel yrel ks]
+   (let [[xks yks] (if (map? ks) [(keys ks) (vals ks)] [ks ks])]
+     (eduction (probe (group-by (key-fn xks) xrel) (key-fn yks)) yrel))))
 
 (defn subset? 
   "Is set1 a subset of set2?"
@@ -10,10 +10,14 @@
 
 (defn- default-uuid-reader [form]
   {:pre [(string? form)]}
-  (java.util.UUID/fromString form))
+  (clojure.lang.UUIDs/parse form))
 
-(defmethod print-method java.util.UUID [uuid ^java.io.Writer w]
-  (.write w (str "#uuid \"" (str uuid) "\"")))
+(defmethod print-method java.util.UUID [^java.util.UUID uuid ^java.io.Writer w]
+  (.write w (clojure.lang.UUIDs/printString uuid)))
 
 (defmethod print-dup java.util.UUID [o w]
   (print-method o w))
+
+;; let pr-on print UUIDs in clojure.lang.EdnPrinter
+(alter-var-root #'clojure.core/builtin-print-methods assoc
+                (get-method print-method java.util.UUID) :uuid)
@@ -0,0 +1,343 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.UUID;
+
+import static clojure.lang.BinaryWriter.*;
+
+/**
+ * Reads values written by BinaryWriter. Tagged extension values are passed to
+ * the fn for their tag in the :readers option, else to the :default fn (of tag
+ * and value) if given, else read as TaggedLiterals.
+ */
+public class BinaryReader implements Closeable{
+
+static final Keyword READERS = Keyword.intern(null, "readers");
+static final Keyword DEFAULT = Keyword.intern(null, "default");
+
+final InputStream in;
+final ILookup readers;
+final IFn defaultReader;
+final ArrayList<Object> refs = new ArrayList<Object>();
+byte[] buf = new byte[8192];
+int pos;
+int end;
+boolean started;
+
+public BinaryReader(InputStream in){
+	this(in, PersistentArrayMap.EMPTY);
+}
+
+public BinaryReader(InputStream in, IPersistentMap opts){
+	this.in = in;
+	this.readers = (ILookup) opts.valAt(READERS);
+	this.defaultReader = (IFn) opts.valAt(DEFAULT);
+}
+
+static public Object fromBytes(byte[] bytes){
+	return new BinaryReader(new ByteArrayInputStream(bytes)).read();
+}
+
+public void close() throws IOException{
+	in.close();
+}
+
+//makes k bytes available from pos, returns false if the stream ends first
+private boolean fill(int k){
+	if(end - pos >= k)
+		return true;
+	if(pos > 0)
+		{
+		System.arraycopy(buf, pos, buf, 0, end - pos);
+		end -= pos;
+		pos = 0;
+		}
+	if(k > buf.length)
+		{
+		byte[] b = new byte[Math.max(k, 2 * buf.length)];
+		System.arraycopy(buf, 0, b, 0, end);
+		buf = b;
+		}
+	try
+		{
+		while(end < k)
+			{
+			int r = in.read(buf, end, buf.length - end);
+			if(r < 0)
+				return false;
+			end += r;
+			}
+		return true;
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+private void ensure(int k){
+	if(end - pos < k && !fill(k))
+		throw Util.runtimeException("EOF while reading");
+}
+
+private int code(){
+	ensure(1);
+	return buf[pos++] & 0xFF;
+}
+
+private long varint(){
+	long v = 0;
+	for(int shift = 0; ; shift += 7)
+		{
+		int b = code();
+		v |= (long) (b & 0x7F) << shift;
+		if((b & 0x80) == 0)
+			return v;
+		}
+}
+
+private long zigzag(){
+	long v = varint();
+	return (v >>> 1) ^ -(v & 1);
+}
+
+private long fixed(int bytes){
+	ensure(bytes);
+	long v = 0;
+	for(int i = 0; i < bytes; i++)
+		v = (v << 8) | (buf[pos++] & 0xFF);
+	return v;
+}
+
+private int count(){
+	return (int) varint();
+}
+
+private String string(){
+	int len = count();
+	char[] cs = new char[len];
+	for(int i = 0; i < len; )
+		{
+		//3 bytes per char at most, and 4 for a pair ending past the chunk
+		int stop = i + Math.min(len - i, 1024);
+		if(!fill(3 * (stop - i) + 1))
+			ensure(stop - i);
+		for(; i < stop && end - pos >= 4; i++)
+			{
+			int b = buf[pos++];
+			if(b >= 0)
+				cs[i] = (char) b;
+			else if((b & 0xE0) == 0xC0)
+				cs[i] = (char) (((b & 0x1F) << 6) | (buf[pos++] & 0x3F));
+			else if((b & 0xF0) == 0xE0)
+				{
+				cs[i] = (char) (((b & 0x0F) << 12) | ((buf[pos] & 0x3F) << 6) | (buf[pos + 1] & 0x3F));
+				pos += 2;
+				}
+			else
+				{
+				int cp = ((b & 0x07) << 18) | ((buf[pos] & 0x3F) << 12) | ((buf[pos + 1] & 0x3F) << 6)
+				         | (buf[pos + 2] & 0x3F);
+				pos += 3;
+				i += Character.toChars(cp, cs, i) - 1;
+				}
+			}
+		for(; i < stop; i++)
+			{
+			int b = (byte) code();
+			if(b >= 0)
+				cs[i] = (char) b;
+			else if((b & 0xE0) == 0xC0)
+				cs[i] = (char) (((b & 0x1F) << 6) | (code() & 0x3F));
+			else if((b & 0xF0) == 0xE0)
+				cs[i] = (char) (((b & 0x0F) << 12) | ((code() & 0x3F) << 6) | (code() & 0x3F));
+			else
+				{
+				int cp = ((b & 0x07) << 18) | ((code() & 0x3F) << 12) | ((code() & 0x3F) << 6) | (code() & 0x3F);
+				i += Character.toChars(cp, cs, i) - 1;
+				}
+			}
+		}
+	return new String(cs);
+}
+
+private byte[] bytes(){
+	int len = count();
+	ensure(len);
+	byte[] b = new byte[len];
+	System.arraycopy(buf, pos, b, 0, len);
+	pos += len;
+	return b;
+}
+
+private String nullableString(){
+	int c = code();
+	if(c == NIL)
+		return null;
+	if(c != STRING)
+		throw Util.runtimeException("Invalid binary data, expected a string, found code: " + c);
+	return string();
+}
+
+private Object[] elements(int count){
+	Object[] a = new Object[count];
+	for(int i = 0; i < count; i++)
+		a[i] = read();
+	return a;
+}
+
+private void header(){
+	if(!fill(MAGIC.length + 1))
+		throw Util.runtimeException("EOF while reading");
+	for(int i = 0; i < MAGIC.length; i++)
+		if(buf[pos + i] != MAGIC[i])
+			throw Util.runtimeException("Invalid binary data, bad header");
+	int version = buf[pos + MAGIC.length];
+	if(version > VERSION)
+		throw Util.runtimeException("Unsupported binary data version: " + version);
+	pos += MAGIC.length + 1;
+	started = true;
+}
+
+public Object read(boolean eofIsError, Object eofValue){
+	if(!started)
+		header();
+	if(!fill(1))
+		{
+		if(eofIsError)
+			throw Util.runtimeException("EOF while reading");
+		return eofValue;
+		}
+	return read();
+}
+
+public Object read(){
+	if(!started)
+		header();
+	int c = code();
+	if(c >= SMALL_LONG)
+		return (long) (c - SMALL_LONG + SMALL_MIN);
+	switch(c)
+		{
+		case NIL:
+			return null;
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case LONG:
+			return zigzag();
+		case DOUBLE:
+			return Double.longBitsToDouble(fixed(8));
+		case STRING:
+			return string();
+		case KEYWORD:
+		{
+		Keyword k = Keyword.intern(nullableString(), string());
+		refs.add(k);
+		return k;
+		}
+		case SYMBOL:
+		{
+		Symbol s = Symbol.intern(nullableString(), string());
+		refs.add(s);
+		return s;
+		}
+		case REF:
+			return refs.get(count());
+		case VECTOR:
+			return RT.vector(elements(count()));
+		case LIST:
+			return PersistentList.create(java.util.Arrays.asList(elements(count())));
+		case MAP:
+		{
+		int n = count();
+		if(n <= PersistentArrayMap.HASHTABLE_THRESHOLD / 2)
+			return RT.mapUniqueKeys(elements(2 * n));
+		ITransientMap m = PersistentHashMap.EMPTY.asTransient();
+		for(int i = 0; i < n; i++)
+			m = m.assoc(read(), read());
+		return m.persistent();
+		}
+		case SET:
+		{
+		int n = count();
+		ITransientCollection s = PersistentHashSet.EMPTY.asTransient();
+		for(int i = 0; i < n; i++)
+			s = s.conj(read());
+		return s.persistent();
+		}
+		case SORTED_MAP:
+		{
+		int n = count();
+		IPersistentMap m = PersistentTreeMap.EMPTY;
+		for(int i = 0; i < n; i++)
+			m = m.assoc(read(), read());
+		return m;
+		}
+		case SORTED_SET:
+		{
+		int n = count();
+		IPersistentCollection s = PersistentTreeSet.EMPTY;
+		for(int i = 0; i < n; i++)
+			s = s.cons(read());
+		return s;
+		}
+		case META:
+		{
+		IPersistentMap m = (IPersistentMap) read();
+		return ((IObj) read()).withMeta(m);
+		}
+		case TAGGED:
+		{
+		Symbol tag = (Symbol) read();
+		Object form = read();
+		IFn reader = readers == null ? null : (IFn) readers.valAt(tag);
+		if(reader != null)
+			return reader.invoke(form);
+		if(defaultReader != null)
+			return defaultReader.invoke(tag, form);
+		return TaggedLiteral.create(tag, form);
+		}
+		case CHAR:
+			return (char) fixed(2);
+		case INT:
+			return (int) zigzag();
+		case FLOAT:
+			return Float.intBitsToFloat((int) fixed(4));
+		case BIGINT:
+			return BigInt.fromBigInteger(new BigInteger(bytes()));
+		case BIGDEC:
+		{
+		int scale = (int) zigzag();
+		return new BigDecimal(new BigInteger(bytes()), scale);
+		}
+		case RATIO:
+			return new Ratio(new BigInteger(bytes()), new BigInteger(bytes()));
+		case INST:
+			return new Date(zigzag());
+		case UUID:
+			return new UUID(fixed(8), fixed(8));
+		case BYTES:
+			return bytes();
+		}
+	throw Util.runtimeException("Invalid binary data, unknown code: " + c);
+}
+}
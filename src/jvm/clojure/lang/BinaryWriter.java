@@ -0,0 +1,431 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes Clojure data in a compact binary format, read back by BinaryReader.
+ *
+ * A stream starts with the magic bytes "CLJB" and a version byte, followed by
+ * any number of values. Each value is a code byte and its payload: counts and
+ * longs are varints (longs zigzag encoded), strings are their length in UTF-16
+ * chars and their UTF-8 bytes (a supplementary character is one 4-byte
+ * sequence counting as two chars, an unpaired surrogate a 3-byte one), and
+ * collections are a count followed by their elements. Small
+ * longs are folded into the code byte. Keywords and symbols are written in full
+ * the first time and as an index into the stream's table of them after that.
+ *
+ * Values of other types are passed to the handler found for their class (or a
+ * superclass or interface) in the :handlers option, and its result written
+ * instead; a TaggedLiteral result is written as a tagged extension value.
+ */
+public class BinaryWriter implements Closeable, Flushable{
+
+static final byte[] MAGIC = {'C', 'L', 'J', 'B'};
+static final int VERSION = 1;
+
+static final int NIL = 0;
+static final int TRUE = 1;
+static final int FALSE = 2;
+static final int LONG = 3;
+static final int DOUBLE = 4;
+static final int STRING = 5;
+static final int KEYWORD = 6;
+static final int SYMBOL = 7;
+static final int REF = 8;
+static final int VECTOR = 9;
+static final int LIST = 10;
+static final int MAP = 11;
+static final int SET = 12;
+static final int SORTED_MAP = 13;
+static final int SORTED_SET = 14;
+static final int META = 15;
+static final int TAGGED = 16;
+static final int CHAR = 17;
+static final int INT = 18;
+static final int FLOAT = 19;
+static final int BIGINT = 20;
+static final int BIGDEC = 21;
+static final int RATIO = 22;
+static final int INST = 23;
+static final int UUID = 24;
+static final int BYTES = 25;
+
+//code bytes from SMALL_LONG up hold the longs SMALL_MIN..SMALL_MIN+127
+static final int SMALL_LONG = 0x80;
+static final int SMALL_MIN = -32;
+
+static final Keyword HANDLERS = Keyword.intern(null, "handlers");
+
+final OutputStream out;
+final ILookup handlers;
+final HashMap<Object, Integer> refs = new HashMap<Object, Integer>();
+byte[] buf = new byte[8192];
+int n;
+
+public BinaryWriter(OutputStream out){
+	this(out, PersistentArrayMap.EMPTY);
+}
+
+public BinaryWriter(OutputStream out, IPersistentMap opts){
+	this.out = out;
+	this.handlers = (ILookup) opts.valAt(HANDLERS);
+	System.arraycopy(MAGIC, 0, buf, 0, MAGIC.length);
+	buf[MAGIC.length] = VERSION;
+	n = MAGIC.length + 1;
+}
+
+static public byte[] toBytes(Object x){
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	BinaryWriter w = new BinaryWriter(bytes);
+	w.write(x);
+	w.flush();
+	return bytes.toByteArray();
+}
+
+public void flush(){
+	try
+		{
+		out.write(buf, 0, n);
+		n = 0;
+		out.flush();
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+public void close() throws IOException{
+	flush();
+	out.close();
+}
+
+private void ensure(int k){
+	if(n + k > buf.length)
+		{
+		try
+			{
+			out.write(buf, 0, n);
+			n = 0;
+			}
+		catch(IOException e)
+			{
+			throw Util.sneakyThrow(e);
+			}
+		if(k > buf.length)
+			buf = new byte[k];
+		}
+}
+
+private void code(int c){
+	ensure(1);
+	buf[n++] = (byte) c;
+}
+
+private void varint(long v){
+	ensure(10);
+	while((v & ~0x7FL) != 0)
+		{
+		buf[n++] = (byte) ((v & 0x7F) | 0x80);
+		v >>>= 7;
+		}
+	buf[n++] = (byte) v;
+}
+
+private void zigzag(long v){
+	varint((v << 1) ^ (v >> 63));
+}
+
+private void fixed(long v, int bytes){
+	ensure(bytes);
+	for(int i = bytes - 1; i >= 0; i--)
+		buf[n++] = (byte) (v >>> (8 * i));
+}
+
+private void count(int c){
+	varint(c);
+}
+
+private void string(String s){
+	int len = s.length();
+	count(len);
+	for(int i = 0; i < len; )
+		{
+		int chunk = Math.min(len - i, 1024);
+		//a surrogate pair ending past the chunk takes 4 bytes for its last char
+		ensure(3 * chunk + 1);
+		for(int end = i + chunk; i < end; i++)
+			{
+			char c = s.charAt(i);
+			if(c < 0x80)
+				buf[n++] = (byte) c;
+			else if(c < 0x800)
+				{
+				buf[n++] = (byte) (0xC0 | (c >> 6));
+				buf[n++] = (byte) (0x80 | (c & 0x3F));
+				}
+			else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf[n++] = (byte) (0xF0 | (cp >> 18));
+				buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[n++] = (byte) (0x80 | (cp & 0x3F));
+				}
+			else
+				{
+				buf[n++] = (byte) (0xE0 | (c >> 12));
+				buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[n++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+}
+
+private void bytes(byte[] b){
+	count(b.length);
+	ensure(b.length);
+	System.arraycopy(b, 0, buf, n, b.length);
+	n += b.length;
+}
+
+private void nullableString(String s){
+	if(s == null)
+		code(NIL);
+	else
+		{
+		code(STRING);
+		string(s);
+		}
+}
+
+//writes a keyword or symbol in full the first time, as a table index after that
+private void named(int code, Object x, Symbol sym){
+	Integer i = refs.get(x);
+	if(i != null)
+		{
+		code(REF);
+		count(i);
+		return;
+		}
+	refs.put(x, refs.size());
+	code(code);
+	nullableString(sym.getNamespace());
+	string(sym.getName());
+}
+
+private void meta(Object x){
+	if(x instanceof IMeta)
+		{
+		IPersistentMap m = ((IMeta) x).meta();
+		if(m != null && m.count() > 0)
+			{
+			code(META);
+			write(m);
+			}
+		}
+}
+
+private void elements(int code, int count, Iterator i){
+	code(code);
+	count(count);
+	while(i.hasNext())
+		write(i.next());
+}
+
+private void entries(int code, int count, Iterator i){
+	code(code);
+	count(count);
+	while(i.hasNext())
+		{
+		Map.Entry e = (Map.Entry) i.next();
+		write(e.getKey());
+		write(e.getValue());
+		}
+}
+
+public void write(Object x){
+	if(x == null)
+		code(NIL);
+	else if(x instanceof String)
+		{
+		code(STRING);
+		string((String) x);
+		}
+	else if(x instanceof Keyword)
+		named(KEYWORD, x, ((Keyword) x).sym);
+	else if(x instanceof Long)
+		{
+		long v = (Long) x;
+		if(v >= SMALL_MIN && v < SMALL_MIN + 128)
+			code(SMALL_LONG + (int) (v - SMALL_MIN));
+		else
+			{
+			code(LONG);
+			zigzag(v);
+			}
+		}
+	else if(x instanceof Double)
+		{
+		code(DOUBLE);
+		fixed(Double.doubleToRawLongBits((Double) x), 8);
+		}
+	else if(x instanceof Boolean)
+		code((Boolean) x ? TRUE : FALSE);
+	else if(handlers != null && writeHandled(x))
+		return;
+	else if(x instanceof Symbol)
+		{
+		meta(x);
+		named(SYMBOL, x, (Symbol) x);
+		}
+	else if(x instanceof IRecord)
+		throw new IllegalArgumentException("No binary handler for record " + x.getClass().getName());
+	else if(x instanceof IPersistentVector)
+		{
+		meta(x);
+		IPersistentVector v = (IPersistentVector) x;
+		code(VECTOR);
+		count(v.count());
+		for(int i = 0; i < v.count(); i++)
+			write(v.nth(i));
+		}
+	else if(x instanceof Sorted)
+		{
+		meta(x);
+		if(((Sorted) x).comparator() != RT.DEFAULT_COMPARATOR)
+			throw new IllegalArgumentException("Can't write sorted collection with a custom comparator");
+		if(x instanceof IPersistentMap)
+			entries(SORTED_MAP, RT.count(x), ((Iterable) x).iterator());
+		else
+			elements(SORTED_SET, RT.count(x), ((Iterable) x).iterator());
+		}
+	else if(x instanceof IPersistentMap)
+		{
+		meta(x);
+		entries(MAP, ((IPersistentMap) x).count(), ((Iterable) x).iterator());
+		}
+	else if(x instanceof IPersistentSet)
+		{
+		meta(x);
+		elements(SET, ((IPersistentSet) x).count(), ((Iterable) x).iterator());
+		}
+	else if(x instanceof ISeq || x instanceof IPersistentList)
+		{
+		meta(x);
+		code(LIST);
+		count(RT.count(x));
+		for(ISeq s = RT.seq(x); s != null; s = s.next())
+			write(s.first());
+		}
+	else if(x instanceof Integer)
+		{
+		code(INT);
+		zigzag((Integer) x);
+		}
+	else if(x instanceof Short || x instanceof Byte)
+		write(((Number) x).longValue());
+	else if(x instanceof Float)
+		{
+		code(FLOAT);
+		fixed(Float.floatToRawIntBits((Float) x), 4);
+		}
+	else if(x instanceof BigInt || x instanceof BigInteger)
+		{
+		code(BIGINT);
+		bytes((x instanceof BigInt ? ((BigInt) x).toBigInteger() : (BigInteger) x).toByteArray());
+		}
+	else if(x instanceof BigDecimal)
+		{
+		BigDecimal d = (BigDecimal) x;
+		code(BIGDEC);
+		zigzag(d.scale());
+		bytes(d.unscaledValue().toByteArray());
+		}
+	else if(x instanceof Ratio)
+		{
+		code(RATIO);
+		bytes(((Ratio) x).numerator.toByteArray());
+		bytes(((Ratio) x).denominator.toByteArray());
+		}
+	else if(x instanceof Character)
+		{
+		code(CHAR);
+		fixed((Character) x, 2);
+		}
+	else if(x instanceof Date)
+		{
+		code(INST);
+		zigzag(((Date) x).getTime());
+		}
+	else if(x instanceof UUID)
+		{
+		code(UUID);
+		fixed(((UUID) x).getMostSignificantBits(), 8);
+		fixed(((UUID) x).getLeastSignificantBits(), 8);
+		}
+	else if(x instanceof byte[])
+		{
+		code(BYTES);
+		bytes((byte[]) x);
+		}
+	else if(x instanceof TaggedLiteral)
+		{
+		code(TAGGED);
+		write(((TaggedLiteral) x).tag);
+		write(((TaggedLiteral) x).form);
+		}
+	else if(x instanceof Map)
+		entries(MAP, ((Map) x).size(), ((Map) x).entrySet().iterator());
+	else if(x instanceof Set)
+		elements(SET, ((Set) x).size(), ((Set) x).iterator());
+	else if(x instanceof List && x instanceof RandomAccess)
+		elements(VECTOR, ((List) x).size(), ((List) x).iterator());
+	else if(x instanceof Collection)
+		elements(LIST, ((Collection) x).size(), ((Collection) x).iterator());
+	else
+		throw new IllegalArgumentException("No binary handler for " + x.getClass().getName());
+}
+
+private boolean writeHandled(Object x){
+	for(Class c = x.getClass(); c != null; c = c.getSuperclass())
+		{
+		IFn h = (IFn) handlers.valAt(c);
+		if(h == null)
+			for(Class i : c.getInterfaces())
+				if((h = (IFn) handlers.valAt(i)) != null)
+					break;
+		if(h != null)
+			{
+			write(h.invoke(x));
+			return true;
+			}
+		}
+	return false;
+}
+}
@@ -0,0 +1,124 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A Writer that keeps track of the column and line of its output, for
+ * clojure.pprint.
+ *
+ * Derefs to itself, and looks up :max, :cur, :line and :base, so that the
+ * fields can be read as (:cur @@w), as with the ref of a map this used to be.
+ */
+public class ColumnWriter extends Writer implements IDeref, ILookup{
+
+static final Keyword MAX = Keyword.intern(null, "max");
+static final Keyword CUR = Keyword.intern(null, "cur");
+static final Keyword LINE = Keyword.intern(null, "line");
+static final Keyword BASE = Keyword.intern(null, "base");
+
+final Writer base;
+Object maxColumn;
+int column;
+int line;
+
+public ColumnWriter(Writer base, Object maxColumn){
+	this.base = base;
+	this.maxColumn = maxColumn;
+}
+
+public int getColumn(){
+	return column;
+}
+
+public int getLine(){
+	return line;
+}
+
+public Object getMaxColumn(){
+	return maxColumn;
+}
+
+public void setMaxColumn(Object maxColumn){
+	this.maxColumn = maxColumn;
+}
+
+public Writer getWriter(){
+	return base;
+}
+
+public void write(int c) throws IOException{
+	if(c == '\n')
+		{
+		column = 0;
+		line++;
+		}
+	else
+		column++;
+	base.write(c);
+}
+
+public void write(String s) throws IOException{
+	count(s, 0, s.length());
+	base.write(s);
+}
+
+public void write(String s, int off, int len) throws IOException{
+	count(s, off, len);
+	base.write(s, off, len);
+}
+
+public void write(char[] cbuf, int off, int len) throws IOException{
+	count(new String(cbuf, off, len), 0, len);
+	base.write(cbuf, off, len);
+}
+
+private void count(String s, int off, int len){
+	int nl = -1;
+	for(int i = off; i < off + len; i++)
+		if(s.charAt(i) == '\n')
+			{
+			nl = i;
+			line++;
+			}
+	column = nl < 0 ? column + len : off + len - nl - 1;
+}
+
+public void flush() throws IOException{
+	base.flush();
+}
+
+public void close() throws IOException{
+	flush();
+}
+
+public Object deref(){
+	return this;
+}
+
+public Object valAt(Object key){
+	return valAt(key, null);
+}
+
+public Object valAt(Object key, Object notFound){
+	if(key == CUR)
+		return (long) column;
+	if(key == LINE)
+		return (long) line;
+	if(key == MAX)
+		return maxColumn;
+	if(key == BASE)
+		return base;
+	return notFound;
+}
+}
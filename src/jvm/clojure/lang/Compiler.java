@@ -80,6 +80,7 @@ static final Symbol _AMP_ = Symbol.intern("&");
 static final Symbol ISEQ = Symbol.intern("clojure.lang.ISeq");
 
 static final Keyword inlineKey = Keyword.intern(null, "inline");
+static final Keyword redefKey = Keyword.intern(null, "redef");
 static final Keyword inlineAritiesKey = Keyword.intern(null, "inline-arities");
 static final Keyword staticKey = Keyword.intern(null, "static");
 static final Keyword arglistsKey = Keyword.intern(null, "arglists");
@@ -247,6 +248,18 @@ static final public Var IN_CATCH_FINALLY = Var.create(null).setDynamic();
 
 static final public Var NO_RECUR = Var.create(null).setDynamic();
 
+//LocalBinding->tag symbol, locals known to be instances of a class in the current branch
+static final public Var NARROWED_LOCALS = Var.create(null).setDynamic();
+
+//Integer, number of loops enclosing the form being analyzed
+static final public Var LOOP_DEPTH = Var.create(0).setDynamic();
+
+//site description->loop depth, reflective sites left in the file being loaded
+static final public Var REFLECTIVE_SITES = Var.create(null).setDynamic();
+
+//LetExpr.HoistedRoots of the loop being analyzed, with :hoist-vars
+static final public Var HOISTED_VARS = Var.create(null).setDynamic();
+
 //DynamicClassLoader
 static final public Var LOADER = Var.create().setDynamic();
 
@@ -274,6 +287,9 @@ static final public Var ADD_ANNOTATIONS = Var.intern(Namespace.findOrCreate(Symb
 static final public Keyword disableLocalsClearingKey = Keyword.intern("disable-locals-clearing");
 //要忽略的元数据（elide，省略）
 static final public Keyword elideMetaKey = Keyword.intern("elide-meta");
+static final public Keyword mergeFnsKey = Keyword.intern("merge-fns");
+static final public Keyword inferTypesKey = Keyword.intern("infer-types");
+static final public Keyword hoistVarsKey = Keyword.intern("hoist-vars");
 
 static final public Var COMPILER_OPTIONS;
 //获取编译器参数
@@ -317,6 +333,37 @@ static public Object getCompilerOption(Keyword k){
         return m;
     }
 
+static boolean inferTypes(){
+    return RT.booleanCast(getCompilerOption(inferTypesKey));
+}
+
+static void noteReflection(int line, int column, String what){
+    IPersistentMap sites = (IPersistentMap) REFLECTIVE_SITES.deref();
+    if(sites != null)
+        REFLECTIVE_SITES.set(sites.assoc(String.format("%s:%d:%d - %s", SOURCE_PATH.deref(), line, column, what),
+                                         LOOP_DEPTH.deref()));
+}
+
+//lists the reflective sites left after :infer-types, those in the deepest loops first
+static void reportReflection(){
+    IPersistentMap sites = (IPersistentMap) REFLECTIVE_SITES.deref();
+    if(RT.count(sites) == 0 || !RT.booleanCast(RT.WARN_ON_REFLECTION.deref()))
+        return;
+    ArrayList<Map.Entry> entries = new ArrayList<Map.Entry>();
+    for(ISeq s = RT.seq(sites); s != null; s = s.next())
+        entries.add((Map.Entry) s.first());
+    Collections.sort(entries, new Comparator<Map.Entry>(){
+        public int compare(Map.Entry a, Map.Entry b){
+            return (Integer) b.getValue() - (Integer) a.getValue();
+        }
+    });
+    PrintWriter w = RT.errPrintWriter();
+    w.format("Reflection report, %s: %d reflective site(s) left\n", SOURCE_PATH.deref(), entries.size());
+    for(Map.Entry e : entries)
+        w.format("  %s (loop depth %d)\n", e.getKey(), e.getValue());
+    w.flush();
+}
+
 //Integer
 static final public Var LINE = Var.create(0).setDynamic();
 static final public Var COLUMN = Var.create(0).setDynamic();
@@ -353,6 +400,9 @@ static final public Var CLEAR_PATH = Var.create(null).setDynamic();
 //tail of PathNode chain
 static final public Var CLEAR_ROOT = Var.create(null).setDynamic();
 
+//FnGroup
+static final public Var FN_GROUP = Var.create(null).setDynamic();
+
 //LocalBinding -> Set<LocalBindingExpr>
 static final public Var CLEAR_SITES = Var.create(null).setDynamic();
 
@@ -685,6 +735,8 @@ public static class AssignExpr implements Expr{
 public static class VarExpr implements Expr, AssignableExpr{
     public final Var var;
     public final Object tag;
+    //local holding the root read before the loop, see LetExpr.hoist
+    LetExpr.HoistedRoot hoisted;
     final static Method getMethod = Method.getMethod("Object get()");
     final static Method setMethod = Method.getMethod("Object set(Object)");
 
@@ -700,6 +752,12 @@ public static class VarExpr implements Expr, AssignableExpr{
     }
 
     public void emit(C context, ObjExpr objx, GeneratorAdapter gen){
+        if(hoisted != null)
+            {
+            if(context != C.STATEMENT)
+                gen.visitVarInsn(OBJECT_TYPE.getOpcode(Opcodes.ILOAD), hoisted.idx);
+            return;
+            }
         objx.emitVarValue(gen,var);
         if(context == C.STATEMENT)
             {
@@ -1070,7 +1128,7 @@ static public abstract class HostExpr implements Expr, MaybePrimitiveExpr{
                 for(ISeq s = RT.next(call); s != null; s = s.next())
                     args = args.cons(analyze(context == C.EVAL ? context : C.EXPRESSION, s.first()));
                 if(c != null)
-                    return new StaticMethodExpr(source, line, column, tag, c, munge(sym.name), args);
+                    return StaticMethodExpr.fold(new StaticMethodExpr(source, line, column, tag, c, munge(sym.name), args));
                 else
                     return new InstanceMethodExpr(source, line, column, tag, instance, munge(sym.name), args);
                 }
@@ -1220,12 +1278,14 @@ static class InstanceFieldExpr extends FieldExpr implements AssignableExpr{
                 RT.errPrintWriter()
                     .format("Reflection warning, %s:%d:%d - reference to field %s can't be resolved.\n",
                                     SOURCE_PATH.deref(), line, column, fieldName);
+                noteReflection(line, column, "reference to field " + fieldName);
                 }
             else
                 {
                 RT.errPrintWriter()
                     .format("Reflection warning, %s:%d:%d - reference to field %s on %s can't be resolved.\n",
                                     SOURCE_PATH.deref(), line, column, fieldName, targetClass.getName());
+                noteReflection(line, column, "reference to field " + fieldName + " on " + targetClass.getName());
                 }
             }
     }
@@ -1536,6 +1596,7 @@ static class InstanceMethodExpr extends MethodExpr{
                     RT.errPrintWriter()
                         .format("Reflection warning, %s:%d:%d - call to method %s on %s can't be resolved (no such method).\n",
                             SOURCE_PATH.deref(), line, column, methodName, target.getJavaClass().getName());
+                    noteReflection(line, column, "call to method " + methodName + " on " + target.getJavaClass().getName());
                     }
                 }
             else
@@ -1566,6 +1627,7 @@ static class InstanceMethodExpr extends MethodExpr{
                     RT.errPrintWriter()
                         .format("Reflection warning, %s:%d:%d - call to method %s on %s can't be resolved (argument types: %s).\n",
                             SOURCE_PATH.deref(), line, column, methodName, target.getJavaClass().getName(), getTypeStringForArgs(args));
+                    noteReflection(line, column, "call to method " + methodName + " on " + target.getJavaClass().getName());
                     }
                 }
             }
@@ -1577,6 +1639,7 @@ static class InstanceMethodExpr extends MethodExpr{
                 RT.errPrintWriter()
                     .format("Reflection warning, %s:%d:%d - call to method %s can't be resolved (target class is unknown).\n",
                         SOURCE_PATH.deref(), line, column, methodName);
+                noteReflection(line, column, "call to method " + methodName);
                 }
             }
     }
@@ -1730,6 +1793,7 @@ static class StaticMethodExpr extends MethodExpr{
             RT.errPrintWriter()
                 .format("Reflection warning, %s:%d:%d - call to static method %s on %s can't be resolved (argument types: %s).\n",
                     SOURCE_PATH.deref(), line, column, methodName, c.getName(), getTypeStringForArgs(args));
+            noteReflection(line, column, "call to static method " + methodName + " on " + c.getName());
             }
         if(method != null && warnOnBoxedKeyword.equals(RT.UNCHECKED_MATH.deref()) && isBoxedMath(method))
             {
@@ -1739,6 +1803,43 @@ static class StaticMethodExpr extends MethodExpr{
             }
     }
 
+    //Numbers calls on literals, as +, * etc inline to, are done at compile time,
+    //unless they throw (overflow, divide by zero), which is then left to runtime
+    //BigDecimal math depends on *math-context*, so is never folded
+    static Expr fold(StaticMethodExpr e){
+        if(e.c != Numbers.class || e.method == null || e.tag != null)
+            return e;
+        Class rc = e.method.getReturnType();
+        if(!(rc == long.class || rc == double.class || rc == Number.class || rc == Object.class))
+            return e;
+        Object[] argvals = new Object[e.args.count()];
+        for(int i = 0; i < argvals.length; i++)
+            {
+            Expr arg = (Expr) e.args.nth(i);
+            if(arg instanceof NumberExpr)
+                argvals[i] = ((NumberExpr) arg).n;
+            else if(arg instanceof ConstantExpr && ((ConstantExpr) arg).v instanceof Number
+                    && !(((ConstantExpr) arg).v instanceof java.math.BigDecimal))
+                argvals[i] = ((ConstantExpr) arg).v;
+            else
+                return e;
+            }
+        Object ret;
+        try
+            {
+            ret = e.method.invoke(null, argvals);
+            }
+        catch(Exception ex)
+            {
+            return e;
+            }
+        if(rc.isPrimitive())
+            return new NumberExpr((Number) ret);
+        if(ret instanceof Long || ret instanceof Double || ret instanceof BigInt || ret instanceof Ratio)
+            return new ConstantExpr(ret);
+        return e;
+    }
+
     public static boolean isBoxedMath(java.lang.reflect.Method m) {
         Class c = m.getDeclaringClass();
         if(c.equals(Numbers.class))
@@ -2618,6 +2719,7 @@ public static class NewExpr implements Expr{
             RT.errPrintWriter()
               .format("Reflection warning, %s:%d:%d - call to %s ctor can't be resolved.\n",
                       SOURCE_PATH.deref(), line, column, c.getName());
+            noteReflection(line, column, "call to " + c.getName() + " ctor");
             }
     }
 
@@ -2852,7 +2954,8 @@ public static class IfExpr implements Expr, MaybePrimitiveExpr{
             Expr thenexpr, elseexpr;
             try {
                 Var.pushThreadBindings(
-                        RT.map(CLEAR_PATH, new PathNode(PATHTYPE.PATH,branch)));
+                        RT.map(CLEAR_PATH, new PathNode(PATHTYPE.PATH,branch),
+                               NARROWED_LOCALS, narrowedLocals(testexpr)));
                 thenexpr = analyze(context, RT.third(form));
                 }
             finally{
@@ -2872,6 +2975,28 @@ public static class IfExpr implements Expr, MaybePrimitiveExpr{
                               thenexpr,
                               elseexpr);
         }
+
+        //with :infer-types, the then branch of (if (instance? C x) ...) sees local x as hinted with C,
+        //also through a local bound to the instance? test, as and/when-let produce
+        static Object narrowedLocals(Expr testexpr){
+            Object narrowed = NARROWED_LOCALS.deref();
+            if(testexpr instanceof LocalBindingExpr && ((LocalBindingExpr) testexpr).b.init instanceof InstanceOfExpr)
+                testexpr = ((LocalBindingExpr) testexpr).b.init;
+            if(!(testexpr instanceof InstanceOfExpr) || !inferTypes())
+                return narrowed;
+            InstanceOfExpr ie = (InstanceOfExpr) testexpr;
+            if(!(ie.expr instanceof LocalBindingExpr) || ie.c.getName().indexOf('.') < 0)
+                return narrowed;
+            LocalBinding lb = ((LocalBindingExpr) ie.expr).b;
+            if(lb.getPrimitiveType() != null
+               || RT.booleanCast(RT.get(lb.sym.meta(), Keyword.intern("volatile-mutable")))
+               || RT.booleanCast(RT.get(lb.sym.meta(), Keyword.intern("unsynchronized-mutable"))))
+                return narrowed;
+            Class lc = ie.expr.hasJavaClass() ? ie.expr.getJavaClass() : null;
+            if(lc != null && (lc == ie.c || !lc.isAssignableFrom(ie.c)))
+                return narrowed;
+            return RT.assoc(narrowed, lb, Symbol.intern(ie.c.getName()));
+        }
     }
 }
 //clojure符号中的某些字符，在jvm字节码中是不允许的。通过此映射进行转换。
@@ -3246,10 +3371,10 @@ public static class VectorExpr implements Expr{
     }
 
     public Object eval() {
-        IPersistentVector ret = PersistentVector.EMPTY;
+        Object[] ret = new Object[args.count()];
         for(int i = 0; i < args.count(); i++)
-            ret = (IPersistentVector) ret.cons(((Expr) args.nth(i)).eval());
-        return ret;
+            ret[i] = ((Expr) args.nth(i)).eval();
+        return RT.vector(ret);
     }
 
     public void emit(C context, ObjExpr objx, GeneratorAdapter gen){
@@ -3284,14 +3409,14 @@ public static class VectorExpr implements Expr{
                     .parse(context == C.EVAL ? context : C.EXPRESSION, ((IObj) form).meta()));
         else if (constant)
             {
-            PersistentVector rv = PersistentVector.EMPTY;
+            Object[] rv = new Object[args.count()];
             for(int i =0;i<args.count();i++)
                 {
                 LiteralExpr ve = (LiteralExpr)args.nth(i);
-                rv = rv.cons(ve.val());
+                rv[i] = ve.val();
                 }
 //          System.err.println("Constant: " + rv);
-            return new ConstantExpr(rv);
+            return new ConstantExpr(RT.vector(rv));
             }
         else
             return ret;
@@ -3636,6 +3761,8 @@ static class InvokeExpr implements Expr{
     public java.lang.reflect.Method onMethod;
     static Keyword onKey = Keyword.intern("on");
     static Keyword methodMapKey = Keyword.intern("method-map");
+    static final Symbol RT_SYM = Symbol.intern("clojure.lang.RT");
+    static final Symbol BOX = Symbol.intern("box");
 
     public InvokeExpr(String source, int line, int column, Symbol tag, Expr fexpr, IPersistentVector args) {
         this.source = source;
@@ -3815,10 +3942,19 @@ static class InvokeExpr implements Expr{
     }
 
     static public Expr parse(C context, ISeq form) {
+        Object op = form.first();
+        if(context != C.EVAL && op instanceof ISeq)
+            {
+            //expanded once here, and analyzed as expanded if not inlined
+            op = macroexpand(op);
+            Object inlined = inlineFnCall(context, op, form);
+            if(inlined != null)
+                return analyze(context, inlined);
+            }
         if(context != C.EVAL)
             context = C.EXPRESSION;
         //除了#=，form.first() 总是符号，fexpr是VarExpr
-        Expr fexpr = analyze(context, form.first());
+        Expr fexpr = analyze(context, op);
         if(fexpr instanceof VarExpr && ((VarExpr)fexpr).var.equals(INSTANCE) && RT.count(form) == 3)
 //instanceof? 调用
             {
@@ -3860,6 +3996,20 @@ static class InvokeExpr implements Expr{
                                        RT.listStar(Symbol.intern(".invokePrim"),
                                                 ((Symbol) form.first()).withMeta(RT.map(RT.TAG_KEY, Symbol.intern(primc))),
                                                 form.next()));
+                    //no interface for this sig, call the static entry of the fn class bound now,
+                    //which checks the fn passed is still of that class
+                    if(FnMethod.primDirect(args) && v.hasRoot())
+                        {
+                        Class c = v.getRawRoot().getClass();
+                        if(!Reflector.getMethods(c, arity + 1, FnMethod.PRIM_STATIC_METHOD, true).isEmpty())
+                            {
+                            PersistentVector sargs = PersistentVector.EMPTY.cons(fexpr);
+                            for(ISeq as = RT.seq(form.next()); as != null; as = as.next())
+                                sargs = sargs.cons(analyze(C.EXPRESSION, as.first()));
+                            return new StaticMethodExpr((String) SOURCE.deref(), lineDeref(), columnDeref(), tagOf(form),
+                                                        c, FnMethod.PRIM_STATIC_METHOD, sargs);
+                            }
+                        }
                     break;
                     }
                 }
@@ -3893,6 +4043,72 @@ static class InvokeExpr implements Expr{
 
         return new InvokeExpr((String) SOURCE.deref(), lineDeref(), columnDeref(), tagOf(form), fexpr, args);
     }
+
+    //((fn* [params] body) args), where the fn can't escape, becomes
+    //(let* [g args] (loop*/let* [params (RT/box g)] body)) - no class, no instance
+    //params stay boxed, as they would be in the fn
+    //loop* keeps recur to the fn head working, but only in return position,
+    //elsewhere a literal recur in the body leaves the call alone
+    //op is form's operator, macroexpanded
+    static Object inlineFnCall(C context, Object op, ISeq form){
+        if(!(op instanceof ISeq) || !FN.equals(RT.first(op)) || RT.meta(RT.first(op)) != null)
+            return null;
+        IPersistentMap fmeta = RT.meta(op);
+        if(fmeta != null && RT.count(fmeta.without(RT.LINE_KEY).without(RT.COLUMN_KEY).without(RT.FILE_KEY)) > 0)
+            return null;
+        ISeq methods = RT.next(op);
+        //named fns may refer to themselves
+        if(RT.first(methods) instanceof Symbol)
+            return null;
+        if(RT.first(methods) instanceof IPersistentVector)
+            methods = RT.list(methods);
+        int arity = RT.count(form.next());
+        ISeq method = null;
+        for(ISeq s = methods; s != null; s = s.next())
+            {
+            Object m = s.first();
+            if(m instanceof ISeq && RT.first(m) instanceof IPersistentVector
+               && ((IPersistentVector) RT.first(m)).count() == arity)
+                method = (ISeq) m;
+            }
+        if(method == null)
+            return null;
+        IPersistentVector params = (IPersistentVector) method.first();
+        if(RT.meta(params) != null)
+            return null;
+        for(int i = 0; i < params.count(); i++)
+            {
+            Object p = params.nth(i);
+            if(!(p instanceof Symbol) || ((Symbol) p).getNamespace() != null || p.equals(_AMP_)
+               || FnMethod.primTag(tagOf(p)) != null)
+                return null;
+            }
+        boolean recurs = refersTo(RECUR, method.next());
+        if(recurs && context != C.RETURN)
+            return null;
+
+        PersistentVector argBindings = PersistentVector.EMPTY;
+        PersistentVector bindings = PersistentVector.EMPTY;
+        ISeq args = form.next();
+        for(int i = 0; i < params.count(); i++, args = args.next())
+            {
+            Symbol g = Symbol.intern("arg__" + RT.nextID());
+            argBindings = argBindings.cons(g).cons(args.first());
+            bindings = bindings.cons(params.nth(i)).cons(RT.list(DOT, RT_SYM, RT.list(BOX, g)));
+            }
+        Object body = RT.listStar(context == C.RETURN ? LOOP : LET, bindings, method.next());
+        return RT.list(LET, argBindings, body);
+    }
+
+    static boolean refersTo(Symbol sym, Object form){
+        if(sym.equals(form))
+            return true;
+        if(form instanceof IPersistentCollection)
+            for(ISeq s = RT.seq(form); s != null; s = s.next())
+                if(refersTo(sym, s.first()))
+                    return true;
+        return false;
+    }
 }
 
 static class SourceDebugExtensionAttribute extends Attribute{
@@ -3917,6 +4133,12 @@ static public class FnExpr extends ObjExpr{
     IPersistentCollection methods;
     private boolean hasPrimSigs;
     private boolean hasMeta;
+    //shared class this fn's methods are written into, see FnGroup
+    FnGroup group;
+    int groupId;
+    int[] groupConstants;
+    int[] groupKeywordSites;
+    int[] groupProtocolSites;
     //  String superName = null;
 
     public FnExpr(Object tag){
@@ -4014,6 +4236,7 @@ static public class FnExpr extends ObjExpr{
         fn.internalName = fn.name.replace('.', '/');
         fn.objtype = Type.getObjectType(fn.internalName);
         ArrayList<String> prims = new ArrayList();
+        boolean primDirect = false;
         try
             {
             Var.pushThreadBindings(
@@ -4063,6 +4286,8 @@ static public class FnExpr extends ObjExpr{
                     throw Util.runtimeException("Can't have 2 overloads with same arity");
                 if(f.prim != null)
                     prims.add(f.prim);
+                if(f.primDirect)
+                    primDirect = true;
                 }
             if(variadicMethod != null)
                 {
@@ -4100,13 +4325,15 @@ static public class FnExpr extends ObjExpr{
             {
             Var.popThreadBindings();
             }
-        fn.hasPrimSigs = prims.size() > 0;
+        fn.hasPrimSigs = prims.size() > 0 || primDirect;
         //获取origForm这个对象的元数据
         IPersistentMap fmeta = RT.meta(origForm);
         if(fmeta != null)
             fmeta = fmeta.without(RT.LINE_KEY).without(RT.COLUMN_KEY).without(RT.FILE_KEY);
 
         fn.hasMeta = RT.count(fmeta) > 0;
+        if(enclosingMethod == null)
+            fn.group = FnGroup.groupFor(fn);
 
         try
             {
@@ -4121,6 +4348,8 @@ static public class FnExpr extends ObjExpr{
             throw Util.sneakyThrow(e);
             }
         fn.getCompiledClass();
+        if(fn.group != null)
+            fn.groupId = fn.group.add(fn);
 
         if(fn.supportsMeta())
             {
@@ -4159,6 +4388,308 @@ static public class FnExpr extends ObjExpr{
 //      else
             emit(C.EXPRESSION,objx,gen);
     }
+
+    public void emit(C context, ObjExpr objx, GeneratorAdapter gen){
+        if(group == null)
+            {
+            super.emit(context, objx, gen);
+            return;
+            }
+        gen.newInstance(group.objtype);
+        gen.dup();
+        gen.push(groupId);
+        gen.invokeConstructor(group.objtype, FnGroup.ctor);
+        if(context == C.STATEMENT)
+            gen.pop();
+    }
+
+    boolean writesClassFile(){
+        return group == null && super.writesClassFile();
+    }
+
+    String constantName(int id){
+        return super.constantName(groupConstants != null ? groupConstants[id] : id);
+    }
+
+    String siteName(int n){
+        return super.siteName(groupKeywordSites != null ? groupKeywordSites[n] : n);
+    }
+
+    String thunkName(int n){
+        return super.thunkName(groupKeywordSites != null ? groupKeywordSites[n] : n);
+    }
+
+    String cachedClassName(int n){
+        return super.cachedClassName(groupProtocolSites != null ? groupProtocolSites[n] : n);
+    }
+}
+
+//When AOT compiling with the :merge-fns compiler option, simple top-level fns
+//(fixed arity, no prim sigs, no meta) are not given a class of their own.
+//Their methods are written into a shared class instead, each fn being an
+//instance of it carrying its index in __id, and every invoke arity switching
+//on that index. Constants are deduplicated across the fns of a group.
+static public class FnGroup extends ObjExpr{
+    static final int MAX_FNS = 64;
+    static final int MAX_CONSTANTS = 1024;
+    final static Method ctor = Method.getMethod("void <init>(int)");
+    final static Type ARITY_EXCEPTION_TYPE = Type.getType(ArityException.class);
+
+    final ArrayList<FnExpr> fns = new ArrayList<FnExpr>();
+    final ArrayList<String> methodNames = new ArrayList<String>();
+    final IdentityHashMap<Object,Integer> constantIds = new IdentityHashMap<Object,Integer>();
+    final HashMap<Object,Integer> valueConstantIds = new HashMap<Object,Integer>();
+    int lineBefore = Integer.MAX_VALUE;
+    int lineAfter = 0;
+
+    FnGroup(){
+        super(null);
+        name = munge(currentNS().name.name) + "$fn_group__" + RT.nextID();
+        internalName = name.replace('.', '/');
+        objtype = Type.getObjectType(internalName);
+        constants = PersistentVector.EMPTY;
+        keywordCallsites = PersistentVector.EMPTY;
+        protocolCallsites = PersistentVector.EMPTY;
+    }
+
+    static FnGroup groupFor(FnExpr fn) {
+        if(!RT.booleanCast(getCompilerOption(mergeFnsKey))
+           || !RT.booleanCast(COMPILE_FILES.deref())
+           || !FN_GROUP.isBound())
+            return null;
+        if(fn.isVariadic() || fn.hasPrimSigs || fn.hasMeta || fn.onceOnly || fn.isStatic
+           || fn.closes.count() > 0)
+            return null;
+        FnGroup group = (FnGroup) FN_GROUP.deref();
+        if(group == null || group.isFull())
+            {
+            if(group != null)
+                group.write();
+            group = new FnGroup();
+            FN_GROUP.set(group);
+            }
+        return group;
+    }
+
+    boolean isFull(){
+        return fns.size() >= MAX_FNS || constants.count() >= MAX_CONSTANTS;
+    }
+
+    //equal constants of these types emit identical values, so they can share a field
+    static Object constantKey(Object o){
+        if(o instanceof String || o instanceof Keyword || o instanceof Var
+           || o instanceof Long || o instanceof Double || o instanceof Character
+           || (o instanceof Symbol && ((Symbol) o).meta() == null))
+            return RT.vector(o.getClass(), o);
+        return null;
+    }
+
+    int constantId(Object o){
+        Object key = constantKey(o);
+        Integer id = key != null ? valueConstantIds.get(key) : constantIds.get(o);
+        if(id == null)
+            {
+            id = constants.count();
+            constants = constants.cons(o);
+            if(key != null)
+                valueConstantIds.put(key, id);
+            else
+                constantIds.put(o, id);
+            }
+        return id;
+    }
+
+    int add(FnExpr fn){
+        fn.groupConstants = new int[fn.constants.count()];
+        for(int i = 0; i < fn.constants.count(); i++)
+            fn.groupConstants[i] = constantId(fn.constants.nth(i));
+        fn.groupKeywordSites = new int[fn.keywordCallsites.count()];
+        for(int i = 0; i < fn.keywordCallsites.count(); i++)
+            {
+            fn.groupKeywordSites[i] = keywordCallsites.count();
+            keywordCallsites = keywordCallsites.cons(fn.keywordCallsites.nth(i));
+            }
+        fn.groupProtocolSites = new int[fn.protocolCallsites.count()];
+        for(int i = 0; i < fn.protocolCallsites.count(); i++)
+            {
+            fn.groupProtocolSites[i] = protocolCallsites.count();
+            protocolCallsites = protocolCallsites.cons(fn.protocolCallsites.nth(i));
+            }
+        fn.objtype = objtype;
+        lineBefore = Math.min(lineBefore, (Integer) LINE_BEFORE.deref());
+        lineAfter = Math.max(lineAfter, (Integer) LINE_AFTER.deref() + 1);
+        String simpleName = fn.name.substring(fn.name.lastIndexOf('$') + 1);
+        methodNames.add(simpleName + "__" + fns.size());
+        fns.add(fn);
+        return fns.size() - 1;
+    }
+
+    void write() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        ClassVisitor cv = cw;
+        cv.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL, internalName, null, "clojure/lang/AFunction", null);
+        String source = (String) SOURCE.deref();
+        if(source != null && SOURCE_PATH.deref() != null)
+            {
+            String smap = "SMAP\n" +
+                          ((source.lastIndexOf('.') > 0) ?
+                           source.substring(0, source.lastIndexOf('.'))
+                            :source)
+                          + ".java\n" +
+                          "Clojure\n" +
+                          "*S Clojure\n" +
+                          "*F\n" +
+                          "+ 1 " + source + "\n" +
+                          (String) SOURCE_PATH.deref() + "\n" +
+                          "*L\n" +
+                          String.format("%d#1,%d:%d\n", lineBefore, lineAfter - lineBefore, lineBefore) +
+                          "*E";
+            cv.visitSource(source, smap);
+            }
+
+        for(int i = 0; i < constants.count(); i++)
+            cv.visitField(ACC_PUBLIC + ACC_FINAL + ACC_STATIC, constantName(i), constantType(i).getDescriptor(),
+                          null, null);
+        for(int i = 0; i < keywordCallsites.count(); i++)
+            {
+            cv.visitField(ACC_FINAL + ACC_STATIC, siteNameStatic(i), KEYWORD_LOOKUPSITE_TYPE.getDescriptor(),
+                          null, null);
+            cv.visitField(ACC_STATIC, thunkNameStatic(i), ILOOKUP_THUNK_TYPE.getDescriptor(), null, null);
+            }
+        for(int i = 0; i < protocolCallsites.count(); i++)
+            cv.visitField(ACC_PRIVATE + ACC_STATIC, cachedClassName(i), CLASS_TYPE.getDescriptor(), null, null);
+        cv.visitField(ACC_FINAL, "__id", Type.INT_TYPE.getDescriptor(), null, null);
+
+        GeneratorAdapter clinitgen = new GeneratorAdapter(ACC_PUBLIC + ACC_STATIC,
+                                                          Method.getMethod("void <clinit> ()"),
+                                                          null,
+                                                          null,
+                                                          cv);
+        clinitgen.visitCode();
+        if(constants.count() > 0)
+            emitConstants(clinitgen);
+        if(keywordCallsites.count() > 0)
+            emitKeywordCallsites(clinitgen);
+        clinitgen.returnValue();
+        clinitgen.endMethod();
+
+        GeneratorAdapter ctorgen = new GeneratorAdapter(ACC_PUBLIC, ctor, null, null, cv);
+        ctorgen.visitCode();
+        ctorgen.loadThis();
+        ctorgen.invokeConstructor(FnExpr.aFnType, voidctor);
+        ctorgen.loadThis();
+        ctorgen.loadArg(0);
+        ctorgen.putField(objtype, "__id", Type.INT_TYPE);
+        ctorgen.returnValue();
+        ctorgen.endMethod();
+
+        //the fns' own methods, renamed
+        for(int k = 0; k < fns.size(); k++)
+            {
+            FnExpr fn = fns.get(k);
+            for(ISeq s = RT.seq(fn.methods); s != null; s = s.next())
+                ((FnMethod) s.first()).doEmit(fn, cv, methodNames.get(k));
+            }
+
+        //invoke for each arity used, dispatching on __id
+        for(int arity = 0; arity <= MAX_POSITIONAL_ARITY; arity++)
+            {
+            Label[] labels = new Label[fns.size()];
+            boolean used = false;
+            for(int k = 0; k < fns.size(); k++)
+                if(hasArity(fns.get(k), arity))
+                    {
+                    labels[k] = new Label();
+                    used = true;
+                    }
+            if(!used)
+                continue;
+
+            GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC,
+                                                        new Method("invoke", OBJECT_TYPE, ARG_TYPES[arity]),
+                                                        null,
+                                                        EXCEPTION_TYPES,
+                                                        cv);
+            gen.visitCode();
+            Label defaultLabel = gen.newLabel();
+            for(int k = 0; k < fns.size(); k++)
+                if(labels[k] == null)
+                    labels[k] = defaultLabel;
+            gen.loadThis();
+            gen.getField(objtype, "__id", Type.INT_TYPE);
+            gen.visitTableSwitchInsn(0, fns.size() - 1, defaultLabel, labels);
+            for(int k = 0; k < fns.size(); k++)
+                {
+                if(labels[k] == defaultLabel)
+                    continue;
+                gen.mark(labels[k]);
+                gen.loadThis();
+                //clear the args as they are passed on, so this frame doesn't hold the head of a seq
+                for(int i = 0; i < arity; i++)
+                    {
+                    gen.loadArg(i);
+                    gen.visitInsn(Opcodes.ACONST_NULL);
+                    gen.storeArg(i);
+                    }
+                gen.invokeVirtual(objtype, new Method(methodNames.get(k), OBJECT_TYPE, ARG_TYPES[arity]));
+                gen.returnValue();
+                }
+            gen.mark(defaultLabel);
+            gen.loadThis();
+            gen.push(arity);
+            gen.invokeVirtual(objtype, Method.getMethod("Object throwArity(int)"));
+            gen.returnValue();
+            gen.endMethod();
+            }
+
+        //report arity errors against the fn's own name, not the group's
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC,
+                                                    Method.getMethod("Object throwArity(int)"),
+                                                    null,
+                                                    EXCEPTION_TYPES,
+                                                    cv);
+        gen.visitCode();
+        Label[] labels = new Label[fns.size()];
+        Label nameLabel = gen.newLabel();
+        for(int k = 0; k < fns.size(); k++)
+            labels[k] = gen.newLabel();
+        gen.loadThis();
+        gen.getField(objtype, "__id", Type.INT_TYPE);
+        gen.visitTableSwitchInsn(0, fns.size() - 1, labels[0], labels);
+        for(int k = 0; k < fns.size(); k++)
+            {
+            String fnName = fns.get(k).name;
+            gen.mark(labels[k]);
+            gen.push(demunge(fnName.substring(fnName.lastIndexOf('.') + 1)));
+            gen.goTo(nameLabel);
+            }
+        gen.mark(nameLabel);
+        gen.newInstance(ARITY_EXCEPTION_TYPE);
+        gen.dupX1();
+        gen.swap();
+        gen.loadArg(0);
+        gen.swap();
+        gen.invokeConstructor(ARITY_EXCEPTION_TYPE, Method.getMethod("void <init>(int,String)"));
+        gen.throwException();
+        gen.endMethod();
+
+        cv.visitEnd();
+        try
+            {
+            writeClassFile(internalName, cw.toByteArray());
+            }
+        catch(IOException e)
+            {
+            throw Util.sneakyThrow(e);
+            }
+    }
+
+    static boolean hasArity(FnExpr fn, int arity){
+        for(ISeq s = RT.seq(fn.methods); s != null; s = s.next())
+            if(((FnMethod) s.first()).reqParms.count() == arity)
+                return true;
+        return false;
+    }
 }
 
 static public class ObjExpr implements Expr{
@@ -4660,13 +5191,13 @@ static public class ObjExpr implements Expr{
         cv.visitEnd();
 
         bytecode = cw.toByteArray();
-        if(RT.booleanCast(COMPILE_FILES.deref()))
+        if(writesClassFile())
             writeClassFile(internalName, bytecode);
 //      else
 //          getCompiledClass();
     }
 
-    private void emitKeywordCallsites(GeneratorAdapter clinitgen){
+    void emitKeywordCallsites(GeneratorAdapter clinitgen){
         for(int i=0;i<keywordCallsites.count();i++)
             {
             Keyword k = (Keyword) keywordCallsites.nth(i);
@@ -4681,6 +5212,10 @@ static public class ObjExpr implements Expr{
             }
     }
 
+    boolean writesClassFile(){
+        return RT.booleanCast(COMPILE_FILES.deref());
+    }
+
     protected void emitStatics(ClassVisitor gen){
     }
 
@@ -5280,6 +5815,9 @@ public static class FnMethod extends ObjMethod{
     Class retClass;
     //函数的primitive interface(如果有的话)
     String prim ;
+    //prim sig the IFn$ interfaces can't express, emitted as a direct invokePrim
+    boolean primDirect;
+    static final String PRIM_STATIC_METHOD = "invokePrimStatic";
 
     public FnMethod(ObjExpr objx, ObjMethod parent){
         super(objx, parent);
@@ -5300,16 +5838,42 @@ public static class FnMethod extends ObjMethod{
         throw new IllegalArgumentException("Only long and double primitives are supported");
     }
 
+    static Class primTag(Object x){
+        Class c = null;
+        if(x instanceof Class)
+            c = (Class) x;
+        else if(x instanceof Symbol)
+            c = primClass((Symbol) x);
+        if(c == null || !c.isPrimitive())
+            return null;
+        return c;
+    }
+
+    //true if the arglist has primitive hints beyond what the IFn$ interfaces cover:
+    //int, float, short, byte, char or boolean, or longs/doubles with more than 4 args
+    static public boolean primDirect(IPersistentVector arglist) {
+        boolean prim = false;
+        for(int i=0;i<=arglist.count();i++)
+            {
+            Class c = primTag(i < arglist.count() ? tagOf(arglist.nth(i)) : tagOf(arglist));
+            if(c == null)
+                continue;
+            if(!(c == long.class || c == double.class))
+                return true;
+            prim = true;
+            }
+        return prim && arglist.count() > 4;
+    }
+
     static public String primInterface(IPersistentVector arglist) {
+        if(primDirect(arglist))
+            return null;
         StringBuilder sb = new StringBuilder();
         for(int i=0;i<arglist.count();i++)
             sb.append(classChar(tagOf(arglist.nth(i))));
         sb.append(classChar(tagOf(arglist)));
         String ret = sb.toString();
         boolean prim = ret.contains("L") || ret.contains("D");
-        if(prim && arglist.count() > 4)
-            //如果参数有类型提示，那么参数个数必须在4个以内
-            throw new IllegalArgumentException("fns taking primitives support only 4 or fewer args");
         if(prim)
             return "clojure.lang.IFn$" + ret;
         return null;
@@ -5342,10 +5906,12 @@ public static class FnMethod extends ObjMethod{
             method.prim = primInterface(parms);
             if(method.prim != null)
                 method.prim = method.prim.replace('.', '/');
+            method.primDirect = primDirect(parms);
 
             //函数返回值的类型提示，附在参数向量上
             method.retClass = tagClass(tagOf(parms));
-            if(method.retClass.isPrimitive() && !(method.retClass == double.class || method.retClass == long.class))
+            if(method.retClass.isPrimitive() && !method.primDirect
+               && !(method.retClass == double.class || method.retClass == long.class))
                 throw new IllegalArgumentException("Only long and double primitives are supported");
 
             //register 'this' as local 0
@@ -5389,12 +5955,12 @@ public static class FnMethod extends ObjMethod{
 //                      p = (Symbol) ((IObj) p).withMeta((IPersistentMap) RT.assoc(RT.meta(p), RT.TAG_KEY, null));
 //                      }
 //                      throw Util.runtimeException("Non-static fn can't have primitive parameter: " + p);
-                    if(pc.isPrimitive() && !(pc == double.class || pc == long.class))
+                    if(pc.isPrimitive() && !method.primDirect && !(pc == double.class || pc == long.class))
                         throw new IllegalArgumentException("Only long and double primitives are supported: " + p);
 
                     if(state == PSTATE.REST && tagOf(p) != null)
                         throw Util.runtimeException("& arg cannot have type hint");
-                    if(state == PSTATE.REST && method.prim != null)
+                    if(state == PSTATE.REST && (method.prim != null || method.primDirect))
                         //如果参数有类型提示，则不支持不定参数
                         throw Util.runtimeException("fns taking primitives cannot be variadic");
                                             
@@ -5427,7 +5993,7 @@ public static class FnMethod extends ObjMethod{
             LOOP_LOCALS.set(argLocals);
             method.argLocals = argLocals;
 //          if(isStatic)
-            if(method.prim != null)
+            if(method.prim != null || method.primDirect)
                 {
                 method.argtypes = argtypes.toArray(new Type[argtypes.size()]);
                 method.argclasses = argclasses.toArray(new Class[argtypes.size()]);
@@ -5448,7 +6014,7 @@ public static class FnMethod extends ObjMethod{
     }
 
     public void emit(ObjExpr fn, ClassVisitor cv){
-        if(prim != null)
+        if(prim != null || primDirect)
             doEmitPrim(fn, cv);
         else if(fn.isStatic)
             doEmitStatic(fn,cv);
@@ -5516,7 +6082,7 @@ public static class FnMethod extends ObjMethod{
 
     public void doEmitPrim(ObjExpr fn, ClassVisitor cv){
         Type returnType;
-        if (retClass == double.class || retClass == long.class)
+        if (retClass.isPrimitive())
             returnType = getReturnType();
         else returnType = OBJECT_TYPE;
         Method ms = new Method("invokePrim", returnType, argtypes);
@@ -5569,17 +6135,76 @@ public static class FnMethod extends ObjMethod{
             gen.loadArg(i);
             HostExpr.emitUnboxArg(fn, gen, argclasses[i]);
             }
-        gen.invokeInterface(Type.getType("L"+prim+";"), ms);
-        gen.box(getReturnType());
+        if(primDirect)
+            {
+            gen.invokeVirtual(objx.objtype, ms);
+            HostExpr.emitBoxReturn(fn, gen, retClass);
+            }
+        else
+            {
+            gen.invokeInterface(Type.getType("L"+prim+";"), ms);
+            gen.box(getReturnType());
+            }
 
 
         gen.returnValue();
         //gen.visitMaxs(1, 1);
         gen.endMethod();
 
+        if(primDirect)
+            emitPrimStatic(fn, cv, ms);
+    }
+
+    //static entry for call sites compiled against this class, see InvokeExpr.parse
+    //takes the fn itself, calls invokePrim when it is still an instance of this class,
+    //otherwise (the var was redefined) goes through IFn.invoke
+    void emitPrimStatic(ObjExpr fn, ClassVisitor cv, Method ms){
+        Type[] sargs = new Type[argtypes.length + 1];
+        sargs[0] = OBJECT_TYPE;
+        System.arraycopy(argtypes, 0, sargs, 1, argtypes.length);
+        Method m = new Method(PRIM_STATIC_METHOD, ms.getReturnType(), sargs);
+
+        GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC + ACC_STATIC,
+                                                    m,
+                                                    null,
+                                                    //todo don't hardwire this
+                                                    EXCEPTION_TYPES,
+                                                    cv);
+        gen.visitCode();
+        Label boxedLabel = gen.newLabel();
+        gen.loadArg(0);
+        gen.invokeVirtual(OBJECT_TYPE, Method.getMethod("Class getClass()"));
+        gen.push(objx.objtype);
+        gen.ifCmp(OBJECT_TYPE, GeneratorAdapter.NE, boxedLabel);
+        gen.loadArg(0);
+        gen.checkCast(objx.objtype);
+        for(int i = 0; i < argtypes.length; i++)
+            gen.loadArg(i + 1);
+        gen.invokeVirtual(objx.objtype, ms);
+        gen.returnValue();
+
+        gen.mark(boxedLabel);
+        gen.loadArg(0);
+        gen.checkCast(IFN_TYPE);
+        for(int i = 0; i < argtypes.length; i++)
+            {
+            gen.loadArg(i + 1);
+            HostExpr.emitBoxReturn(fn, gen, argclasses[i]);
+            }
+        gen.invokeInterface(IFN_TYPE, new Method("invoke", OBJECT_TYPE, ARG_TYPES[argtypes.length]));
+        if(retClass == void.class)
+            gen.pop();
+        else if(retClass.isPrimitive())
+            HostExpr.emitUnboxArg(fn, gen, retClass);
+        gen.returnValue();
+        gen.endMethod();
     }
     public void doEmit(ObjExpr fn, ClassVisitor cv){
-        Method m = new Method(getMethodName(), getReturnType(), getArgTypes());
+        doEmit(fn, cv, getMethodName());
+    }
+
+    void doEmit(ObjExpr fn, ClassVisitor cv, String methodName){
+        Method m = new Method(methodName, getReturnType(), getArgTypes());
 
         GeneratorAdapter gen = new GeneratorAdapter(ACC_PUBLIC,
                                                     m,
@@ -5638,7 +6263,7 @@ public static class FnMethod extends ObjMethod{
     }
 
     Type getReturnType(){
-        if(prim != null) //objx.isStatic)
+        if(prim != null || primDirect) //objx.isStatic)
             return Type.getType(retClass);
         return OBJECT_TYPE;
     }
@@ -6217,11 +6842,53 @@ public static class LetExpr implements Expr, MaybePrimitiveExpr{
 //本地绑定向量
     public final Expr body;
     public final boolean isLoop;
+    //roots of the vars the loop body reads, stored before the loop
+    public final PersistentVector hoisted;
 
     public LetExpr(PersistentVector bindingInits, Expr body, boolean isLoop){
+        this(bindingInits, body, isLoop, PersistentVector.EMPTY);
+    }
+
+    public LetExpr(PersistentVector bindingInits, Expr body, boolean isLoop, PersistentVector hoisted){
         this.bindingInits = bindingInits;
         this.body = body;
         this.isLoop = isLoop;
+        this.hoisted = hoisted;
+    }
+
+    //with :hoist-vars, the vars of a loop body resolved by analyzeSymbol are read
+    //once before the loop, into locals numbered once the body is analyzed.
+    //Locals shadowing the vars never get here, and nested fns are other methods,
+    //so read the roots as they are when called
+    static class HoistedRoot{
+        final Var var;
+        int idx;
+
+        HoistedRoot(Var var){
+            this.var = var;
+        }
+    }
+
+    static class HoistedRoots{
+        final ObjMethod method;
+        final LinkedHashMap<Var, HoistedRoot> roots = new LinkedHashMap<Var, HoistedRoot>();
+
+        HoistedRoots(ObjMethod method){
+            this.method = method;
+        }
+    }
+
+    static HoistedRoot hoist(Var v){
+        HoistedRoots h = (HoistedRoots) HOISTED_VARS.deref();
+        if(h == null || h.method != METHOD.deref() || v.isDynamic() || RT.booleanCast(RT.get(v.meta(), redefKey)))
+            return null;
+        HoistedRoot r = h.roots.get(v);
+        if(r == null)
+            {
+            r = new HoistedRoot(v);
+            h.roots.put(v, r);
+            }
+        return r;
     }
 
     static class Parser implements IParser{
@@ -6328,13 +6995,17 @@ public static class LetExpr implements Expr, MaybePrimitiveExpr{
                         LOOP_LOCALS.set(loopLocals);
                     Expr bodyExpr;
                     boolean moreMismatches = false;
+                    HoistedRoots hoisting = isLoop && RT.booleanCast(getCompilerOption(hoistVarsKey)) ?
+                                            new HoistedRoots(method) : null;
                     try {
                         if(isLoop)
                             {
                             Var.pushThreadBindings(
                                 RT.map(CLEAR_PATH, clearpath,
                                        CLEAR_ROOT, clearroot,
-                                       NO_RECUR, null));
+                                       NO_RECUR, null,
+                                       LOOP_DEPTH, (Integer) LOOP_DEPTH.deref() + 1,
+                                       HOISTED_VARS, hoisting));
                                                        
                             }
                         bodyExpr = (new BodyExpr.Parser()).parse(isLoop ? C.RETURN : context, body);
@@ -6355,7 +7026,17 @@ public static class LetExpr implements Expr, MaybePrimitiveExpr{
                             }
                         }
                     if(!moreMismatches)
-                        return new LetExpr(bindingInits, bodyExpr, isLoop);
+                        {
+                        //past every local the body uses, which are out of scope once the loop is left
+                        PersistentVector hoisted = PersistentVector.EMPTY;
+                        if(hoisting != null)
+                            for(HoistedRoot r : hoisting.roots.values())
+                                {
+                                r.idx = ++method.maxLocal;
+                                hoisted = hoisted.cons(r);
+                                }
+                        return new LetExpr(bindingInits, bodyExpr, isLoop, hoisted);
+                        }
                     }
                 finally
                     {
@@ -6379,6 +7060,12 @@ public static class LetExpr implements Expr, MaybePrimitiveExpr{
 
 
     public void doEmit(C context, ObjExpr objx, GeneratorAdapter gen, boolean emitUnboxed){
+        for(int i = 0; i < hoisted.count(); i++)
+            {
+            HoistedRoot r = (HoistedRoot) hoisted.nth(i);
+            objx.emitVarValue(gen, r.var);
+            gen.visitVarInsn(OBJECT_TYPE.getOpcode(Opcodes.ISTORE), r.idx);
+            }
         HashMap<BindingInit, Label> bindingLabels = new HashMap();
         for(int i = 0; i < bindingInits.count(); i++)
             {
@@ -7095,6 +7782,8 @@ private static Expr analyzeSymbol(Symbol sym) {
         LocalBinding b = referenceLocal(sym);
         if(b != null)
             {
+            if(tag == null && NARROWED_LOCALS.deref() != null)
+                tag = (Symbol) RT.get(NARROWED_LOCALS.deref(), b);
             return new LocalBindingExpr(b, tag);
             }
         }
@@ -7132,7 +7821,9 @@ private static Expr analyzeSymbol(Symbol sym) {
             //如果是常量
             return analyze(C.EXPRESSION, RT.list(QUOTE, v.get()));
         registerVar(v);
-        return new VarExpr(v, tag);
+        VarExpr ve = new VarExpr(v, tag);
+        ve.hoisted = LetExpr.hoist(v);
+        return ve;
         }
     else if(o instanceof Class)
         return new ConstantExpr(o);
@@ -7421,6 +8112,7 @@ public static Object load(Reader rdr, String sourcePath, String sourceName) {
                    ,RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref()
                     ,RT.WARN_ON_REFLECTION, RT.WARN_ON_REFLECTION.deref()
                    ,RT.DATA_READERS, RT.DATA_READERS.deref()
+                   ,REFLECTIVE_SITES, inferTypes() ? PersistentTreeMap.EMPTY : null
                         ));
 
 	Object readerOpts = readerOpts(sourceName);
@@ -7436,6 +8128,7 @@ public static Object load(Reader rdr, String sourcePath, String sourceName) {
             LINE_BEFORE.set(pushbackReader.getLineNumber());
             COLUMN_BEFORE.set(pushbackReader.getColumnNumber());
             }
+        reportReflection();
         }
     catch(LispReader.ReaderException e)
         {
@@ -7562,10 +8255,12 @@ public static Object compile(Reader rdr, String sourcePath, String sourceName) t
                    CONSTANTS, PersistentVector.EMPTY,
                    CONSTANT_IDS, new IdentityHashMap(),
                    KEYWORDS, PersistentHashMap.EMPTY,
-                   VARS, PersistentHashMap.EMPTY
+                   VARS, PersistentHashMap.EMPTY,
+                   FN_GROUP, null
                     ,RT.UNCHECKED_MATH, RT.UNCHECKED_MATH.deref()
                     ,RT.WARN_ON_REFLECTION, RT.WARN_ON_REFLECTION.deref()
                     ,RT.DATA_READERS, RT.DATA_READERS.deref()
+                    ,REFLECTIVE_SITES, inferTypes() ? PersistentTreeMap.EMPTY : null
                //    ,LOADER, RT.makeClassLoader()
             ));
 
@@ -7602,6 +8297,11 @@ public static Object compile(Reader rdr, String sourcePath, String sourceName) t
         //end of load
         gen.returnValue();
         gen.endMethod();
+        reportReflection();
+
+        FnGroup group = (FnGroup) FN_GROUP.deref();
+        if(group != null)
+            group.write();
 
         //static fields for constants
         for(int i = 0; i < objx.constants.count(); i++)
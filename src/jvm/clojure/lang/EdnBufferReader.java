@@ -0,0 +1,705 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads edn from a char array, either fixed or refilled in blocks from a Reader.
+ * Produces the same values as EdnReader, but scans tokens in place and only
+ * falls back to EdnReader's regex matching for uncommon number and symbol forms.
+ * Not thread safe.
+ */
+public class EdnBufferReader implements Closeable{
+
+static final int WS = 1;
+static final int MACRO = 2;
+static final int TERMINATING = 4;
+static final int NON_CONSTITUENT = 8;
+static final int SYM_START = 16;
+static final int SYM_CHAR = 32;
+
+static final byte[] charClass = new byte[128];
+static final double[] POW10 = new double[23];
+
+static
+	{
+	for(int ch = 0; ch < 128; ch++)
+		{
+		int k = 0;
+		if(EdnReader.isWhitespace(ch))
+			k |= WS;
+		if(EdnReader.isMacro(ch))
+			k |= MACRO;
+		if(EdnReader.isTerminatingMacro(ch))
+			k |= TERMINATING;
+		if(EdnReader.nonConstituent(ch))
+			k |= NON_CONSTITUENT;
+		if(Character.isLetter(ch) || "*+!-_?<>=.".indexOf(ch) >= 0)
+			k |= SYM_START | SYM_CHAR;
+		if(Character.isDigit(ch) || ch == '#' || ch == '\'')
+			k |= SYM_CHAR;
+		charClass[ch] = (byte) k;
+		}
+	double p = 1;
+	for(int i = 0; i < POW10.length; i++, p *= 10)
+		POW10[i] = p;
+	}
+
+static final int BUFFER_SIZE = 8192;
+static final int KEYWORD_CACHE_SIZE = 512;
+
+final Reader source;
+char[] buf;
+int pos;
+int end;
+//start of the token being scanned, preserved across refills, -1 if none
+int mark = -1;
+
+final StringBuilder sb = new StringBuilder();
+ArrayList[] scratch = new ArrayList[8];
+int depth;
+final Keyword[] keywordCache = new Keyword[KEYWORD_CACHE_SIZE];
+final String[] keywordNames = new String[KEYWORD_CACHE_SIZE];
+
+public EdnBufferReader(char[] buf, int offset, int length){
+	this.source = null;
+	this.buf = buf;
+	this.pos = offset;
+	this.end = offset + length;
+}
+
+public EdnBufferReader(CharSequence s){
+	this(s.toString().toCharArray(), 0, s.length());
+}
+
+public EdnBufferReader(Reader source){
+	this.source = source;
+	this.buf = new char[BUFFER_SIZE];
+}
+
+static public EdnBufferReader create(Object source){
+	if(source instanceof EdnBufferReader)
+		return (EdnBufferReader) source;
+	else if(source instanceof char[])
+		return new EdnBufferReader((char[]) source, 0, ((char[]) source).length);
+	else if(source instanceof CharBuffer)
+		{
+		CharBuffer cb = (CharBuffer) source;
+		if(cb.hasArray())
+			return new EdnBufferReader(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining());
+		char[] a = new char[cb.remaining()];
+		cb.duplicate().get(a);
+		return new EdnBufferReader(a, 0, a.length);
+		}
+	else if(source instanceof CharSequence)
+		return new EdnBufferReader((CharSequence) source);
+	else if(source instanceof Reader)
+		return new EdnBufferReader((Reader) source);
+	throw new IllegalArgumentException("Don't know how to create EdnBufferReader from: " +
+	                                   (source == null ? "nil" : source.getClass().getName()));
+}
+
+static public Object readString(String s, IPersistentMap opts){
+	return new EdnBufferReader(s).read(opts);
+}
+
+public void close() throws IOException{
+	if(source != null)
+		source.close();
+}
+
+public Object read(IPersistentMap opts){
+	mark = -1;
+	depth = 0;
+	Object ret = read(!opts.containsKey(EdnReader.EOF), opts.valAt(EdnReader.EOF), opts);
+	if(RT.suppressRead())
+		return null;
+	return ret;
+}
+
+/**
+ * Returns the elements of the next form, which must be a vector or list, as
+ * they are read. Only the current element is held in memory.
+ */
+public Elements elements(IPersistentMap opts){
+	return new Elements(this, opts);
+}
+
+Object read(boolean eofIsError, Object eofValue, IPersistentMap opts){
+	for(; ;)
+		{
+		int ch = readNonWhitespace();
+		if(ch == -1)
+			{
+			if(eofIsError)
+				throw Util.runtimeException("EOF while reading");
+			return eofValue;
+			}
+		Object ret = readForm(ch, opts);
+		//no op forms return the reader
+		if(ret != this)
+			return ret;
+		}
+}
+
+private boolean fill(){
+	if(source == null)
+		return false;
+	int keep = mark < 0 ? pos : mark;
+	if(keep > 0)
+		{
+		System.arraycopy(buf, keep, buf, 0, end - keep);
+		end -= keep;
+		pos -= keep;
+		if(mark >= 0)
+			mark = 0;
+		}
+	if(end == buf.length)
+		buf = Arrays.copyOf(buf, buf.length * 2);
+	try
+		{
+		int n;
+		do
+			{
+			n = source.read(buf, end, buf.length - end);
+			} while(n == 0);
+		if(n < 0)
+			return false;
+		end += n;
+		return true;
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+private int read1(){
+	if(pos < end || fill())
+		return buf[pos++];
+	return -1;
+}
+
+private int peek(){
+	if(pos < end || fill())
+		return buf[pos];
+	return -1;
+}
+
+static boolean isWhitespace(int ch){
+	return ch < 128 ? (charClass[ch] & WS) != 0 : Character.isWhitespace(ch);
+}
+
+private int readNonWhitespace(){
+	for(; ;)
+		{
+		if(pos >= end && !fill())
+			return -1;
+		char ch = buf[pos++];
+		if(ch < 128 ? (charClass[ch] & WS) == 0 : !Character.isWhitespace(ch))
+			return ch;
+		}
+}
+
+private Object readForm(int ch, IPersistentMap opts){
+	switch(ch)
+		{
+		case '"':
+			return readString();
+		case ';':
+			do
+				{
+				ch = read1();
+				} while(ch != -1 && ch != '\n' && ch != '\r');
+			return this;
+		case '^':
+			return readMeta(opts);
+		case '(':
+		{
+		ArrayList a = readDelimited(')', opts);
+		Object ret = a.isEmpty() ? PersistentList.EMPTY : PersistentList.create(a);
+		release(a);
+		return ret;
+		}
+		case '[':
+		{
+		ArrayList a = readDelimited(']', opts);
+		Object ret = Tuple.createFromArray(a.toArray());
+		release(a);
+		return ret;
+		}
+		case '{':
+		{
+		ArrayList a = readDelimited('}', opts);
+		if((a.size() & 1) == 1)
+			throw Util.runtimeException("Map literal must contain an even number of forms");
+		Object ret = RT.map(a.toArray());
+		release(a);
+		return ret;
+		}
+		case ')':
+		case ']':
+		case '}':
+			throw Util.runtimeException("Unmatched delimiter: " + (char) ch);
+		case '\\':
+			return readCharacter();
+		case '#':
+			return readDispatch(opts);
+		}
+
+	if(Character.isDigit(ch))
+		return readNumber();
+
+	if(ch == '+' || ch == '-')
+		{
+		mark = pos - 1;
+		if(Character.isDigit(peek()))
+			return readNumber();
+		mark = -1;
+		}
+
+	if(EdnReader.nonConstituent(ch))
+		throw Util.runtimeException("Invalid leading character: " + (char) ch);
+	mark = pos - 1;
+	scanToken();
+	Object ret = interpretToken(mark, pos);
+	mark = -1;
+	return ret;
+}
+
+//scans the rest of a symbol-like token starting at mark, leaving pos at its end
+private void scanToken(){
+	for(; ;)
+		{
+		if(pos >= end && !fill())
+			return;
+		char ch = buf[pos];
+		if(ch < 128)
+			{
+			int k = charClass[ch];
+			if((k & (WS | TERMINATING)) != 0)
+				return;
+			if((k & NON_CONSTITUENT) != 0)
+				throw Util.runtimeException("Invalid constituent character: " + ch);
+			}
+		else if(Character.isWhitespace(ch))
+			return;
+		pos++;
+		}
+}
+
+private Object readNumber(){
+	if(mark < 0)
+		mark = pos - 1;
+	for(; ;)
+		{
+		if(pos >= end && !fill())
+			break;
+		char ch = buf[pos];
+		if(ch < 128 ? (charClass[ch] & (WS | MACRO)) != 0 : Character.isWhitespace(ch))
+			break;
+		pos++;
+		}
+	Object n = matchNumber(mark, pos);
+	mark = -1;
+	return n;
+}
+
+private Object matchNumber(int start, int stop){
+	int i = start;
+	char ch = buf[i];
+	boolean negate = false;
+	if(ch == '+' || ch == '-')
+		{
+		negate = ch == '-';
+		i++;
+		}
+	int digits = i;
+	long m = 0;
+	while(i < stop && (ch = buf[i]) >= '0' && ch <= '9')
+		{
+		m = m * 10 + (ch - '0');
+		i++;
+		}
+	int nd = i - digits;
+	if(i == stop)
+		{
+		if(nd <= 18 && (nd == 1 || buf[digits] != '0'))
+			return Numbers.num(negate ? -m : m);
+		}
+	else if(nd > 0 && (ch == '.' || ch == 'e' || ch == 'E'))
+		{
+		//exact double when the digits and the power of ten are both exactly representable
+		int exp = 0;
+		if(ch == '.')
+			{
+			for(i++; i < stop && (ch = buf[i]) >= '0' && ch <= '9'; i++, nd++, exp--)
+				m = m * 10 + (ch - '0');
+			}
+		if(i < stop && ((ch = buf[i]) == 'e' || ch == 'E'))
+			{
+			int e = 0;
+			boolean negexp = false;
+			if(++i < stop && ((ch = buf[i]) == '+' || ch == '-'))
+				{
+				negexp = ch == '-';
+				i++;
+				}
+			int es = i;
+			for(; i < stop && i - es < 4 && (ch = buf[i]) >= '0' && ch <= '9'; i++)
+				e = e * 10 + (ch - '0');
+			if(i == es)
+				nd = Integer.MAX_VALUE;
+			exp += negexp ? -e : e;
+			}
+		if(i == stop && nd <= 15 && exp >= -22 && exp <= 22)
+			{
+			double d = exp >= 0 ? m * POW10[exp] : m / POW10[-exp];
+			return negate ? -d : d;
+			}
+		}
+	String s = new String(buf, start, stop - start);
+	Object n = EdnReader.matchNumber(s);
+	if(n == null)
+		throw new NumberFormatException("Invalid number: " + s);
+	return n;
+}
+
+private boolean tokenIs(int start, int stop, String s){
+	if(stop - start != s.length())
+		return false;
+	for(int i = 0; i < s.length(); i++)
+		if(buf[start + i] != s.charAt(i))
+			return false;
+	return true;
+}
+
+private Object interpretToken(int start, int stop){
+	if(tokenIs(start, stop, "nil"))
+		return null;
+	else if(tokenIs(start, stop, "true"))
+		return RT.T;
+	else if(tokenIs(start, stop, "false"))
+		return RT.F;
+
+	boolean isKeyword = buf[start] == ':';
+	int i = isKeyword ? start + 1 : start;
+	if(i < stop && buf[i] < 128 && (charClass[buf[i]] & SYM_START) != 0)
+		{
+		int slash = -1;
+		int j = i + 1;
+		for(; j < stop; j++)
+			{
+			char ch = buf[j];
+			if(ch == '/' && slash < 0)
+				slash = j;
+			else if(ch >= 128 || (charClass[ch] & SYM_CHAR) == 0)
+				break;
+			}
+		if(j == stop && (slash < 0 || slash + 1 < stop
+		                              && (charClass[buf[slash + 1]] & SYM_START) != 0))
+			return isKeyword ? internKeyword(i, stop) : Symbol.intern(new String(buf, i, stop - i));
+		}
+
+	return EdnReader.interpretToken(new String(buf, start, stop - start));
+}
+
+private Keyword internKeyword(int start, int stop){
+	int h = 0;
+	for(int i = start; i < stop; i++)
+		h = 31 * h + buf[i];
+	int idx = (h ^ (h >>> 16)) & (KEYWORD_CACHE_SIZE - 1);
+	String name = keywordNames[idx];
+	if(name != null && tokenIs(start, stop, name))
+		return keywordCache[idx];
+	name = new String(buf, start, stop - start);
+	Keyword k = Keyword.intern(Symbol.intern(name));
+	keywordNames[idx] = name;
+	keywordCache[idx] = k;
+	return k;
+}
+
+private Object readString(){
+	mark = pos;
+	for(; ;)
+		{
+		if(pos >= end && !fill())
+			throw Util.runtimeException("EOF while reading string");
+		char ch = buf[pos++];
+		if(ch == '"')
+			{
+			String s = new String(buf, mark, pos - 1 - mark);
+			mark = -1;
+			return s;
+			}
+		if(ch == '\\')
+			break;
+		}
+	sb.setLength(0);
+	sb.append(buf, mark, pos - 1 - mark);
+	mark = -1;
+	for(int ch = '\\'; ch != '"'; ch = read1())
+		{
+		if(ch == -1)
+			throw Util.runtimeException("EOF while reading string");
+		if(ch == '\\')	//escape
+			{
+			ch = read1();
+			if(ch == -1)
+				throw Util.runtimeException("EOF while reading string");
+			switch(ch)
+				{
+				case 't':
+					ch = '\t';
+					break;
+				case 'r':
+					ch = '\r';
+					break;
+				case 'n':
+					ch = '\n';
+					break;
+				case '\\':
+					break;
+				case '"':
+					break;
+				case 'b':
+					ch = '\b';
+					break;
+				case 'f':
+					ch = '\f';
+					break;
+				case 'u':
+				{
+				ch = read1();
+				if(Character.digit(ch, 16) == -1)
+					throw Util.runtimeException("Invalid unicode escape: \\u" + (char) ch);
+				ch = readUnicodeChar(ch, 16, 4, true);
+				break;
+				}
+				default:
+				{
+				if(Character.isDigit(ch))
+					{
+					ch = readUnicodeChar(ch, 8, 3, false);
+					if(ch > 0377)
+						throw Util.runtimeException("Octal escape sequence must be in range [0, 377].");
+					}
+				else
+					throw Util.runtimeException("Unsupported escape character: \\" + (char) ch);
+				}
+				}
+			}
+		sb.append((char) ch);
+		}
+	return sb.toString();
+}
+
+private int readUnicodeChar(int initch, int base, int length, boolean exact){
+	int uc = Character.digit(initch, base);
+	if(uc == -1)
+		throw new IllegalArgumentException("Invalid digit: " + (char) initch);
+	int i = 1;
+	for(; i < length; ++i)
+		{
+		int ch = peek();
+		if(ch == -1 || isWhitespace(ch) || EdnReader.isMacro(ch))
+			break;
+		pos++;
+		int d = Character.digit(ch, base);
+		if(d == -1)
+			throw new IllegalArgumentException("Invalid digit: " + (char) ch);
+		uc = uc * base + d;
+		}
+	if(i != length && exact)
+		throw new IllegalArgumentException("Invalid character length: " + i + ", should be: " + length);
+	return uc;
+}
+
+private Object readCharacter(){
+	int ch = read1();
+	if(ch == -1)
+		throw Util.runtimeException("EOF while reading character");
+	mark = pos - 1;
+	scanToken();
+	String token = new String(buf, mark, pos - mark);
+	mark = -1;
+	return EdnReader.CharacterReader.interpretCharacter(token);
+}
+
+private Object readDispatch(IPersistentMap opts){
+	int ch = read1();
+	switch(ch)
+		{
+		case -1:
+			throw Util.runtimeException("EOF while reading character");
+		case '{':
+		{
+		ArrayList a = readDelimited('}', opts);
+		Object ret = PersistentHashSet.createWithCheck(a);
+		release(a);
+		return ret;
+		}
+		case '_':
+			read(true, null, opts);
+			return this;
+		case '^':
+			return readMeta(opts);
+		case '<':
+			throw Util.runtimeException("Unreadable form");
+		}
+	if(Character.isLetter(ch))
+		{
+		pos--;
+		Object name = read(true, null, opts);
+		if(!(name instanceof Symbol))
+			throw new RuntimeException("Reader tag must be a symbol");
+		Object o = read(true, null, opts);
+		return EdnReader.TaggedReader.invokeDataReader((Symbol) name, o, opts);
+		}
+	throw Util.runtimeException(String.format("No dispatch macro for: %c", (char) ch));
+}
+
+private Object readMeta(IPersistentMap opts){
+	Object meta = EdnReader.MetaReader.readMeta(read(true, null, opts));
+	Object o = read(true, null, opts);
+	return EdnReader.MetaReader.withReadMeta(o, meta, -1, -1);
+}
+
+//the returned list is reused by later reads at the same depth, see release
+private ArrayList readDelimited(char delim, IPersistentMap opts){
+	if(depth == scratch.length)
+		scratch = Arrays.copyOf(scratch, depth * 2);
+	ArrayList a = scratch[depth];
+	if(a == null)
+		a = scratch[depth] = new ArrayList();
+	a.clear();
+	depth++;
+	try
+		{
+		for(; ;)
+			{
+			int ch = readNonWhitespace();
+			if(ch == -1)
+				throw Util.runtimeException("EOF while reading");
+			if(ch == delim)
+				return a;
+			Object o = readForm(ch, opts);
+			if(o != this)
+				a.add(o);
+			}
+		}
+	finally
+		{
+		depth--;
+		}
+}
+
+private void release(ArrayList a){
+	if(a.size() > 1024)
+		scratch[depth] = null;
+	else
+		a.clear();
+}
+
+public static class Elements implements IReduceInit, Iterable{
+	final EdnBufferReader r;
+	final IPersistentMap opts;
+	char delim;
+
+	Elements(EdnBufferReader r, IPersistentMap opts){
+		this.r = r;
+		this.opts = opts;
+	}
+
+	private void start(){
+		if(delim != 0)
+			throw new IllegalStateException("Elements can only be consumed once");
+		r.mark = -1;
+		r.depth = 0;
+		for(; ;)
+			{
+			int ch = r.readNonWhitespace();
+			if(ch == -1)
+				throw Util.runtimeException("EOF while reading");
+			if(ch == '[')
+				delim = ']';
+			else if(ch == '(')
+				delim = ')';
+			else if(ch == ';' || ch == '#' && r.peek() == '_')
+				{
+				r.readForm(ch, opts);
+				continue;
+				}
+			else
+				throw Util.runtimeException("Expected a vector or list, found: " + (char) ch);
+			return;
+			}
+	}
+
+	//returns r once the closing delimiter has been read
+	private Object readElement(){
+		for(; ;)
+			{
+			int ch = r.readNonWhitespace();
+			if(ch == -1)
+				throw Util.runtimeException("EOF while reading");
+			if(ch == delim)
+				return r;
+			Object o = r.readForm(ch, opts);
+			if(o != r)
+				return o;
+			}
+	}
+
+	public Object reduce(IFn f, Object init){
+		start();
+		Object ret = init;
+		for(Object o = readElement(); o != r; o = readElement())
+			{
+			ret = f.invoke(ret, o);
+			if(RT.isReduced(ret))
+				return ((IDeref) ret).deref();
+			}
+		return ret;
+	}
+
+	public Iterator iterator(){
+		start();
+		return new Iterator(){
+			Object nxt = readElement();
+
+			public boolean hasNext(){
+				return nxt != r;
+			}
+
+			public Object next(){
+				if(nxt == r)
+					throw new NoSuchElementException();
+				Object ret = nxt;
+				nxt = readElement();
+				return ret;
+			}
+
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
+}
@@ -0,0 +1,394 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prints values as pr does, writing the built-in types directly into a buffer.
+ * A value is only printed here if print-method would dispatch it to one of the
+ * core methods given in builtins (a map of method fn to kind keyword), anything
+ * else, e.g. a type with a user defined print-method, is passed to print-method.
+ */
+public class EdnPrinter{
+
+static final Var PRINT_LENGTH = RT.var("clojure.core", "*print-length*");
+static final Var PRINT_LEVEL = RT.var("clojure.core", "*print-level*");
+static final Keyword TYPE = Keyword.intern(null, "type");
+
+static final int FALLBACK = 0;
+static final int NIL = 1;
+static final int STRING = 2;
+static final int KEYWORD = 3;
+static final int SYMBOL = 4;
+static final int NUMBER = 5;
+static final int BIGINT = 6;
+static final int BIGDEC = 7;
+static final int BOOLEAN = 8;
+static final int CHAR = 9;
+static final int SEQ = 10;
+static final int VECTOR = 11;
+static final int MAP = 12;
+static final int SET = 13;
+static final int INST = 14;
+static final int UUID = 15;
+
+static final IPersistentMap KINDS = RT.map(
+		Keyword.intern(null, "nil"), NIL,
+		Keyword.intern(null, "string"), STRING,
+		Keyword.intern(null, "keyword"), KEYWORD,
+		Keyword.intern(null, "symbol"), SYMBOL,
+		Keyword.intern(null, "number"), NUMBER,
+		Keyword.intern(null, "bigint"), BIGINT,
+		Keyword.intern(null, "bigdec"), BIGDEC,
+		Keyword.intern(null, "boolean"), BOOLEAN,
+		Keyword.intern(null, "char"), CHAR,
+		Keyword.intern(null, "seq"), SEQ,
+		Keyword.intern(null, "vector"), VECTOR,
+		Keyword.intern(null, "map"), MAP,
+		Keyword.intern(null, "set"), SET,
+		Keyword.intern(null, "inst"), INST,
+		Keyword.intern(null, "uuid"), UUID);
+
+//the kinds of the classes printed, good while print-method's methods, prefers
+//and hierarchy and the builtins are those it was made for
+static final class KindCache{
+	final MultiFn printMethod;
+	final IPersistentMap builtins;
+	final IPersistentMap methods;
+	final IPersistentMap prefers;
+	final Object hierarchy;
+	final ConcurrentHashMap<Object, Integer> kinds = new ConcurrentHashMap<Object, Integer>();
+
+	KindCache(MultiFn printMethod, IPersistentMap builtins){
+		this.printMethod = printMethod;
+		this.builtins = builtins;
+		this.methods = printMethod.getMethodTable();
+		this.prefers = printMethod.getPreferTable();
+		this.hierarchy = printMethod.hierarchy.deref();
+	}
+
+	boolean current(MultiFn printMethod, IPersistentMap builtins){
+		return printMethod == this.printMethod && builtins == this.builtins
+		       && methods == printMethod.getMethodTable() && prefers == printMethod.getPreferTable()
+		       && hierarchy == printMethod.hierarchy.deref();
+	}
+}
+
+static volatile KindCache kindCache;
+static final Object NIL_CLASS = new Object();
+
+//a buffer per thread, taken by the outermost printer
+static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>();
+
+final Writer w;
+final MultiFn printMethod;
+final IPersistentMap builtins;
+final boolean printMeta;
+final Map<Object, Integer> kinds;
+final char[] buf;
+int n;
+
+EdnPrinter(Writer w, MultiFn printMethod, IPersistentMap builtins, boolean printMeta){
+	this.w = w;
+	this.printMethod = printMethod;
+	this.builtins = builtins;
+	this.printMeta = printMeta;
+	KindCache c = kindCache;
+	if(c == null || !c.current(printMethod, builtins))
+		kindCache = c = new KindCache(printMethod, builtins);
+	this.kinds = c.kinds;
+	char[] b = BUFFER.get();
+	if(b == null)
+		b = new char[4096];
+	else
+		BUFFER.set(null);
+	this.buf = b;
+}
+
+static public void print(Object x, Writer w, MultiFn printMethod, IPersistentMap builtins) {
+	if(!RT.booleanCast(RT.PRINT_READABLY.deref())
+	   || PRINT_LENGTH.deref() != null
+	   || PRINT_LEVEL.deref() != null)
+		{
+		printMethod.invoke(x, w);
+		return;
+		}
+	EdnPrinter p = new EdnPrinter(w, printMethod, builtins, RT.booleanCast(RT.PRINT_META.deref()));
+	try
+		{
+		p.print(x);
+		}
+	finally
+		{
+		p.flush();
+		BUFFER.set(p.buf);
+		}
+}
+
+//only write(String) is used, proxied writers need not implement the other overloads
+void flush(){
+	if(n == 0)
+		return;
+	try
+		{
+		w.write(new String(buf, 0, n));
+		n = 0;
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+void write(char c){
+	if(n == buf.length)
+		flush();
+	buf[n++] = c;
+}
+
+void write(String s){
+	int len = s.length();
+	if(n + len > buf.length)
+		{
+		flush();
+		if(len > buf.length)
+			{
+			try
+				{
+				w.write(s);
+				}
+			catch(IOException e)
+				{
+				throw Util.sneakyThrow(e);
+				}
+			return;
+			}
+		}
+	s.getChars(0, len, buf, n);
+	n += len;
+}
+
+void writeLong(long v){
+	if(v == Long.MIN_VALUE)
+		{
+		write(Long.toString(v));
+		return;
+		}
+	if(n + 20 > buf.length)
+		flush();
+	if(v < 0)
+		{
+		buf[n++] = '-';
+		v = -v;
+		}
+	int start = n;
+	do
+		{
+		buf[n++] = (char) ('0' + v % 10);
+		v /= 10;
+		} while(v != 0);
+	for(int i = start, j = n - 1; i < j; i++, j--)
+		{
+		char c = buf[i];
+		buf[i] = buf[j];
+		buf[j] = c;
+		}
+}
+
+int kind(Object x){
+	Class dispatchVal = x == null ? null : x.getClass();
+	if(x instanceof IMeta)
+		{
+		IPersistentMap m = ((IMeta) x).meta();
+		if(m != null)
+			{
+			if(m.valAt(TYPE) instanceof Keyword)
+				return FALLBACK;
+			if(printMeta && m.count() > 0)
+				return FALLBACK;
+			}
+		}
+	Object key = x == null ? NIL_CLASS : dispatchVal;
+	Integer k = kinds.get(key);
+	if(k == null)
+		{
+		Object kind = builtins.valAt(printMethod.getMethod(dispatchVal));
+		k = kind == null ? FALLBACK : (Integer) KINDS.valAt(kind);
+		kinds.put(key, k);
+		}
+	return k;
+}
+
+void print(Object x) {
+	switch(kind(x))
+		{
+		case NIL:
+			write("nil");
+			break;
+		case STRING:
+			printString((String) x);
+			break;
+		case NUMBER:
+			if(x instanceof Long)
+				writeLong((Long) x);
+			else
+				write(x.toString());
+			break;
+		case BIGINT:
+			write(x.toString());
+			write('N');
+			break;
+		case BIGDEC:
+			write(x.toString());
+			write('M');
+			break;
+		case KEYWORD:
+		case SYMBOL:
+		case BOOLEAN:
+			write(x.toString());
+			break;
+		case CHAR:
+			printChar((Character) x);
+			break;
+		case SEQ:
+			printSequential("(", ")", RT.seq(x));
+			break;
+		case VECTOR:
+			if(x instanceof Iterable)
+				printSequential("[", "]", ((Iterable) x).iterator());
+			else
+				printSequential("[", "]", RT.seq(x));
+			break;
+		case SET:
+			printSequential("#{", "}", RT.seq(x));
+			break;
+		case MAP:
+			write('{');
+			for(ISeq s = RT.seq(x); s != null; s = s.next())
+				{
+				Map.Entry e = (Map.Entry) s.first();
+				print(e.getKey());
+				write(' ');
+				print(e.getValue());
+				if(s.next() != null)
+					write(", ");
+				}
+			write('}');
+			break;
+		case INST:
+			if(n + Instants.MAX_LENGTH > buf.length)
+				flush();
+			int end = Instants.print(x, buf, n);
+			if(end < 0)
+				write(Instants.printString(x));
+			else
+				n = end;
+			break;
+		case UUID:
+			if(n + UUIDs.LENGTH > buf.length)
+				flush();
+			n = UUIDs.print((java.util.UUID) x, buf, n);
+			break;
+		default:
+			flush();
+			printMethod.invoke(x, w);
+		}
+}
+
+void printSequential(String begin, String end, ISeq s){
+	write(begin);
+	for(; s != null; s = s.next())
+		{
+		print(s.first());
+		if(s.next() != null)
+			write(' ');
+		}
+	write(end);
+}
+
+void printSequential(String begin, String end, Iterator i){
+	write(begin);
+	while(i.hasNext())
+		{
+		print(i.next());
+		if(i.hasNext())
+			write(' ');
+		}
+	write(end);
+}
+
+void printString(String s){
+	write('"');
+	for(int i = 0; i < s.length(); i++)
+		{
+		char c = s.charAt(i);
+		switch(c)
+			{
+			case '\n':
+				write("\\n");
+				break;
+			case '\t':
+				write("\\t");
+				break;
+			case '\r':
+				write("\\r");
+				break;
+			case '"':
+				write("\\\"");
+				break;
+			case '\\':
+				write("\\\\");
+				break;
+			case '\f':
+				write("\\f");
+				break;
+			case '\b':
+				write("\\b");
+				break;
+			default:
+				write(c);
+			}
+		}
+	write('"');
+}
+
+void printChar(char c){
+	write('\\');
+	switch(c)
+		{
+		case '\n':
+			write("newline");
+			break;
+		case '\t':
+			write("tab");
+			break;
+		case ' ':
+			write("space");
+			break;
+		case '\b':
+			write("backspace");
+			break;
+		case '\f':
+			write("formfeed");
+			break;
+		case '\r':
+			write("return");
+			break;
+		default:
+			write(c);
+		}
+}
+}
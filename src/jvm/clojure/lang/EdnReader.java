@@ -259,7 +259,7 @@ static private int readUnicodeChar(PushbackReader r, int initch, int base, int l
 	return uc;
 }
 
-static private Object interpretToken(String s) {
+static Object interpretToken(String s) {
 	if(s.equals("nil"))
 		{
 		return null;
@@ -283,7 +283,7 @@ static private Object interpretToken(String s) {
 }
 
 
-private static Object matchSymbol(String s){
+static Object matchSymbol(String s){
 	Matcher m = symbolPat.matcher(s);
 	if(m.matches())
 		{
@@ -308,7 +308,7 @@ private static Object matchSymbol(String s){
 }
 
 
-private static Object matchNumber(String s){
+static Object matchNumber(String s){
 	Matcher m = intPat.matcher(s);
 	if(m.matches())
 		{
@@ -365,11 +365,11 @@ static private IFn getMacro(int ch){
 	return null;
 }
 
-static private boolean isMacro(int ch){
+static boolean isMacro(int ch){
 	return (ch < macros.length && macros[ch] != null);
 }
 
-static private boolean isTerminatingMacro(int ch){
+static boolean isTerminatingMacro(int ch){
 	return (ch != '#' && ch != '\'' && isMacro(ch));
 }
 
@@ -513,15 +513,23 @@ public static class MetaReader extends AFn{
 			line = ((LineNumberingPushbackReader) r).getLineNumber();
 			column = ((LineNumberingPushbackReader) r).getColumnNumber()-1;
 			}
-		Object meta = read(r, true, null, true, opts);
+		Object meta = readMeta(read(r, true, null, true, opts));
+
+		Object o = read(r, true, null, true, opts);
+		return withReadMeta(o, meta, line, column);
+	}
+
+	static Object readMeta(Object meta){
 		if(meta instanceof Symbol || meta instanceof String)
-			meta = RT.map(RT.TAG_KEY, meta);
+			return RT.map(RT.TAG_KEY, meta);
 		else if (meta instanceof Keyword)
-			meta = RT.map(meta, RT.T);
+			return RT.map(meta, RT.T);
 		else if(!(meta instanceof IPersistentMap))
 			throw new IllegalArgumentException("Metadata must be Symbol,Keyword,String or Map");
+		return meta;
+	}
 
-		Object o = read(r, true, null, true, opts);
+	static Object withReadMeta(Object o, Object meta, int line, int column){
 		if(o instanceof IMeta)
 			{
 			if(line != -1 && o instanceof ISeq)
@@ -552,7 +560,10 @@ public static class CharacterReader extends AFn{
 		int ch = read1(r);
 		if(ch == -1)
 			throw Util.runtimeException("EOF while reading character");
-		String token = readToken(r, (char) ch, false);
+		return interpretCharacter(readToken(r, (char) ch, false));
+	}
+
+	static Object interpretCharacter(String token){
 		if(token.length() == 1)
 			return Character.valueOf(token.charAt(0));
 		else if(token.equals("newline"))
@@ -617,7 +628,7 @@ public static class ListReader extends AFn{
 public static class VectorReader extends AFn{
 	public Object invoke(Object reader, Object leftparen, Object opts) {
 		PushbackReader r = (PushbackReader) reader;
-		return LazilyPersistentVector.create(readDelimitedList(']', r, true, opts));
+		return Tuple.createFromArray(readDelimitedList(']', r, true, opts).toArray());
 	}
 
 }
@@ -715,8 +726,10 @@ public static class TaggedReader extends AFn{
 	static Keyword DEFAULT = Keyword.intern(null,"default");
 
 	private Object readTagged(PushbackReader reader, Symbol tag, IPersistentMap opts){
-		Object o = read(reader, true, null, true, opts);
+		return invokeDataReader(tag, read(reader, true, null, true, opts), opts);
+	}
 
+	static Object invokeDataReader(Symbol tag, Object o, IPersistentMap opts){
 		ILookup readers = (ILookup)RT.get(opts, READERS);
 		IFn dataReader = (IFn)RT.get(readers, tag);
 		if(dataReader == null)
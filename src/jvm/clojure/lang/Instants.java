@@ -0,0 +1,415 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and prints #inst literals for clojure.instant.
+ *
+ * Timestamps are scanned by hand rather than matched with the regex of
+ * parse-timestamp, and instants from the Gregorian cutover (1582-10-15) up to
+ * year 9999 are converted to and from fields by day arithmetic in UTC rather
+ * than through a Calendar or a SimpleDateFormat. Earlier instants, which a
+ * GregorianCalendar takes as Julian, are still read and printed through the
+ * Calendar classes, as is anything a scan can't settle, so the results are
+ * those of the regex and the Calendar classes throughout.
+ */
+public class Instants{
+
+static final Pattern TIMESTAMP = Pattern.compile(
+		"(\\d\\d\\d\\d)(?:-(\\d\\d)(?:-(\\d\\d)(?:[T](\\d\\d)(?::(\\d\\d)(?::(\\d\\d)(?:[.](\\d+))?)?)?)?)?)?(?:[Z]|([-+])(\\d\\d):(\\d\\d))?");
+
+static final long GREGORIAN_CUTOVER = -12219292800000L;
+static final long YEAR_10000 = 253402300800000L;
+static final long MS_PER_DAY = 86400000L;
+
+//the longest literal printed, a Timestamp
+static public final int MAX_LENGTH = 44;
+
+static final int YEARS = 0;
+static final int MONTHS = 1;
+static final int DAYS = 2;
+static final int HOURS = 3;
+static final int MINUTES = 4;
+static final int SECONDS = 5;
+static final int NANOS = 6;
+static final int OFFSET_SIGN = 7;
+static final int OFFSET_HOURS = 8;
+static final int OFFSET_MINUTES = 9;
+
+static final int[] DAYS_IN_MONTH = {0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+/**
+ * The fields of timestamp s, years to offset-minutes, as given to the
+ * new-instant fn of clojure.instant/parse-timestamp, or null if s is not a
+ * timestamp.
+ */
+static public int[] parse(CharSequence s){
+	int[] f = new int[10];
+	f[MONTHS] = 1;
+	f[DAYS] = 1;
+	if(scan(s, f))
+		return f;
+	//the regex may still match by backtracking, e.g. taking the -05:00 of 2010-05:00 as an offset
+	Matcher m = TIMESTAMP.matcher(s);
+	if(!m.matches())
+		return null;
+	f[YEARS] = Integer.parseInt(m.group(1));
+	f[MONTHS] = m.group(2) == null ? 1 : Integer.parseInt(m.group(2));
+	f[DAYS] = m.group(3) == null ? 1 : Integer.parseInt(m.group(3));
+	f[HOURS] = m.group(4) == null ? 0 : Integer.parseInt(m.group(4));
+	f[MINUTES] = m.group(5) == null ? 0 : Integer.parseInt(m.group(5));
+	f[SECONDS] = m.group(6) == null ? 0 : Integer.parseInt(m.group(6));
+	f[NANOS] = m.group(7) == null ? 0 : fraction(m.group(7), 0, m.group(7).length());
+	f[OFFSET_SIGN] = m.group(8) == null ? 0 : m.group(8).equals("-") ? -1 : 1;
+	f[OFFSET_HOURS] = m.group(9) == null ? 0 : Integer.parseInt(m.group(9));
+	f[OFFSET_MINUTES] = m.group(10) == null ? 0 : Integer.parseInt(m.group(10));
+	return f;
+}
+
+//takes each optional part whenever it is there, which is the first way the regex tries,
+//so a scan that reaches the end finds what the regex would
+static boolean scan(CharSequence s, int[] f){
+	int n = s.length();
+	if(n < 4 || (f[YEARS] = digits(s, 0, 4)) < 0)
+		return false;
+	int i = 4;
+	if(i + 3 <= n && s.charAt(i) == '-' && (f[MONTHS] = digits(s, i + 1, 2)) >= 0)
+		{
+		i += 3;
+		if(i + 3 <= n && s.charAt(i) == '-' && (f[DAYS] = digits(s, i + 1, 2)) >= 0)
+			{
+			i += 3;
+			if(i + 3 <= n && s.charAt(i) == 'T' && (f[HOURS] = digits(s, i + 1, 2)) >= 0)
+				{
+				i += 3;
+				if(i + 3 <= n && s.charAt(i) == ':' && (f[MINUTES] = digits(s, i + 1, 2)) >= 0)
+					{
+					i += 3;
+					if(i + 3 <= n && s.charAt(i) == ':' && (f[SECONDS] = digits(s, i + 1, 2)) >= 0)
+						{
+						i += 3;
+						if(i + 1 < n && s.charAt(i) == '.' && isDigit(s.charAt(i + 1)))
+							{
+							int start = ++i;
+							while(i < n && isDigit(s.charAt(i)))
+								i++;
+							f[NANOS] = fraction(s, start, i);
+							}
+						}
+					}
+				}
+			}
+		}
+	if(i == n)
+		return true;
+	if(s.charAt(i) == 'Z')
+		return i + 1 == n;
+	char sign = s.charAt(i);
+	if(i + 6 == n && (sign == '-' || sign == '+') && s.charAt(i + 3) == ':'
+	   && (f[OFFSET_HOURS] = digits(s, i + 1, 2)) >= 0
+	   && (f[OFFSET_MINUTES] = digits(s, i + 4, 2)) >= 0)
+		{
+		f[OFFSET_SIGN] = sign == '-' ? -1 : 1;
+		return true;
+		}
+	return false;
+}
+
+static boolean isDigit(char c){
+	return c >= '0' && c <= '9';
+}
+
+static int digits(CharSequence s, int i, int len){
+	int v = 0;
+	for(int end = i + len; i < end; i++)
+		{
+		char c = s.charAt(i);
+		if(!isDigit(c))
+			return -1;
+		v = v * 10 + (c - '0');
+		}
+	return v;
+}
+
+//nanoseconds of the fraction digits, truncated or zero filled to 9 places
+static int fraction(CharSequence s, int start, int end){
+	int v = 0;
+	for(int i = 0; i < 9; i++)
+		v = v * 10 + (start + i < end ? s.charAt(start + i) - '0' : 0);
+	return v;
+}
+
+static RuntimeException unrecognized(Object cs){
+	return new RuntimeException("Unrecognized date/time syntax: " + cs);
+}
+
+/**
+ * parse-timestamp: calls newInstant with the fields of timestamp cs.
+ */
+static public Object parse(IFn newInstant, Object cs){
+	int[] f = parse((CharSequence) cs);
+	if(f == null)
+		throw unrecognized(cs);
+	return newInstant.invoke((long) f[YEARS], (long) f[MONTHS], (long) f[DAYS], (long) f[HOURS],
+	                         (long) f[MINUTES], (long) f[SECONDS], (long) f[NANOS], (long) f[OFFSET_SIGN],
+	                         (long) f[OFFSET_HOURS], (long) f[OFFSET_MINUTES]);
+}
+
+static boolean isLeapYear(int year){
+	return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+}
+
+//the checks of clojure.instant/validated, failing with its messages
+static int[] validated(int[] f){
+	if(f[MONTHS] < 1 || f[MONTHS] > 12)
+		throw new RuntimeException("failed: (<= 1 months 12)");
+	int dim = f[MONTHS] == 2 && isLeapYear(f[YEARS]) ? 29 : DAYS_IN_MONTH[f[MONTHS]];
+	if(f[DAYS] < 1 || f[DAYS] > dim)
+		throw new RuntimeException("failed: (<= 1 days (days-in-month months (leap-year? years)))");
+	if(f[HOURS] > 23)
+		throw new RuntimeException("failed: (<= 0 hours 23)");
+	if(f[MINUTES] > 59)
+		throw new RuntimeException("failed: (<= 0 minutes 59)");
+	if(f[SECONDS] > (f[MINUTES] == 59 ? 60 : 59))
+		throw new RuntimeException("failed: (<= 0 seconds (if (= minutes 59) 60 59))");
+	if(f[OFFSET_HOURS] > 23)
+		throw new RuntimeException("failed: (<= 0 offset-hours 23)");
+	if(f[OFFSET_MINUTES] > 59)
+		throw new RuntimeException("failed: (<= 0 offset-minutes 59)");
+	return f;
+}
+
+static int[] read(Object cs){
+	int[] f = parse((CharSequence) cs);
+	if(f == null)
+		throw unrecognized(cs);
+	return validated(f);
+}
+
+//days since 1970-01-01 of a date of the proleptic Gregorian calendar
+static long daysFromCivil(long y, int m, int d){
+	y -= m <= 2 ? 1 : 0;
+	long era = (y >= 0 ? y : y - 399) / 400;
+	long yoe = y - era * 400;
+	long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+	long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+	return era * 146097 + doe - 719468;
+}
+
+//the milliseconds of the fields, with the fraction truncated to milliseconds if withMillis,
+//else dropped, as by the GregorianCalendar of clojure.instant/construct-calendar
+static long millis(int[] f, boolean withMillis){
+	int ms = withMillis ? f[NANOS] / 1000000 : 0;
+	//Gregorian day arithmetic only agrees with the calendar past the cutover
+	if(f[YEARS] > 1582)
+		{
+		long t = ((daysFromCivil(f[YEARS], f[MONTHS], f[DAYS]) * 24 + f[HOURS]) * 60 + f[MINUTES]) * 60 + f[SECONDS];
+		int offset = (f[OFFSET_SIGN] < 0 ? -1 : 1) * (f[OFFSET_HOURS] * 60 + f[OFFSET_MINUTES]);
+		return (t - offset * 60L) * 1000 + ms;
+		}
+	return calendar(f, ms).getTimeInMillis();
+}
+
+static GregorianCalendar calendar(int[] f, int ms){
+	GregorianCalendar c = new GregorianCalendar(f[YEARS], f[MONTHS] - 1, f[DAYS], f[HOURS], f[MINUTES], f[SECONDS]);
+	c.set(Calendar.MILLISECOND, ms);
+	char[] id = {'G', 'M', 'T', f[OFFSET_SIGN] < 0 ? '-' : '+', '0', '0', ':', '0', '0'};
+	put2(id, 4, f[OFFSET_HOURS]);
+	put2(id, 7, f[OFFSET_MINUTES]);
+	c.setTimeZone(TimeZone.getTimeZone(new String(id)));
+	return c;
+}
+
+/**
+ * read-instant-date
+ */
+static public Date readDate(Object cs){
+	return new Date(millis(read(cs), true));
+}
+
+/**
+ * read-instant-timestamp
+ */
+static public Timestamp readTimestamp(Object cs){
+	int[] f = read(cs);
+	Timestamp ts = new Timestamp(millis(f, false));
+	ts.setNanos(f[NANOS]);
+	return ts;
+}
+
+/**
+ * read-instant-calendar
+ */
+static public Calendar readCalendar(Object cs){
+	int[] f = read(cs);
+	return calendar(f, f[NANOS] / 1000000);
+}
+
+//printing
+
+static void put2(char[] buf, int i, int v){
+	buf[i] = (char) ('0' + v / 10);
+	buf[i + 1] = (char) ('0' + v % 10);
+}
+
+static void putDigits(char[] buf, int i, int v, int len){
+	for(int j = i + len - 1; j >= i; j--)
+		{
+		buf[j] = (char) ('0' + v % 10);
+		v /= 10;
+		}
+}
+
+static int putPrefix(char[] buf, int i){
+	"#inst \"".getChars(0, 7, buf, i);
+	return i + 7;
+}
+
+//writes yyyy-MM-ddTHH:mm:ss of local millis t, of the Gregorian calendar, at i
+static int putDateTime(char[] buf, int i, long t){
+	long days = t >= 0 ? t / MS_PER_DAY : (t - MS_PER_DAY + 1) / MS_PER_DAY;
+	int secs = (int) ((t - days * MS_PER_DAY) / 1000);
+	//civil from days
+	long z = days + 719468;
+	long era = (z >= 0 ? z : z - 146096) / 146097;
+	int doe = (int) (z - era * 146097);
+	int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+	int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+	int mp = (5 * doy + 2) / 153;
+	int d = doy - (153 * mp + 2) / 5 + 1;
+	int m = mp < 10 ? mp + 3 : mp - 9;
+	int y = (int) (yoe + era * 400) + (m <= 2 ? 1 : 0);
+	putDigits(buf, i, y, 4);
+	buf[i + 4] = '-';
+	put2(buf, i + 5, m);
+	buf[i + 7] = '-';
+	put2(buf, i + 8, d);
+	buf[i + 10] = 'T';
+	put2(buf, i + 11, secs / 3600);
+	buf[i + 13] = ':';
+	put2(buf, i + 14, secs / 60 % 60);
+	buf[i + 16] = ':';
+	put2(buf, i + 17, secs % 60);
+	return i + 19;
+}
+
+static int putUnknownOffset(char[] buf, int i){
+	//RFC3339 says to use -00:00 when the timezone is unknown (+00:00 implies a known GMT)
+	"-00:00\"".getChars(0, 7, buf, i);
+	return i + 7;
+}
+
+static boolean inRange(long t){
+	return t >= GREGORIAN_CUTOVER && t < YEAR_10000;
+}
+
+static int millisOf(long t){
+	return (int) (t >= 0 ? t % 1000 : (t % 1000 + 1000) % 1000);
+}
+
+/**
+ * Writes the literal of a Date, Timestamp or Calendar into buf at i, which
+ * must have room for MAX_LENGTH chars. Returns the end of the literal, or -1
+ * when x is left to the Calendar classes, e.g. an instant before the cutover.
+ */
+static public int print(Object x, char[] buf, int i){
+	if(x instanceof Timestamp)
+		{
+		long t = ((Timestamp) x).getTime();
+		if(!inRange(t))
+			return -1;
+		i = putDateTime(buf, putPrefix(buf, i), t);
+		buf[i] = '.';
+		putDigits(buf, i + 1, ((Timestamp) x).getNanos(), 9);
+		return putUnknownOffset(buf, i + 10);
+		}
+	if(x instanceof Date)
+		{
+		long t = ((Date) x).getTime();
+		if(!inRange(t))
+			return -1;
+		i = putDateTime(buf, putPrefix(buf, i), t);
+		buf[i] = '.';
+		putDigits(buf, i + 1, millisOf(t), 3);
+		return putUnknownOffset(buf, i + 4);
+		}
+	if(x != null && x.getClass() == GregorianCalendar.class
+	   && ((GregorianCalendar) x).getGregorianChange().getTime() == GREGORIAN_CUTOVER)
+		{
+		Calendar c = (Calendar) x;
+		long t = c.getTimeInMillis();
+		int offset = c.getTimeZone().getOffset(t);
+		t += offset;
+		if(!inRange(t))
+			return -1;
+		i = putDateTime(buf, putPrefix(buf, i), t);
+		buf[i] = '.';
+		putDigits(buf, i + 1, millisOf(t), 3);
+		i += 4;
+		//as %tz, which leaves out any seconds of the offset
+		buf[i] = offset < 0 ? '-' : '+';
+		int minutes = Math.abs(offset) / 60000;
+		put2(buf, i + 1, minutes / 60);
+		buf[i + 3] = ':';
+		put2(buf, i + 4, minutes % 60);
+		buf[i + 6] = '"';
+		return i + 7;
+		}
+	return -1;
+}
+
+//SimpleDateFormat is not thread-safe
+static final ThreadLocal<SimpleDateFormat> UTC_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>(){
+	protected SimpleDateFormat initialValue(){
+		return utcFormat("yyyy-MM-dd'T'HH:mm:ss.SSS-00:00");
+	}
+};
+
+static final ThreadLocal<SimpleDateFormat> UTC_TIMESTAMP_FORMAT = new ThreadLocal<SimpleDateFormat>(){
+	protected SimpleDateFormat initialValue(){
+		return utcFormat("yyyy-MM-dd'T'HH:mm:ss");
+	}
+};
+
+static SimpleDateFormat utcFormat(String pattern){
+	SimpleDateFormat f = new SimpleDateFormat(pattern);
+	f.setTimeZone(TimeZone.getTimeZone("GMT"));
+	return f;
+}
+
+/**
+ * The #inst literal of a Date, Timestamp or Calendar.
+ */
+static public String printString(Object x){
+	char[] buf = new char[MAX_LENGTH];
+	int end = print(x, buf, 0);
+	if(end >= 0)
+		return new String(buf, 0, end);
+	if(x instanceof Timestamp)
+		return "#inst \"" + UTC_TIMESTAMP_FORMAT.get().format((Timestamp) x)
+		       + String.format(".%09d-00:00", ((Timestamp) x).getNanos()) + "\"";
+	if(x instanceof Date)
+		return "#inst \"" + UTC_DATE_FORMAT.get().format((Date) x) + "\"";
+	String s = String.format("%1$tFT%1$tT.%1$tL%1$tz", x);
+	//missing the colon in the offset
+	int m = s.length() - 2;
+	return "#inst \"" + s.substring(0, m) + ":" + s.substring(m) + "\"";
+}
+}
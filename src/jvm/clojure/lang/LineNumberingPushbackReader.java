@@ -12,43 +12,84 @@ package clojure.lang;
 
 import java.io.PushbackReader;
 import java.io.Reader;
-import java.io.LineNumberReader;
 import java.io.IOException;
 
 
 public class LineNumberingPushbackReader extends PushbackReader{
 
-// This class is a PushbackReader that wraps a LineNumberReader. The code
-// here to handle line terminators only mentions '\n' because
-// LineNumberReader collapses all occurrences of CR, LF, and CRLF into a
-// single '\n'.
+// This class is a PushbackReader that buffers and counts lines itself, so
+// that reading a char is an array access rather than a call through the
+// PushbackReader, LineNumberReader and BufferedReader layers. As with
+// LineNumberReader, all occurrences of CR, LF, and CRLF are collapsed into
+// a single '\n', so the code here only mentions '\n'.
 
 private static final int newline = (int) '\n';
 
+private final char[] _buf;
+private int _pos;
+private int _end;
+private boolean _skipLF;
+
+private final int[] _pushback;
+private int _pushed;
+
+private int _lineNumber;
 private boolean _atLineStart = true;
 private boolean _prev;
 private int _columnNumber = 1;
 
 public LineNumberingPushbackReader(Reader r){
-	super(new LineNumberReader(r));
+	this(r, 1);
 }
 
 public LineNumberingPushbackReader(Reader r, int size){
-	super(new LineNumberReader(r, size));
+	super(r, size);
+	_buf = new char[8192];
+	_pushback = new int[size];
 }
 
 public int getLineNumber(){
-	return ((LineNumberReader) in).getLineNumber() + 1;
+	return _lineNumber + 1;
 }
 
-public void setLineNumber(int line) { ((LineNumberReader) in).setLineNumber(line - 1); }
+public void setLineNumber(int line) { _lineNumber = line - 1; }
 
 public int getColumnNumber(){
 	return _columnNumber;
 }
 
+//reads a char from the buffer, refilling it from the wrapped reader as needed
+private int readRaw() throws IOException{
+    for(; ;)
+        {
+        if(_pos == _end)
+            {
+            int n = in.read(_buf, 0, _buf.length);
+            if(n <= 0)
+                return -1;
+            _pos = 0;
+            _end = n;
+            }
+        char c = _buf[_pos++];
+        if(_skipLF)
+            {
+            _skipLF = false;
+            if(c == '\n')
+                continue;
+            }
+        if(c == '\r')
+            {
+            _skipLF = true;
+            c = '\n';
+            }
+        if(c == '\n')
+            _lineNumber++;
+        return c;
+        }
+}
+
 public int read() throws IOException{
-    int c = super.read();
+    int c = _pushed > 0 ? _pushback[--_pushed] : readRaw();
     _prev = _atLineStart;
     if((c == newline) || (c == -1))
         {
@@ -63,32 +104,60 @@ public int read() throws IOException{
     return c;
 }
 
+public int read(char[] cbuf, int off, int len) throws IOException{
+    if(len == 0)
+        return 0;
+    int c = read();
+    if(c == -1)
+        return -1;
+    cbuf[off] = (char) c;
+    int n = 1;
+    //only take what is available without blocking
+    while(n < len && (_pushed > 0 || _pos < _end))
+        {
+        c = read();
+        if(c == -1)
+            break;
+        cbuf[off + n++] = (char) c;
+        }
+    return n;
+}
+
 public void unread(int c) throws IOException{
-    super.unread(c);
+    if(_pushed == _pushback.length)
+        throw new IOException("Pushback buffer overflow");
+    _pushback[_pushed++] = c;
     _atLineStart = _prev;
     _columnNumber--;
 }
 
+public void unread(char[] cbuf, int off, int len) throws IOException{
+    for(int i = off + len - 1; i >= off; i--)
+        unread(cbuf[i]);
+}
+
+public boolean ready() throws IOException{
+    return _pushed > 0 || _pos < _end || in.ready();
+}
+
+public long skip(long n) throws IOException{
+    long i = 0;
+    for(; i < n && read() != -1; i++)
+        ;
+    return i;
+}
+
 public String readLine() throws IOException{
     int c = read();
-    String line;
-    switch (c) {
-    case -1:
-        line = null;
-        break;
-    case newline:
-        line = "";
-        break;
-    default:
-        String first = String.valueOf((char) c);
-        String rest = ((LineNumberReader)in).readLine();
-        line = (rest == null) ? first : first + rest;
-        _prev = false;
-        _atLineStart = true;
-        _columnNumber = 1;
-        break;
-    }
-    return line;
+    if(c == -1)
+        return null;
+    StringBuilder sb = new StringBuilder();
+    for(; c != newline && c != -1; c = read())
+        sb.append((char) c);
+    _prev = false;
+    _atLineStart = true;
+    _columnNumber = 1;
+    return sb.toString();
 }
 
 public boolean atLineStart(){
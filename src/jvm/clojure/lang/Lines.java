@@ -0,0 +1,259 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reduces the lines of a stream, reader or CharSequence, ending lines as
+ * BufferedReader.readLine does. Input is scanned for line ends in a block
+ * array, and each line is made into a String straight from there. Streams
+ * are scanned as bytes when line ends can't be part of a multibyte char in
+ * their charset, and lines of ASCII are then widened rather than decoded.
+ * Nothing is closed here.
+ */
+public class Lines{
+
+static final Charset UTF8 = Charset.forName("UTF-8");
+
+static final int BLOCK = 65536;
+
+//line terminators can be found in the bytes, they are never part of a multibyte char
+static public boolean hasByteLines(Charset charset){
+	return charset.equals(UTF8) || charset.newEncoder().maxBytesPerChar() == 1
+	                               && charset.decode(ByteBuffer.wrap(new byte[]{'\r', '\n'})).toString().equals("\r\n");
+}
+
+static boolean isAsciiBased(Charset charset){
+	byte[] b = new byte[128];
+	for(int i = 0; i < b.length; i++)
+		b[i] = (byte) i;
+	CharBuffer c = charset.decode(ByteBuffer.wrap(b));
+	if(c.length() != b.length)
+		return false;
+	for(int i = 0; i < b.length; i++)
+		if(c.charAt(i) != i)
+			return false;
+	return true;
+}
+
+//the scans are kept in methods of their own, so that they are compiled on their own
+static int lineEnd(byte[] b, int i, int n){
+	for(; i < n; i++)
+		{
+		byte c = b[i];
+		if(c == '\n' || c == '\r')
+			return i;
+		}
+	return n;
+}
+
+static int lineEnd(char[] b, int i, int n){
+	for(; i < n; i++)
+		{
+		char c = b[i];
+		if(c == '\n' || c == '\r')
+			return i;
+		}
+	return n;
+}
+
+static public Object reduce(InputStream in, Charset charset, IFn f, Object ret){
+	if(!hasByteLines(charset))
+		return reduce(new InputStreamReader(in, charset), f, ret);
+	LineDecoder d = new LineDecoder(charset);
+	byte[] b = new byte[BLOCK];
+	int n = 0;
+	int start = 0;
+	int i = 0;
+	boolean skipLF = false;
+	try
+		{
+		for(; ;)
+			{
+			i = lineEnd(b, i, n);
+			if(i < n)
+				{
+				ret = f.invoke(ret, d.decode(b, start, i - start));
+				if(RT.isReduced(ret))
+					return ((IDeref) ret).deref();
+				skipLF = b[i] == '\r';
+				start = ++i;
+				if(skipLF && i < n)
+					{
+					skipLF = false;
+					if(b[i] == '\n')
+						start = ++i;
+					}
+				continue;
+				}
+			//refill, keeping the current line
+			if(start > 0)
+				{
+				System.arraycopy(b, start, b, 0, n - start);
+				n -= start;
+				i -= start;
+				start = 0;
+				}
+			else if(n == b.length)
+				b = Arrays.copyOf(b, 2 * b.length);
+			int k = in.read(b, n, b.length - n);
+			if(k < 0)
+				break;
+			n += k;
+			if(skipLF && k > 0)
+				{
+				skipLF = false;
+				if(b[i] == '\n')
+					start = ++i;
+				}
+			}
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+	if(start < n)
+		{
+		ret = f.invoke(ret, d.decode(b, start, n - start));
+		if(RT.isReduced(ret))
+			return ((IDeref) ret).deref();
+		}
+	return ret;
+}
+
+static public Object reduce(Reader r, IFn f, Object ret){
+	char[] b = new char[BLOCK];
+	int n = 0;
+	int start = 0;
+	int i = 0;
+	boolean skipLF = false;
+	try
+		{
+		for(; ;)
+			{
+			i = lineEnd(b, i, n);
+			if(i < n)
+				{
+				ret = f.invoke(ret, new String(b, start, i - start));
+				if(RT.isReduced(ret))
+					return ((IDeref) ret).deref();
+				skipLF = b[i] == '\r';
+				start = ++i;
+				if(skipLF && i < n)
+					{
+					skipLF = false;
+					if(b[i] == '\n')
+						start = ++i;
+					}
+				continue;
+				}
+			if(start > 0)
+				{
+				System.arraycopy(b, start, b, 0, n - start);
+				n -= start;
+				i -= start;
+				start = 0;
+				}
+			else if(n == b.length)
+				b = Arrays.copyOf(b, 2 * b.length);
+			int k = r.read(b, n, b.length - n);
+			if(k < 0)
+				break;
+			n += k;
+			if(skipLF && k > 0)
+				{
+				skipLF = false;
+				if(b[i] == '\n')
+					start = ++i;
+				}
+			}
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+	if(start < n)
+		{
+		ret = f.invoke(ret, new String(b, start, n - start));
+		if(RT.isReduced(ret))
+			return ((IDeref) ret).deref();
+		}
+	return ret;
+}
+
+static public Object reduce(CharSequence s, IFn f, Object ret){
+	int n = s.length();
+	int start = 0;
+	for(int i = 0; i < n; i++)
+		{
+		char c = s.charAt(i);
+		if(c == '\n' || c == '\r')
+			{
+			ret = f.invoke(ret, s.subSequence(start, i).toString());
+			if(RT.isReduced(ret))
+				return ((IDeref) ret).deref();
+			if(c == '\r' && i + 1 < n && s.charAt(i + 1) == '\n')
+				i++;
+			start = i + 1;
+			}
+		}
+	if(start < n)
+		{
+		ret = f.invoke(ret, s.subSequence(start, n).toString());
+		if(RT.isReduced(ret))
+			return ((IDeref) ret).deref();
+		}
+	return ret;
+}
+
+//decodes into a scratch array, lines of ASCII in an ASCII based charset by a plain widening
+static class LineDecoder{
+	final CharsetDecoder decoder;
+	final boolean asciiBased;
+	char[] chars = new char[256];
+
+	LineDecoder(Charset charset){
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		asciiBased = isAsciiBased(charset);
+	}
+
+	String decode(byte[] b, int start, int len){
+		//the charsets with byte lines decode to at most one char per byte
+		if(len > chars.length)
+			chars = new char[Math.max(len, 2 * chars.length)];
+		if(asciiBased)
+			{
+			int i = 0;
+			for(byte c; i < len && (c = b[start + i]) >= 0; i++)
+				chars[i] = (char) c;
+			if(i == len)
+				return new String(chars, 0, len);
+			}
+		CharBuffer out = CharBuffer.wrap(chars);
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(b, start, len), out, true);
+		decoder.flush(out);
+		return new String(chars, 0, out.position());
+	}
+}
+}
@@ -137,6 +137,27 @@ static
 static boolean isWhitespace(int ch){
 	return Character.isWhitespace(ch) || ch == ',';
 }
+
+//chars ending a token or a number, precomputed for ASCII, the only range holding macro chars
+static final boolean[] tokenEnd = new boolean[128];
+static final boolean[] numberEnd = new boolean[128];
+
+static
+	{
+	for(int ch = 0; ch < 128; ch++)
+		{
+		tokenEnd[ch] = isWhitespace(ch) || isTerminatingMacro(ch);
+		numberEnd[ch] = isWhitespace(ch) || isMacro(ch);
+		}
+	}
+
+static private boolean isTokenEnd(int ch){
+	return ch < 0 || (ch < 128 ? tokenEnd[ch] : isWhitespace(ch));
+}
+
+static private boolean isNumberEnd(int ch){
+	return ch < 0 || (ch < 128 ? numberEnd[ch] : isWhitespace(ch));
+}
 //回吐一个字符
 static void unread(PushbackReader r, int ch) {
 	if(ch != -1)
@@ -211,8 +232,13 @@ static public Object read(PushbackReader r, boolean eofIsError, Object eofValue,
     return read(r, eofIsError, eofValue, isRecursive, PersistentHashMap.EMPTY);
 }
 
+//the nested reads of the reader macros go through the private overloads, and skip the checks here
 static public Object read(PushbackReader r, boolean eofIsError, Object eofValue, boolean isRecursive, Object opts)
 {
+	if(RT.READEVAL.deref() == UNKNOWN)
+		throw Util.runtimeException("Reading disallowed - *read-eval* bound to :unknown");
+
+	opts = installPlatformFeature(opts);
 	return read(r, eofIsError, eofValue, null, null, isRecursive, opts, new LinkedList());
 }
 
@@ -235,11 +261,6 @@ static private Object installPlatformFeature(Object opts) {
 
 static private Object read(PushbackReader r, boolean eofIsError, Object eofValue, Character returnOn, Object returnOnValue, boolean isRecursive, Object opts, Object pendingForms)
 {
-	if(RT.READEVAL.deref() == UNKNOWN)
-		throw Util.runtimeException("Reading disallowed - *read-eval* bound to :unknown");
-
-    opts = installPlatformFeature(opts);
-
 	try
 		{
 		for(; ;)
@@ -313,14 +334,29 @@ static private Object read(PushbackReader r, boolean eofIsError, Object eofValue
 		}
 }
 
-static private String readToken(PushbackReader r, char initch) {
-	StringBuilder sb = new StringBuilder();
+//tokens are built in a per thread buffer, a token is always complete before the next is started
+static final ThreadLocal<StringBuilder> TOKEN_BUF = new ThreadLocal<StringBuilder>(){
+	protected StringBuilder initialValue(){
+		return new StringBuilder();
+	}
+};
+
+static private StringBuilder tokenBuffer(char initch){
+	StringBuilder sb = TOKEN_BUF.get();
+	if(sb.capacity() > 4096)
+		TOKEN_BUF.set(sb = new StringBuilder());
+	sb.setLength(0);
 	sb.append(initch);
+	return sb;
+}
+
+static private String readToken(PushbackReader r, char initch) {
+	StringBuilder sb = tokenBuffer(initch);
 
 	for(; ;)
 		{
 		int ch = read1(r);
-		if(ch == -1 || isWhitespace(ch) || isTerminatingMacro(ch))
+		if(isTokenEnd(ch))
 			{
 			unread(r, ch);
 			return sb.toString();
@@ -330,13 +366,12 @@ static private String readToken(PushbackReader r, char initch) {
 }
 //不仅仅是空白符，遇到读取宏字符也会停止
 static private Object readNumber(PushbackReader r, char initch) {
-	StringBuilder sb = new StringBuilder();
-	sb.append(initch);
+	StringBuilder sb = tokenBuffer(initch);
 
 	for(; ;)
 		{
 		int ch = read1(r);
-		if(ch == -1 || isWhitespace(ch) || isMacro(ch))
+		if(isNumberEnd(ch))
 			{
 			unread(r, ch);
 			break;
@@ -412,6 +447,9 @@ static private Object interpretToken(String s) {
 
 //返回null，关键字，或符号
 private static Object matchSymbol(String s){
+	Object ret = matchPlainSymbol(s);
+	if(ret != null)
+		return ret;
 	Matcher m = symbolPat.matcher(s);
 	if(m.matches())
 		{
@@ -457,7 +495,100 @@ private static Object matchSymbol(String s){
 }
 
 
+//symbols and keywords with no colon past the keyword's own and at most one inner slash,
+//i.e. nearly all of them, are classified without symbolPat; null means use the regex
+private static Object matchPlainSymbol(String s){
+	int len = s.length();
+	int start = s.charAt(0) == ':' ? 1 : 0;
+	if(start == len || isDecimalDigit(s.charAt(start)))
+		return null;
+	int slash = -1;
+	for(int i = start; i < len; i++)
+		{
+		char c = s.charAt(i);
+		if(c == ':')
+			return null;
+		if(c == '/')
+			{
+			if(slash != -1)
+				return null;
+			slash = i;
+			}
+		}
+	Symbol sym;
+	if(slash == -1)
+		sym = Symbol.intern(null, start == 0 ? s : s.substring(start));
+	else if(slash == start || slash == len - 1 || isDecimalDigit(s.charAt(slash + 1)))
+		return null;
+	else
+		sym = Symbol.intern(s.substring(start, slash), s.substring(slash + 1));
+	return start == 0 ? sym : Keyword.intern(sym);
+}
+
+static private boolean isDecimalDigit(int ch){
+	return ch >= '0' && ch <= '9';
+}
+
+//decimal longs and ratios of up to 18 digits and doubles are parsed without the number
+//patterns, null means use the regexes
+private static Object matchPlainNumber(String s){
+	int len = s.length();
+	int i = 0;
+	char c = s.charAt(0);
+	boolean negate = c == '-';
+	if(c == '-' || c == '+')
+		i++;
+	int digits = i;
+	long n = 0;
+	for(; i < len && isDecimalDigit(c = s.charAt(i)); i++)
+		n = n * 10 + (c - '0');
+	digits = i - digits;
+	if(digits == 0)
+		return null;
+	if(i == len)
+		{
+		if(digits > 18 || (digits > 1 && s.charAt(len - digits) == '0'))
+			return null;
+		return Numbers.num(negate ? -n : n);
+		}
+	if(c == '/')
+		{
+		int denominator = ++i;
+		long d = 0;
+		for(; i < len && isDecimalDigit(c = s.charAt(i)); i++)
+			d = d * 10 + (c - '0');
+		if(i != len || i == denominator || digits > 18 || len - denominator > 18)
+			return null;
+		return Numbers.divide(Numbers.num(negate ? -n : n), Numbers.num(d));
+		}
+	boolean isFloat = false;
+	if(c == '.')
+		{
+		isFloat = true;
+		for(i++; i < len && isDecimalDigit(s.charAt(i)); i++)
+			;
+		}
+	if(i < len && ((c = s.charAt(i)) == 'e' || c == 'E'))
+		{
+		isFloat = true;
+		i++;
+		if(i < len && ((c = s.charAt(i)) == '-' || c == '+'))
+			i++;
+		int exp = i;
+		for(; i < len && isDecimalDigit(s.charAt(i)); i++)
+			;
+		if(i == exp)
+			return null;
+		}
+	if(i != len || !isFloat)
+		return null;
+	return Double.parseDouble(s);
+}
+
 private static Object matchNumber(String s){
+	Object ret = matchPlainNumber(s);
+	if(ret != null)
+		return ret;
 	Matcher m = intPat.matcher(s);
 	if(m.matches())
 		{
@@ -978,32 +1109,32 @@ public static class SyntaxQuoteReader extends AFn{
 	}
 
 	private static ISeq sqExpandList(ISeq seq) {
-		PersistentVector ret = PersistentVector.EMPTY;
+		ITransientCollection ret = PersistentVector.EMPTY.asTransient();
 		for(; seq != null; seq = seq.next())
 			{
 			Object item = seq.first();
 			if(isUnquote(item))
 //取消语法引述
-				ret = ret.cons(RT.list(LIST, RT.second(item)));
+				ret = ret.conj(RT.list(LIST, RT.second(item)));
 			else if(isUnquoteSplicing(item))
 //取消语法引述并拼接
-				ret = ret.cons(RT.second(item));
+				ret = ret.conj(RT.second(item));
 			else
 //语法引述
-				ret = ret.cons(RT.list(LIST, syntaxQuote(item)));
+				ret = ret.conj(RT.list(LIST, syntaxQuote(item)));
 			}
-		return ret.seq();
+		return ((IPersistentVector) ret.persistent()).seq();
 	}
 
 	private static IPersistentVector flattenMap(Object form){
-		IPersistentVector keyvals = PersistentVector.EMPTY;
+		ITransientCollection keyvals = PersistentVector.EMPTY.asTransient();
 		for(ISeq s = RT.seq(form); s != null; s = s.next())
 			{
 			IMapEntry e = (IMapEntry) s.first();
-			keyvals = (IPersistentVector) keyvals.cons(e.key());
-			keyvals = (IPersistentVector) keyvals.cons(e.val());
+			keyvals = keyvals.conj(e.key());
+			keyvals = keyvals.conj(e.val());
 			}
-		return keyvals;
+		return (IPersistentVector) keyvals.persistent();
 	}
 
 }
@@ -1198,7 +1329,10 @@ public static class EvalReader extends AFn{
 public static class VectorReader extends AFn{
 	public Object invoke(Object reader, Object leftparen, Object opts, Object pendingForms) {
 		PushbackReader r = (PushbackReader) reader;
-		return LazilyPersistentVector.create(readDelimitedList(']', r, true, opts, pendingForms));
+		List list = readDelimitedList(']', r, true, opts, pendingForms);
+		if(list.size() <= Tuple.MAX_SIZE)
+			return Tuple.createFromArray(list.toArray());
+		return LazilyPersistentVector.create(list);
 	}
 
 }
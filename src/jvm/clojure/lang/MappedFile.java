@@ -0,0 +1,232 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Text input from a memory mapped file, decoded as it is consumed rather than
+ * copied through an InputStreamReader and BufferedReader.
+ *
+ * Files are mapped in regions of at most 2GB, so lines() and reader() work on
+ * files of any size. chars() is limited to files of under 2GB, and is a view
+ * of the mapped bytes themselves when they are ISO-8859-1, or ASCII in UTF-8
+ * or US-ASCII; other text is decoded into a CharBuffer once.
+ */
+public class MappedFile{
+
+static final Charset UTF8 = Charset.forName("UTF-8");
+static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+final File file;
+final Charset charset;
+final int region;
+
+public MappedFile(File file, String encoding){
+	this(file, Charset.forName(encoding), Integer.MAX_VALUE);
+}
+
+MappedFile(File file, Charset charset, int region){
+	this.file = file;
+	this.charset = charset;
+	this.region = region;
+}
+
+ByteBuffer map(long position, long size){
+	try
+		{
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		try
+			{
+			return f.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size);
+			}
+		finally
+			{
+			f.close();
+			}
+		}
+	catch(IOException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+CharsetDecoder decoder(){
+	return charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+}
+
+/**
+ * A reducible of the lines of the file, as by BufferedReader.readLine. A line
+ * is decoded when it is reached.
+ */
+public IReduceInit lines(){
+	return new IReduceInit(){
+		public Object reduce(IFn f, Object start){
+			if(Lines.hasByteLines(charset))
+				return Lines.reduce(new RegionStream(), charset, f, start);
+			return Lines.reduce(chars(), f, start);
+		}
+	};
+}
+
+/**
+ * The text of the file as a CharSequence, e.g. for re-seq or clojure.string.
+ */
+public CharSequence chars(){
+	long size = file.length();
+	if(size > region)
+		throw new IllegalArgumentException("File too large for a CharSequence: " + file);
+	ByteBuffer buf = map(0, size);
+	if(charset.equals(ISO_8859_1)
+	   || (charset.equals(UTF8) || charset.equals(US_ASCII)) && isAscii(buf))
+		return new ByteChars(buf, 0, buf.limit());
+	try
+		{
+		return decoder().decode(buf);
+		}
+	catch(CharacterCodingException e)
+		{
+		throw Util.sneakyThrow(e);
+		}
+}
+
+static boolean isAscii(ByteBuffer buf){
+	for(int i = 0, n = buf.limit(); i < n; i++)
+		if(buf.get(i) < 0)
+			return false;
+	return true;
+}
+
+/**
+ * A reader decoding the file straight into the buffer of the returned
+ * LineNumberingPushbackReader, for LispReader and EdnReader.
+ */
+public LineNumberingPushbackReader reader(){
+	return new LineNumberingPushbackReader(new DecodingReader());
+}
+
+static class ByteChars implements CharSequence{
+	final ByteBuffer buf;
+	final int offset;
+	final int length;
+
+	ByteChars(ByteBuffer buf, int offset, int length){
+		this.buf = buf;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public int length(){
+		return length;
+	}
+
+	public char charAt(int i){
+		if(i < 0 || i >= length)
+			throw new IndexOutOfBoundsException();
+		return (char) (buf.get(offset + i) & 0xFF);
+	}
+
+	public CharSequence subSequence(int start, int end){
+		if(start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException();
+		return new ByteChars(buf, offset + start, end - start);
+	}
+
+	public String toString(){
+		byte[] b = new byte[length];
+		ByteBuffer d = buf.duplicate();
+		d.position(offset);
+		d.get(b);
+		return new String(b, ISO_8859_1);
+	}
+}
+
+//the bytes of the file, a mapped region at a time
+class RegionStream extends InputStream{
+	final long size = file.length();
+	long pos;
+	ByteBuffer buf;
+
+	public int read(){
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len){
+		if(buf == null || !buf.hasRemaining())
+			{
+			if(pos == size)
+				return -1;
+			buf = map(pos, Math.min(region, size - pos));
+			pos += buf.limit();
+			}
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+}
+
+class DecodingReader extends Reader{
+	final CharsetDecoder decoder = decoder();
+	final long size = file.length();
+	long pos;
+	ByteBuffer buf;
+	boolean done;
+
+	public int read(char[] cbuf, int off, int len){
+		if(len == 0)
+			return 0;
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		while(!done)
+			{
+			if(buf == null)
+				buf = map(pos, Math.min(region, size - pos));
+			boolean last = pos + buf.limit() == size;
+			CoderResult r = decoder.decode(buf, out, last);
+			if(r.isOverflow() || out.position() > off)
+				break;
+			if(last)
+				{
+				decoder.flush(out);
+				done = true;
+				}
+			else
+				{
+				//the next region starts with any bytes of a char split by this one's end
+				pos += buf.position();
+				buf = null;
+				}
+			}
+		int n = out.position() - off;
+		return n == 0 && done ? -1 : n;
+	}
+
+	public void close(){
+		buf = null;
+		done = true;
+	}
+}
+}
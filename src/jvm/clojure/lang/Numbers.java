@@ -88,6 +88,26 @@ static abstract class OpsP implements Ops{
 
 }
 
+//Longs and Doubles, the numbers most boxed arithmetic sees, are worked on directly
+//rather than through the Ops dispatch, with the same results
+static final int LONGS = 1;
+static final int DOUBLES = 2;
+
+static int pairKind(Object x, Object y){
+	Class xc = x.getClass();
+	Class yc = y.getClass();
+	if(xc == Long.class)
+		{
+		if(yc == Long.class)
+			return LONGS;
+		if(yc == Double.class)
+			return DOUBLES;
+		}
+	else if(xc == Double.class && (yc == Double.class || yc == Long.class))
+		return DOUBLES;
+	return 0;
+}
+
 static public boolean isZero(Object x){
 	return ops(x).isZero((Number)x);
 }
@@ -109,35 +129,91 @@ static public Number minusP(Object x){
 }
 
 static public Number inc(Object x){
+	if(x.getClass() == Long.class)
+		return num(inc(((Long) x).longValue()));
 	return ops(x).inc((Number)x);
 }
 
 static public Number incP(Object x){
+	if(x.getClass() == Long.class)
+		{
+		long lx = (Long) x;
+		if(lx < Long.MAX_VALUE)
+			return num(lx + 1);
+		}
 	return ops(x).incP((Number)x);
 }
 
 static public Number dec(Object x){
+	if(x.getClass() == Long.class)
+		return num(dec(((Long) x).longValue()));
 	return ops(x).dec((Number)x);
 }
 
 static public Number decP(Object x){
+	if(x.getClass() == Long.class)
+		{
+		long lx = (Long) x;
+		if(lx > Long.MIN_VALUE)
+			return num(lx - 1);
+		}
 	return ops(x).decP((Number)x);
 }
 
 static public Number add(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return num(add(((Long) x).longValue(), ((Long) y).longValue()));
+		case DOUBLES:
+			return num(((Number) x).doubleValue() + ((Number) y).doubleValue());
+		}
 	return ops(x).combine(ops(y)).add((Number)x, (Number)y);
 }
 
 static public Number addP(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			long lx = (Long) x, ly = (Long) y;
+			long ret = lx + ly;
+			if((ret ^ lx) < 0 && (ret ^ ly) < 0)
+				break;
+			return num(ret);
+		case DOUBLES:
+			return num(((Number) x).doubleValue() + ((Number) y).doubleValue());
+		}
 	return ops(x).combine(ops(y)).addP((Number)x, (Number)y);
 }
 
 static public Number minus(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			long ly = (Long) y;
+			//negating MIN_VALUE overflows, even where the difference would not
+			if(ly == Long.MIN_VALUE)
+				break;
+			return num(minus(((Long) x).longValue(), ly));
+		case DOUBLES:
+			return num(((Number) x).doubleValue() - ((Number) y).doubleValue());
+		}
 	Ops yops = ops(y);
 	return ops(x).combine(yops).add((Number)x, yops.negate((Number)y));
 }
 
 static public Number minusP(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			long lx = (Long) x, ly = (Long) y;
+			long ret = lx - ly;
+			if(ly == Long.MIN_VALUE || ((ret ^ lx) < 0 && (ret ^ ~ly) < 0))
+				break;
+			return num(ret);
+		case DOUBLES:
+			return num(((Number) x).doubleValue() - ((Number) y).doubleValue());
+		}
 	Ops yops = ops(y);
 	Number negativeY = yops.negateP((Number) y);
 	Ops negativeYOps = ops(negativeY);
@@ -145,10 +221,30 @@ static public Number minusP(Object x, Object y){
 }
 
 static public Number multiply(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return num(multiply(((Long) x).longValue(), ((Long) y).longValue()));
+		case DOUBLES:
+			return num(((Number) x).doubleValue() * ((Number) y).doubleValue());
+		}
 	return ops(x).combine(ops(y)).multiply((Number)x, (Number)y);
 }
 
 static public Number multiplyP(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			long lx = (Long) x, ly = (Long) y;
+			if(lx == Long.MIN_VALUE && ly < 0)
+				break;
+			long ret = lx * ly;
+			if(ly != 0 && ret / ly != lx)
+				break;
+			return num(ret);
+		case DOUBLES:
+			return num(((Number) x).doubleValue() * ((Number) y).doubleValue());
+		}
 	return ops(x).combine(ops(y)).multiplyP((Number)x, (Number)y);
 }
 
@@ -209,6 +305,13 @@ static public boolean equiv(Object x, Object y){
 }
 
 static public boolean equiv(Number x, Number y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return x.longValue() == y.longValue();
+		case DOUBLES:
+			return x.doubleValue() == y.doubleValue();
+		}
 	return ops(x).combine(ops(y)).equiv(x, y);
 }
 
@@ -218,22 +321,59 @@ static public boolean equal(Number x, Number y){
 }
 
 static public boolean lt(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return ((Long) x).longValue() < ((Long) y).longValue();
+		case DOUBLES:
+			return ((Number) x).doubleValue() < ((Number) y).doubleValue();
+		}
 	return ops(x).combine(ops(y)).lt((Number)x, (Number)y);
 }
 
 static public boolean lte(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return ((Long) x).longValue() <= ((Long) y).longValue();
+		case DOUBLES:
+			return ((Number) x).doubleValue() <= ((Number) y).doubleValue();
+		}
 	return ops(x).combine(ops(y)).lte((Number)x, (Number)y);
 }
 
 static public boolean gt(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return ((Long) x).longValue() > ((Long) y).longValue();
+		case DOUBLES:
+			return ((Number) x).doubleValue() > ((Number) y).doubleValue();
+		}
 	return ops(x).combine(ops(y)).lt((Number)y, (Number)x);
 }
 
 static public boolean gte(Object x, Object y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			return ((Long) x).longValue() >= ((Long) y).longValue();
+		case DOUBLES:
+			return ((Number) x).doubleValue() >= ((Number) y).doubleValue();
+		}
 	return ops(x).combine(ops(y)).gte((Number)x, (Number)y);
 }
 
 static public int compare(Number x, Number y){
+	switch(pairKind(x, y))
+		{
+		case LONGS:
+			long lx = x.longValue(), ly = y.longValue();
+			return lx < ly ? -1 : (lx > ly ? 1 : 0);
+		case DOUBLES:
+			double dx = x.doubleValue(), dy = y.doubleValue();
+			return dx < dy ? -1 : (dx > dy ? 1 : 0);
+		}
 	Ops ops = ops(x).combine(ops(y));
 	if(ops.lt(x, y))
 		return -1;
@@ -1734,7 +1874,22 @@ static public int unchecked_int_remainder(int x, int y){
 //	return x == 0;
 //}
 
+//the boxes of small longs, as counters and indexes keep making them. In a class of
+//its own so that it is initialized before anything in Numbers is boxed
+static final class LongCache{
+	static final int LOW = -1024;
+	static final Long[] cache = new Long[2048];
+
+	static
+		{
+		for(int i = 0; i < cache.length; i++)
+			cache[i] = Long.valueOf(LOW + i);
+		}
+}
+
 static public Number num(long x){
+	if(x >= LongCache.LOW && x < LongCache.LOW + 2048)
+		return LongCache.cache[(int) x - LongCache.LOW];
 	return Long.valueOf(x);
 }
 
@@ -0,0 +1,426 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.util.Arrays;
+
+/**
+ * Bulk numeric operations on long, double and int arrays, for asum, adot,
+ * axpy, amin, amax, aprefix-sum, ahistogram and asort.
+ *
+ * The loops are plain counted loops over the arrays, which the JIT unrolls,
+ * and vectorizes where it can (the element-wise double ones). Integer
+ * arithmetic throws on overflow as + and * do, but overflow is tracked in a
+ * flag rather than tested with a branch per element, and products are only
+ * checked one by one when some operand is outside the int range. Sums are
+ * taken in index order, so a double sum is that of (reduce + a).
+ *
+ * The Object methods take any of the three array types.
+ */
+public class NumericArrays{
+
+static IllegalArgumentException notNumeric(Object a){
+	return new IllegalArgumentException("Not a long, double or int array: "
+	                                    + (a == null ? null : a.getClass().getName()));
+}
+
+static void checkLengths(int n, int m){
+	if(n != m)
+		throw new IllegalArgumentException("Arrays of different lengths: " + n + " and " + m);
+}
+
+//nonzero in bit 31 or above when x is outside the int range
+static long wide(long x){
+	return x ^ (x >> 31);
+}
+
+//sum
+
+static public long sum(long[] a){
+	long s = 0;
+	long ovf = 0;
+	for(int i = 0; i < a.length; i++)
+		{
+		long x = a[i];
+		long r = s + x;
+		ovf |= (s ^ r) & (x ^ r);
+		s = r;
+		}
+	if(ovf < 0)
+		return Numbers.throwIntOverflow();
+	return s;
+}
+
+static public double sum(double[] a){
+	double s = 0;
+	for(int i = 0; i < a.length; i++)
+		s += a[i];
+	return s;
+}
+
+//a long can't overflow on fewer than 2^32 ints
+static public long sum(int[] a){
+	long s = 0;
+	for(int i = 0; i < a.length; i++)
+		s += a[i];
+	return s;
+}
+
+static public Number sum(Object a){
+	if(a instanceof long[])
+		return sum((long[]) a);
+	if(a instanceof double[])
+		return sum((double[]) a);
+	if(a instanceof int[])
+		return sum((int[]) a);
+	throw notNumeric(a);
+}
+
+//dot
+
+static public long dot(long[] a, long[] b){
+	checkLengths(a.length, b.length);
+	long s = 0;
+	long ovf = 0;
+	long wide = 0;
+	for(int i = 0; i < a.length; i++)
+		{
+		long x = a[i];
+		long y = b[i];
+		long p = x * y;
+		long r = s + p;
+		ovf |= (s ^ r) & (p ^ r);
+		wide |= wide(x) | wide(y);
+		s = r;
+		}
+	if(wide >>> 31 != 0)
+		{
+		//a product may have overflowed
+		s = 0;
+		for(int i = 0; i < a.length; i++)
+			s = Numbers.add(s, Numbers.multiply(a[i], b[i]));
+		return s;
+		}
+	if(ovf < 0)
+		return Numbers.throwIntOverflow();
+	return s;
+}
+
+static public double dot(double[] a, double[] b){
+	checkLengths(a.length, b.length);
+	double s = 0;
+	for(int i = 0; i < a.length; i++)
+		s += a[i] * b[i];
+	return s;
+}
+
+static public long dot(int[] a, int[] b){
+	checkLengths(a.length, b.length);
+	long s = 0;
+	long ovf = 0;
+	for(int i = 0; i < a.length; i++)
+		{
+		long p = (long) a[i] * b[i];
+		long r = s + p;
+		ovf |= (s ^ r) & (p ^ r);
+		s = r;
+		}
+	if(ovf < 0)
+		return Numbers.throwIntOverflow();
+	return s;
+}
+
+static public Number dot(Object a, Object b){
+	if(a instanceof long[] && b instanceof long[])
+		return dot((long[]) a, (long[]) b);
+	if(a instanceof double[] && b instanceof double[])
+		return dot((double[]) a, (double[]) b);
+	if(a instanceof int[] && b instanceof int[])
+		return dot((int[]) a, (int[]) b);
+	throw notNumeric(a instanceof long[] || a instanceof double[] || a instanceof int[] ? b : a);
+}
+
+//axpy, a new array of a*x + y
+
+static public long[] axpy(long a, long[] x, long[] y){
+	checkLengths(x.length, y.length);
+	long[] z = new long[x.length];
+	long ovf = 0;
+	long wide = wide(a);
+	for(int i = 0; i < x.length; i++)
+		{
+		long p = a * x[i];
+		long r = p + y[i];
+		ovf |= (p ^ r) & (y[i] ^ r);
+		wide |= wide(x[i]);
+		z[i] = r;
+		}
+	if(wide >>> 31 != 0)
+		{
+		for(int i = 0; i < x.length; i++)
+			z[i] = Numbers.add(Numbers.multiply(a, x[i]), y[i]);
+		return z;
+		}
+	if(ovf < 0)
+		Numbers.throwIntOverflow();
+	return z;
+}
+
+static public double[] axpy(double a, double[] x, double[] y){
+	checkLengths(x.length, y.length);
+	double[] z = new double[x.length];
+	for(int i = 0; i < x.length; i++)
+		z[i] = a * x[i] + y[i];
+	return z;
+}
+
+static public int[] axpy(int a, int[] x, int[] y){
+	checkLengths(x.length, y.length);
+	int[] z = new int[x.length];
+	long ovf = 0;
+	for(int i = 0; i < x.length; i++)
+		{
+		long r = (long) a * x[i] + y[i];
+		ovf |= r ^ (int) r;
+		z[i] = (int) r;
+		}
+	if(ovf != 0)
+		Numbers.throwIntOverflow();
+	return z;
+}
+
+//a scales long and int arrays as is, not truncated, so must be an integer
+static Object integral(Object a){
+	if(Util.isInteger(a) || a instanceof Short || a instanceof Byte)
+		return a;
+	throw new IllegalArgumentException("Not an integer, to scale a long or int array: " + a);
+}
+
+static public Object axpy(Object a, Object x, Object y){
+	if(x instanceof long[] && y instanceof long[])
+		return axpy(RT.longCast(integral(a)), (long[]) x, (long[]) y);
+	if(x instanceof double[] && y instanceof double[])
+		return axpy(RT.doubleCast(a), (double[]) x, (double[]) y);
+	if(x instanceof int[] && y instanceof int[])
+		return axpy(RT.intCast(integral(a)), (int[]) x, (int[]) y);
+	throw notNumeric(x instanceof long[] || x instanceof double[] || x instanceof int[] ? y : x);
+}
+
+//min and max, as by Math/min and Math/max
+
+static void checkNotEmpty(int n){
+	if(n == 0)
+		throw new IllegalArgumentException("Empty array");
+}
+
+static public long min(long[] a){
+	checkNotEmpty(a.length);
+	long m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.min(m, a[i]);
+	return m;
+}
+
+static public double min(double[] a){
+	checkNotEmpty(a.length);
+	double m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.min(m, a[i]);
+	return m;
+}
+
+static public int min(int[] a){
+	checkNotEmpty(a.length);
+	int m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.min(m, a[i]);
+	return m;
+}
+
+static public Number min(Object a){
+	if(a instanceof long[])
+		return min((long[]) a);
+	if(a instanceof double[])
+		return min((double[]) a);
+	if(a instanceof int[])
+		return min((int[]) a);
+	throw notNumeric(a);
+}
+
+static public long max(long[] a){
+	checkNotEmpty(a.length);
+	long m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.max(m, a[i]);
+	return m;
+}
+
+static public double max(double[] a){
+	checkNotEmpty(a.length);
+	double m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.max(m, a[i]);
+	return m;
+}
+
+static public int max(int[] a){
+	checkNotEmpty(a.length);
+	int m = a[0];
+	for(int i = 1; i < a.length; i++)
+		m = Math.max(m, a[i]);
+	return m;
+}
+
+static public Number max(Object a){
+	if(a instanceof long[])
+		return max((long[]) a);
+	if(a instanceof double[])
+		return max((double[]) a);
+	if(a instanceof int[])
+		return max((int[]) a);
+	throw notNumeric(a);
+}
+
+//prefix sums, a new array of the running sums
+
+static public long[] prefixSum(long[] a){
+	long[] z = new long[a.length];
+	long s = 0;
+	long ovf = 0;
+	for(int i = 0; i < a.length; i++)
+		{
+		long x = a[i];
+		long r = s + x;
+		ovf |= (s ^ r) & (x ^ r);
+		z[i] = s = r;
+		}
+	if(ovf < 0)
+		Numbers.throwIntOverflow();
+	return z;
+}
+
+static public double[] prefixSum(double[] a){
+	double[] z = new double[a.length];
+	double s = 0;
+	for(int i = 0; i < a.length; i++)
+		z[i] = s += a[i];
+	return z;
+}
+
+static public int[] prefixSum(int[] a){
+	int[] z = new int[a.length];
+	long s = 0;
+	long ovf = 0;
+	for(int i = 0; i < a.length; i++)
+		{
+		s += a[i];
+		ovf |= s ^ (int) s;
+		z[i] = (int) s;
+		}
+	if(ovf != 0)
+		Numbers.throwIntOverflow();
+	return z;
+}
+
+static public Object prefixSum(Object a){
+	if(a instanceof long[])
+		return prefixSum((long[]) a);
+	if(a instanceof double[])
+		return prefixSum((double[]) a);
+	if(a instanceof int[])
+		return prefixSum((int[]) a);
+	throw notNumeric(a);
+}
+
+//histograms, counts of the values in bins equal parts of [lo, hi], hi counting in the last bin
+
+static double checkBins(int bins, double lo, double hi){
+	if(bins <= 0)
+		throw new IllegalArgumentException("Number of bins must be positive: " + bins);
+	if(!(lo < hi))
+		throw new IllegalArgumentException("Empty range: " + lo + " to " + hi);
+	return bins / (hi - lo);
+}
+
+static public long[] histogram(double[] a, int bins, double lo, double hi){
+	double scale = checkBins(bins, lo, hi);
+	long[] counts = new long[bins];
+	for(int i = 0; i < a.length; i++)
+		{
+		double x = a[i];
+		//false for NaN
+		if(x >= lo && x <= hi)
+			counts[Math.min((int) ((x - lo) * scale), bins - 1)]++;
+		}
+	return counts;
+}
+
+static public long[] histogram(long[] a, int bins, double lo, double hi){
+	double scale = checkBins(bins, lo, hi);
+	long[] counts = new long[bins];
+	for(int i = 0; i < a.length; i++)
+		{
+		double x = a[i];
+		if(x >= lo && x <= hi)
+			counts[Math.min((int) ((x - lo) * scale), bins - 1)]++;
+		}
+	return counts;
+}
+
+static public long[] histogram(int[] a, int bins, double lo, double hi){
+	double scale = checkBins(bins, lo, hi);
+	long[] counts = new long[bins];
+	for(int i = 0; i < a.length; i++)
+		{
+		double x = a[i];
+		if(x >= lo && x <= hi)
+			counts[Math.min((int) ((x - lo) * scale), bins - 1)]++;
+		}
+	return counts;
+}
+
+static public long[] histogram(Object a, Object bins, Object lo, Object hi){
+	int n = RT.intCast(bins);
+	double l = RT.doubleCast(lo);
+	double h = RT.doubleCast(hi);
+	if(a instanceof long[])
+		return histogram((long[]) a, n, l, h);
+	if(a instanceof double[])
+		return histogram((double[]) a, n, l, h);
+	if(a instanceof int[])
+		return histogram((int[]) a, n, l, h);
+	throw notNumeric(a);
+}
+
+//sort, a sorted copy
+
+static public Object sort(Object a){
+	if(a instanceof long[])
+		{
+		long[] z = ((long[]) a).clone();
+		Arrays.sort(z);
+		return z;
+		}
+	if(a instanceof double[])
+		{
+		double[] z = ((double[]) a).clone();
+		Arrays.sort(z);
+		return z;
+		}
+	if(a instanceof int[])
+		{
+		int[] z = ((int[]) a).clone();
+		Arrays.sort(z);
+		return z;
+		}
+	throw notNumeric(a);
+}
+}
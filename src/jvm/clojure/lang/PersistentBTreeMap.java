@@ -0,0 +1,728 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Persistent B+tree sorted map, the wide alternative to PersistentTreeMap.
+ * Entries are held in leaves of up to MAX keys and vals in parallel arrays,
+ * under branches of up to MAX children that keep the max key and cumulative
+ * count of each child. A lookup reads a few wide arrays rather than a node per
+ * entry, and nth, rank and seqs from a key or index are O(log n).
+ *
+ * Changes copy the path to the entry, splitting a node that outgrows MAX in two
+ * and merging one that shrinks below MIN with a neighbour, so every node but
+ * the root holds MIN to MAX keys or children, and all leaves are at the same
+ * depth.
+ */
+public class PersistentBTreeMap extends APersistentMap implements IObj, Reversible, Sorted, Indexed, IMapIterable{
+
+static final int MAX = 32;
+static final int MIN = MAX / 2;
+
+public final Comparator comp;
+final Node root; //null when empty
+final IPersistentMap _meta;
+
+final static public PersistentBTreeMap EMPTY = new PersistentBTreeMap(null, RT.DEFAULT_COMPARATOR, null);
+
+PersistentBTreeMap(IPersistentMap meta, Comparator comp, Node root){
+	this._meta = meta;
+	this.comp = comp;
+	this.root = root;
+}
+
+public PersistentBTreeMap(IPersistentMap meta, Comparator comp){
+	this(meta, comp, null);
+}
+
+static public PersistentBTreeMap create(Map other){
+	Object[] kvs = new Object[2 * other.size()];
+	int i = 0;
+	for(Object o : other.entrySet())
+		{
+		Map.Entry e = (Map.Entry) o;
+		kvs[i++] = e.getKey();
+		kvs[i++] = e.getValue();
+		}
+	return create(RT.DEFAULT_COMPARATOR, kvs, 2);
+}
+
+static public PersistentBTreeMap create(ISeq items){
+	return create(RT.DEFAULT_COMPARATOR, items);
+}
+
+static public PersistentBTreeMap create(Comparator comp, ISeq items){
+	Object[] kvs = RT.seqToArray(items);
+	if(kvs.length % 2 == 1)
+		throw new IllegalArgumentException(String.format("No value supplied for key: %s", kvs[kvs.length - 1]));
+	return create(comp, kvs, 2);
+}
+
+/**
+ * A map of every step'th item of items to the item step - 1 after it, so the
+ * keys and vals in turn for step 2 and each key to itself for step 1. Keys not
+ * already ascending are stably sorted, and of equal keys the first is kept with
+ * the last val for step 2 and the first val for step 1, as repeated assoc and
+ * set conj do. The tree is then built bottom up in O(n).
+ */
+static PersistentBTreeMap create(final Comparator comp, Object[] items, int step){
+	int n = items.length / step;
+	final Object[] keys = new Object[n];
+	Object[] vals = new Object[n];
+	for(int i = 0; i < n; i++)
+		{
+		keys[i] = items[i * step];
+		vals[i] = items[i * step + step - 1];
+		}
+	for(int i = 1; i < n; i++)
+		{
+		if(comp.compare(keys[i - 1], keys[i]) >= 0)
+			{
+			Integer[] order = new Integer[n];
+			for(int j = 0; j < n; j++)
+				order[j] = j;
+			Arrays.sort(order, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					return comp.compare(keys[a], keys[b]);
+				}
+			});
+			Object[] k = new Object[n];
+			Object[] v = new Object[n];
+			int m = 0;
+			for(int j = 0; j < n; j++)
+				{
+				int o = order[j];
+				if(m > 0 && comp.compare(k[m - 1], keys[o]) == 0)
+					{
+					if(step == 2)
+						v[m - 1] = vals[o];
+					}
+				else
+					{
+					k[m] = keys[o];
+					v[m] = vals[o];
+					m++;
+					}
+				}
+			return new PersistentBTreeMap(null, comp, build(k, v, m));
+			}
+		}
+	return new PersistentBTreeMap(null, comp, build(keys, vals, n));
+}
+
+//leaves, then each level of branches, of widths as even as can be
+static Node build(Object[] keys, Object[] vals, int n){
+	if(n == 0)
+		return null;
+	int w = (n + MAX - 1) / MAX;
+	Node[] level = new Node[w];
+	for(int i = 0, from = 0; i < w; i++)
+		{
+		int to = (int) ((long) n * (i + 1) / w);
+		level[i] = new Leaf(Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(vals, from, to));
+		from = to;
+		}
+	while(level.length > 1)
+		{
+		int m = level.length;
+		w = (m + MAX - 1) / MAX;
+		Node[] up = new Node[w];
+		for(int i = 0, from = 0; i < w; i++)
+			{
+			int to = m * (i + 1) / w;
+			up[i] = new Branch(Arrays.copyOfRange(level, from, to));
+			from = to;
+			}
+		level = up;
+		}
+	return level[0];
+}
+
+//the index of key in keys, else -(the index it would be added at) - 1
+static int search(Comparator comp, Object[] keys, Object key){
+	int lo = 0;
+	int hi = keys.length - 1;
+	while(lo <= hi)
+		{
+		int mid = (lo + hi) >>> 1;
+		int c = comp.compare(key, keys[mid]);
+		if(c > 0)
+			lo = mid + 1;
+		else if(c < 0)
+			hi = mid - 1;
+		else
+			return mid;
+		}
+	return -(lo + 1);
+}
+
+public PersistentBTreeMap withMeta(IPersistentMap meta){
+	return new PersistentBTreeMap(meta, comp, root);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+
+public Comparator comparator(){
+	return comp;
+}
+
+public Object entryKey(Object entry){
+	return ((IMapEntry) entry).key();
+}
+
+public int count(){
+	return root == null ? 0 : root.count();
+}
+
+public IPersistentCollection empty(){
+	return new PersistentBTreeMap(meta(), comp, null);
+}
+
+//the leaf that would hold key, null if key is past the last
+Leaf leafFor(Object key){
+	Node t = root;
+	while(t instanceof Branch)
+		{
+		Branch b = (Branch) t;
+		int i = search(comp, b.keys, key);
+		if(i < 0)
+			{
+			i = -i - 1;
+			if(i == b.kids.length)
+				return null;
+			}
+		t = b.kids[i];
+		}
+	return (Leaf) t;
+}
+
+public Object valAt(Object key, Object notFound){
+	Leaf l = leafFor(key);
+	if(l == null)
+		return notFound;
+	int i = search(comp, l.keys, key);
+	return i >= 0 ? l.vals[i] : notFound;
+}
+
+public Object valAt(Object key){
+	return valAt(key, null);
+}
+
+public boolean containsKey(Object key){
+	return valAt(key, this) != this;
+}
+
+public IMapEntry entryAt(Object key){
+	Leaf l = leafFor(key);
+	if(l == null)
+		return null;
+	int i = search(comp, l.keys, key);
+	return i >= 0 ? new MapEntry(l.keys[i], l.vals[i]) : null;
+}
+
+public PersistentBTreeMap assoc(Object key, Object val){
+	return assoc(key, val, true);
+}
+
+//replace false keeps the val of a key already present, for sets
+PersistentBTreeMap assoc(Object key, Object val, boolean replace){
+	Node t = root == null ? new Leaf(new Object[]{key}, new Object[]{val})
+	                      : root.assoc(comp, key, val, replace);
+	if(t == root)
+		return this;
+	if(t.width() > MAX)
+		t = new Branch(t.split());
+	return new PersistentBTreeMap(_meta, comp, t);
+}
+
+public PersistentBTreeMap assocEx(Object key, Object val){
+	if(containsKey(key))
+		throw Util.runtimeException("Key already present");
+	return assoc(key, val);
+}
+
+public PersistentBTreeMap without(Object key){
+	if(root == null)
+		return this;
+	Node t = root.without(comp, key);
+	if(t == root)
+		return this;
+	if(t.width() == 0)
+		t = null;
+	else if(t instanceof Branch && t.width() == 1)
+		t = ((Branch) t).kids[0];
+	return new PersistentBTreeMap(_meta, comp, t);
+}
+
+/**
+ * The index of key in the map, else -(the index it would be added at) - 1, as
+ * Arrays.binarySearch.
+ */
+public int rank(Object key){
+	Node t = root;
+	int base = 0;
+	while(t instanceof Branch)
+		{
+		Branch b = (Branch) t;
+		int i = search(comp, b.keys, key);
+		if(i < 0)
+			{
+			i = -i - 1;
+			if(i == b.kids.length)
+				return -(base + b.count()) - 1;
+			}
+		if(i > 0)
+			base += b.counts[i - 1];
+		t = b.kids[i];
+		}
+	if(t == null)
+		return -1;
+	int i = search(comp, ((Leaf) t).keys, key);
+	return i >= 0 ? base + i : i - base;
+}
+
+public Object nth(int i){
+	if(i < 0 || i >= count())
+		throw new IndexOutOfBoundsException();
+	Seq s = Seq.create(root, i, true);
+	return s.first();
+}
+
+public Object nth(int i, Object notFound){
+	if(i < 0 || i >= count())
+		return notFound;
+	return nth(i);
+}
+
+public ISeq seq(){
+	return seq(true);
+}
+
+public ISeq rseq(){
+	return seq(false);
+}
+
+public ISeq seq(boolean ascending){
+	int n = count();
+	if(n == 0)
+		return null;
+	return Seq.create(root, ascending ? 0 : n - 1, ascending);
+}
+
+public ISeq seqFrom(Object key, boolean ascending){
+	int r = rank(key);
+	int i = r >= 0 ? r : ascending ? -r - 1 : -r - 2;
+	if(i < 0 || i >= count())
+		return null;
+	return Seq.create(root, i, ascending);
+}
+
+public Iterator iterator(){
+	return new NodeIterator(root, NodeIterator.ENTRIES);
+}
+
+public Iterator keyIterator(){
+	return new NodeIterator(root, NodeIterator.KEYS);
+}
+
+public Iterator valIterator(){
+	return new NodeIterator(root, NodeIterator.VALS);
+}
+
+public Object kvreduce(IFn f, Object init){
+	if(root != null)
+		init = root.kvreduce(f, init);
+	if(RT.isReduced(init))
+		init = ((IDeref) init).deref();
+	return init;
+}
+
+public Object fold(final long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	Callable top = new Callable(){
+		public Object call() throws Exception{
+			return fold(root, n, combinef, reducef, fjtask, fjfork, fjjoin);
+		}
+	};
+	return fjinvoke.invoke(top);
+}
+
+//subtrees of more than n entries are split among their children
+static Object fold(Node t, final long n, final IFn combinef, final IFn reducef,
+                   final IFn fjtask, final IFn fjfork, final IFn fjjoin){
+	if(t == null)
+		return combinef.invoke();
+	if(t.count() <= n || t instanceof Leaf)
+		{
+		Object ret = t.kvreduce(reducef, combinef.invoke());
+		if(RT.isReduced(ret))
+			ret = ((IDeref) ret).deref();
+		return ret;
+		}
+	List<Callable> tasks = new ArrayList<Callable>();
+	for(final Node kid : ((Branch) t).kids)
+		{
+		tasks.add(new Callable(){
+			public Object call() throws Exception{
+				return fold(kid, n, combinef, reducef, fjtask, fjfork, fjjoin);
+			}
+		});
+		}
+	return PersistentHashMap.ArrayNode.foldTasks(tasks, combinef, fjtask, fjfork, fjjoin);
+}
+
+static abstract class Node implements Serializable{
+	//entries below
+	abstract int count();
+
+	//keys or children
+	abstract int width();
+
+	abstract Object maxKey();
+
+	abstract Node slice(int from, int to);
+
+	//a node of the same kind and height
+	abstract Node concat(Node right);
+
+	//this if unchanged, and may be wider than MAX
+	abstract Node assoc(Comparator comp, Object key, Object val, boolean replace);
+
+	//this if key is absent, and may be narrower than MIN
+	abstract Node without(Comparator comp, Object key);
+
+	//a Reduced result is returned as is
+	abstract Object kvreduce(IFn f, Object init);
+
+	Node[] split(){
+		int half = width() / 2;
+		return new Node[]{slice(0, half), slice(half, width())};
+	}
+}
+
+static final class Leaf extends Node{
+	final Object[] keys;
+	final Object[] vals;
+
+	Leaf(Object[] keys, Object[] vals){
+		this.keys = keys;
+		this.vals = vals;
+	}
+
+	int count(){
+		return keys.length;
+	}
+
+	int width(){
+		return keys.length;
+	}
+
+	Object maxKey(){
+		return keys[keys.length - 1];
+	}
+
+	Node slice(int from, int to){
+		return new Leaf(Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(vals, from, to));
+	}
+
+	Node concat(Node right){
+		Leaf r = (Leaf) right;
+		return new Leaf(concat(keys, r.keys), concat(vals, r.vals));
+	}
+
+	static Object[] concat(Object[] a, Object[] b){
+		Object[] ret = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, ret, a.length, b.length);
+		return ret;
+	}
+
+	Node assoc(Comparator comp, Object key, Object val, boolean replace){
+		int i = search(comp, keys, key);
+		if(i >= 0)
+			{
+			if(!replace || vals[i] == val)
+				return this;
+			Object[] newVals = vals.clone();
+			newVals[i] = val;
+			return new Leaf(keys, newVals);
+			}
+		i = -i - 1;
+		return new Leaf(insert(keys, i, key), insert(vals, i, val));
+	}
+
+	static Object[] insert(Object[] a, int i, Object x){
+		Object[] ret = new Object[a.length + 1];
+		System.arraycopy(a, 0, ret, 0, i);
+		ret[i] = x;
+		System.arraycopy(a, i, ret, i + 1, a.length - i);
+		return ret;
+	}
+
+	Node without(Comparator comp, Object key){
+		int i = search(comp, keys, key);
+		if(i < 0)
+			return this;
+		return new Leaf(remove(keys, i), remove(vals, i));
+	}
+
+	static Object[] remove(Object[] a, int i){
+		Object[] ret = new Object[a.length - 1];
+		System.arraycopy(a, 0, ret, 0, i);
+		System.arraycopy(a, i + 1, ret, i, ret.length - i);
+		return ret;
+	}
+
+	Object kvreduce(IFn f, Object init){
+		for(int i = 0; i < keys.length; i++)
+			{
+			init = f.invoke(init, keys[i], vals[i]);
+			if(RT.isReduced(init))
+				return init;
+			}
+		return init;
+	}
+}
+
+static final class Branch extends Node{
+	final Node[] kids;
+	//the max key, and the count of entries up to and including, of each kid
+	final Object[] keys;
+	final int[] counts;
+
+	Branch(Node[] kids){
+		this.kids = kids;
+		this.keys = new Object[kids.length];
+		this.counts = new int[kids.length];
+		int c = 0;
+		for(int i = 0; i < kids.length; i++)
+			{
+			c += kids[i].count();
+			counts[i] = c;
+			keys[i] = kids[i].maxKey();
+			}
+	}
+
+	int count(){
+		return counts[counts.length - 1];
+	}
+
+	int width(){
+		return kids.length;
+	}
+
+	Object maxKey(){
+		return keys[keys.length - 1];
+	}
+
+	//the kid holding the entry at index
+	int kidAt(int index){
+		int lo = 0;
+		int hi = counts.length - 1;
+		while(lo < hi)
+			{
+			int mid = (lo + hi) >>> 1;
+			if(counts[mid] > index)
+				hi = mid;
+			else
+				lo = mid + 1;
+			}
+		return lo;
+	}
+
+	Node slice(int from, int to){
+		return new Branch(Arrays.copyOfRange(kids, from, to));
+	}
+
+	Node concat(Node right){
+		Node[] r = ((Branch) right).kids;
+		Node[] ret = Arrays.copyOf(kids, kids.length + r.length);
+		System.arraycopy(r, 0, ret, kids.length, r.length);
+		return new Branch(ret);
+	}
+
+	Node assoc(Comparator comp, Object key, Object val, boolean replace){
+		int i = search(comp, keys, key);
+		if(i < 0)
+			i = Math.min(-i - 1, kids.length - 1);
+		Node kid = kids[i].assoc(comp, key, val, replace);
+		if(kid == kids[i])
+			return this;
+		if(kid.width() <= MAX)
+			{
+			Node[] newKids = kids.clone();
+			newKids[i] = kid;
+			return new Branch(newKids);
+			}
+		return new Branch(replace(i, 1, kid.split()));
+	}
+
+	//the kids with the n from i replaced by with
+	Node[] replace(int i, int n, Node[] with){
+		Node[] ret = new Node[kids.length - n + with.length];
+		System.arraycopy(kids, 0, ret, 0, i);
+		System.arraycopy(with, 0, ret, i, with.length);
+		System.arraycopy(kids, i + n, ret, i + with.length, kids.length - i - n);
+		return ret;
+	}
+
+	Node without(Comparator comp, Object key){
+		int i = search(comp, keys, key);
+		if(i < 0)
+			{
+			i = -i - 1;
+			if(i == kids.length)
+				return this;
+			}
+		Node kid = kids[i].without(comp, key);
+		if(kid == kids[i])
+			return this;
+		if(kid.width() >= MIN || kids.length == 1)
+			{
+			Node[] newKids = kids.clone();
+			newKids[i] = kid;
+			return new Branch(newKids);
+			}
+		//merge with a neighbour, splitting again if too wide
+		int left = i > 0 ? i - 1 : i;
+		Node merged = left < i ? kids[left].concat(kid) : kid.concat(kids[i + 1]);
+		if(merged.width() > MAX)
+			return new Branch(replace(left, 2, merged.split()));
+		return new Branch(replace(left, 2, new Node[]{merged}));
+	}
+
+	Object kvreduce(IFn f, Object init){
+		for(int i = 0; i < kids.length; i++)
+			{
+			init = kids[i].kvreduce(f, init);
+			if(RT.isReduced(init))
+				return init;
+			}
+		return init;
+	}
+}
+
+/**
+ * The entries from an index, ascending or descending. Each step within a leaf
+ * is a new Seq on the same leaf, and the next leaf is found from the root by
+ * index.
+ */
+static public class Seq extends ASeq implements Counted{
+	final Node root;
+	final Leaf leaf;
+	//index of the first entry of leaf, and of this entry in leaf
+	final int base;
+	final int i;
+	final boolean asc;
+
+	Seq(IPersistentMap meta, Node root, Leaf leaf, int base, int i, boolean asc){
+		super(meta);
+		this.root = root;
+		this.leaf = leaf;
+		this.base = base;
+		this.i = i;
+		this.asc = asc;
+	}
+
+	static Seq create(Node root, int index, boolean asc){
+		Node t = root;
+		int i = index;
+		while(t instanceof Branch)
+			{
+			Branch b = (Branch) t;
+			int k = b.kidAt(i);
+			if(k > 0)
+				i -= b.counts[k - 1];
+			t = b.kids[k];
+			}
+		return new Seq(null, root, (Leaf) t, index - i, i, asc);
+	}
+
+	public Object first(){
+		return new MapEntry(leaf.keys[i], leaf.vals[i]);
+	}
+
+	public ISeq next(){
+		if(asc)
+			{
+			if(i + 1 < leaf.keys.length)
+				return new Seq(null, root, leaf, base, i + 1, true);
+			int n = base + leaf.keys.length;
+			return n < root.count() ? create(root, n, true) : null;
+			}
+		if(i > 0)
+			return new Seq(null, root, leaf, base, i - 1, false);
+		return base > 0 ? create(root, base - 1, false) : null;
+	}
+
+	public int count(){
+		return asc ? root.count() - base - i : base + i + 1;
+	}
+
+	public Seq withMeta(IPersistentMap meta){
+		return new Seq(meta, root, leaf, base, i, asc);
+	}
+}
+
+static class NodeIterator implements Iterator{
+	static final int ENTRIES = 0;
+	static final int KEYS = 1;
+	static final int VALS = 2;
+
+	final Node root;
+	final int kind;
+	final int count;
+	Leaf leaf;
+	//index of the next entry, and of it in leaf
+	int index = 0;
+	int i = 0;
+
+	NodeIterator(Node root, int kind){
+		this.root = root;
+		this.kind = kind;
+		this.count = root == null ? 0 : root.count();
+	}
+
+	public boolean hasNext(){
+		return index < count;
+	}
+
+	public Object next(){
+		if(index >= count)
+			throw new NoSuchElementException();
+		if(leaf == null || i == leaf.keys.length)
+			{
+			Seq s = Seq.create(root, index, true);
+			leaf = s.leaf;
+			i = s.i;
+			}
+		index++;
+		int j = i++;
+		switch(kind)
+			{
+			case KEYS:
+				return leaf.keys[j];
+			case VALS:
+				return leaf.vals[j];
+			}
+		return new MapEntry(leaf.keys[j], leaf.vals[j]);
+	}
+
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+}
+}
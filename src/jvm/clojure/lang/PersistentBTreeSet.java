@@ -0,0 +1,108 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.util.Comparator;
+
+/**
+ * Sorted set on a PersistentBTreeMap of each element to itself.
+ */
+public class PersistentBTreeSet extends APersistentSet implements IObj, Reversible, Sorted, Indexed{
+static public final PersistentBTreeSet EMPTY = new PersistentBTreeSet(null, PersistentBTreeMap.EMPTY);
+final IPersistentMap _meta;
+
+static public PersistentBTreeSet create(ISeq items){
+	return create(RT.DEFAULT_COMPARATOR, items);
+}
+
+static public PersistentBTreeSet create(Comparator comp, ISeq items){
+	return new PersistentBTreeSet(null, PersistentBTreeMap.create(comp, RT.seqToArray(items), 1));
+}
+
+PersistentBTreeSet(IPersistentMap meta, IPersistentMap impl){
+	super(impl);
+	this._meta = meta;
+}
+
+public IPersistentSet disjoin(Object key){
+	IPersistentMap m = impl.without(key);
+	if(m == impl)
+		return this;
+	return new PersistentBTreeSet(meta(), m);
+}
+
+public IPersistentSet cons(Object o){
+	IPersistentMap m = ((PersistentBTreeMap) impl).assoc(o, o, false);
+	if(m == impl)
+		return this;
+	return new PersistentBTreeSet(meta(), m);
+}
+
+public IPersistentCollection empty(){
+	return new PersistentBTreeSet(meta(), (PersistentBTreeMap) impl.empty());
+}
+
+public ISeq rseq(){
+	return APersistentMap.KeySeq.create(((Reversible) impl).rseq());
+}
+
+public PersistentBTreeSet withMeta(IPersistentMap meta){
+	return new PersistentBTreeSet(meta, impl);
+}
+
+public Comparator comparator(){
+	return ((Sorted) impl).comparator();
+}
+
+public Object entryKey(Object entry){
+	return entry;
+}
+
+public ISeq seq(boolean ascending){
+	PersistentBTreeMap m = (PersistentBTreeMap) impl;
+	return RT.keys(m.seq(ascending));
+}
+
+public ISeq seqFrom(Object key, boolean ascending){
+	PersistentBTreeMap m = (PersistentBTreeMap) impl;
+	return RT.keys(m.seqFrom(key, ascending));
+}
+
+public Object nth(int i){
+	return ((IMapEntry) ((PersistentBTreeMap) impl).nth(i)).key();
+}
+
+public Object nth(int i, Object notFound){
+	if(i < 0 || i >= count())
+		return notFound;
+	return nth(i);
+}
+
+/**
+ * The index of key in the set, else -(the index it would be added at) - 1.
+ */
+public int rank(Object key){
+	return ((PersistentBTreeMap) impl).rank(key);
+}
+
+public Object fold(long n, final IFn combinef, final IFn reducef,
+                   IFn fjinvoke, IFn fjtask, IFn fjfork, IFn fjjoin){
+	return ((PersistentBTreeMap) impl).fold(n, combinef, new AFn(){
+		public Object invoke(Object ret, Object k, Object v){
+			return reducef.invoke(ret, k);
+		}
+	}, fjinvoke, fjtask, fjfork, fjjoin);
+}
+
+public IPersistentMap meta(){
+	return _meta;
+}
+}
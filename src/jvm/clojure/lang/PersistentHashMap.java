@@ -13,6 +13,9 @@ package clojure.lang;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicReference;
 
 /*
@@ -120,6 +123,596 @@ static int hash(Object k){
 	return Util.hasheq(k);
 }
 
+public boolean equiv(Object obj){
+	if(obj instanceof PersistentHashMap)
+		{
+		PersistentHashMap m = (PersistentHashMap) obj;
+		if(m == this)
+			return true;
+		if(m.count != count || m.hasNull != hasNull)
+			return false;
+		if(hasNull && !Util.equiv(nullValue, m.nullValue))
+			return false;
+		//equal counts, so a null root means the other has no entries, though removals can leave it a node
+		return root == m.root || root == null || m.root == null || nodeEquiv(0, root, m.root);
+		}
+	return super.equiv(obj);
+}
+
+/**
+ * Whether each entry of a is in b, the node at the same place in a map of
+ * the same count. Subtrees the maps share are skipped, and nodes of the same
+ * shape are compared slot by slot, anything else is found in b.
+ */
+static boolean nodeEquiv(int shift, INode a, INode b){
+	if(a == b)
+		return true;
+	if(a instanceof ArrayNode && b instanceof ArrayNode)
+		{
+		INode[] aa = ((ArrayNode) a).array;
+		INode[] ba = ((ArrayNode) b).array;
+		for(int i = 0; i < aa.length; i++)
+			{
+			//removals can leave empty nodes
+			if(aa[i] != null && (ba[i] == null ? aa[i].nodeSeq() != null : !nodeEquiv(shift + 5, aa[i], ba[i])))
+				return false;
+			}
+		return true;
+		}
+	if(a instanceof BitmapIndexedNode && b instanceof BitmapIndexedNode
+	   && ((BitmapIndexedNode) a).bitmap == ((BitmapIndexedNode) b).bitmap)
+		{
+		Object[] aa = ((BitmapIndexedNode) a).array;
+		Object[] ba = ((BitmapIndexedNode) b).array;
+		int n = 2 * Integer.bitCount(((BitmapIndexedNode) a).bitmap);
+		for(int i = 0; i < n; i += 2)
+			{
+			Object ka = aa[i];
+			Object kb = ba[i];
+			if(ka == null && kb == null)
+				{
+				if(!nodeEquiv(shift + 5, (INode) aa[i + 1], (INode) ba[i + 1]))
+					return false;
+				}
+			else if(ka != null && kb != null)
+				{
+				if(!Util.equiv(ka, kb) || !Util.equiv(aa[i + 1], ba[i + 1]))
+					return false;
+				}
+			else if(ka != null)
+				{
+				Object v = b.find(shift, hash(ka), ka, NOT_FOUND);
+				if(v == NOT_FOUND || !Util.equiv(aa[i + 1], v))
+					return false;
+				}
+			else if(!entriesIn((INode) aa[i + 1], shift, b))
+				return false;
+			}
+		return true;
+		}
+	return entriesIn(a, shift, b);
+}
+
+static boolean entriesIn(INode a, int shift, INode b){
+	for(ISeq s = a.nodeSeq(); s != null; s = s.next())
+		{
+		IMapEntry e = (IMapEntry) s.first();
+		Object v = b.find(shift, hash(e.key()), e.key(), NOT_FOUND);
+		if(v == NOT_FOUND || !Util.equiv(e.val(), v))
+			return false;
+		}
+	return true;
+}
+
+/**
+ * The keys of the entries in only one of a and b, or whose values are not
+ * equiv, for clojure.data/diff. Subtrees the maps share are skipped, so the
+ * time taken is proportional to the change from one to the other.
+ */
+static public IPersistentVector diffKeys(PersistentHashMap a, PersistentHashMap b){
+	ArrayList ret = new ArrayList();
+	if(a.hasNull != b.hasNull || (a.hasNull && !Util.equiv(a.nullValue, b.nullValue)))
+		ret.add(null);
+	diffNodes(0, a.root, b.root, ret);
+	return LazilyPersistentVector.create(ret);
+}
+
+static void diffNodes(int shift, INode a, INode b, List ret){
+	if(a == b)
+		return;
+	if(a instanceof ArrayNode && b instanceof ArrayNode)
+		{
+		INode[] aa = ((ArrayNode) a).array;
+		INode[] ba = ((ArrayNode) b).array;
+		for(int i = 0; i < aa.length; i++)
+			diffNodes(shift + 5, aa[i], ba[i], ret);
+		}
+	else if(a instanceof BitmapIndexedNode && b instanceof BitmapIndexedNode)
+		{
+		BitmapIndexedNode x = (BitmapIndexedNode) a;
+		BitmapIndexedNode y = (BitmapIndexedNode) b;
+		for(int bits = x.bitmap | y.bitmap; bits != 0; bits &= bits - 1)
+			{
+			int bit = bits & -bits;
+			Object ka = null, va = null, kb = null, vb = null;
+			if((x.bitmap & bit) != 0)
+				{
+				ka = x.array[2 * x.index(bit)];
+				va = x.array[2 * x.index(bit) + 1];
+				}
+			if((y.bitmap & bit) != 0)
+				{
+				kb = y.array[2 * y.index(bit)];
+				vb = y.array[2 * y.index(bit) + 1];
+				}
+			if(ka != null && kb != null && Util.equiv(ka, kb))
+				{
+				if(!Util.equiv(va, vb))
+					ret.add(ka);
+				}
+			else if(ka != null && kb != null && hash(ka) == hash(kb))
+				{
+				//colliding keys would share a slot at every level
+				ret.add(ka);
+				ret.add(kb);
+				}
+			else
+				diffNodes(shift + 5, slotNode(shift + 5, ka, va), slotNode(shift + 5, kb, vb), ret);
+			}
+		}
+	else
+		{
+		//different kinds of node, compare the entries
+		if(a != null)
+			for(ISeq s = a.nodeSeq(); s != null; s = s.next())
+				{
+				IMapEntry e = (IMapEntry) s.first();
+				Object v = b == null ? NOT_FOUND : b.find(shift, hash(e.key()), e.key(), NOT_FOUND);
+				if(v == NOT_FOUND || !Util.equiv(e.val(), v))
+					ret.add(e.key());
+				}
+		if(b != null)
+			for(ISeq s = b.nodeSeq(); s != null; s = s.next())
+				{
+				IMapEntry e = (IMapEntry) s.first();
+				if(a == null || a.find(shift, hash(e.key()), e.key(), NOT_FOUND) == NOT_FOUND)
+					ret.add(e.key());
+				}
+		}
+}
+
+//the contents of a bitmap node slot as a node at the next level, null for an empty slot
+static INode slotNode(int shift, Object key, Object valOrNode){
+	if(key == null)
+		return (INode) valOrNode;
+	return new BitmapIndexedNode(null, bitpos(hash(key), shift), new Object[]{key, valOrNode});
+}
+
+static final int UNION = 0;
+static final int INTERSECTION = 1;
+static final int DIFFERENCE = 2;
+//a difference counting the entries removed, cheaper when b is smaller than a
+static final int MINUS = 3;
+
+//an input smaller than the other by this factor is gone through entry by entry, on a transient
+static final int SMALL_RATIO = 64;
+
+//inputs both at least this big with array node roots are merged a root slot per task
+static final int PARALLEL_MIN = 1 << 16;
+
+//fork/join is in java.util.concurrent from Java 7, before that merges run on the calling thread
+static final boolean FORK_JOIN = hasForkJoin();
+
+static boolean hasForkJoin(){
+	try
+		{
+		Class.forName("java.util.concurrent.ForkJoinPool");
+		return true;
+		}
+	catch(ClassNotFoundException e)
+		{
+		return false;
+		}
+}
+
+/**
+ * The entries of a, and those of b whose keys are not in a. The tries are
+ * merged node by node, subtrees the maps share or only one of them has are
+ * used as they are, so the time taken is proportional to the part of b that
+ * is not in a. Returns a itself when nothing is added.
+ */
+static public PersistentHashMap union(PersistentHashMap a, PersistentHashMap b){
+	if(b.count < a.count / SMALL_RATIO)
+		{
+		ITransientMap t = null;
+		for(Iterator it = b.iterator(); it.hasNext();)
+			{
+			Map.Entry e = (Map.Entry) it.next();
+			if(!a.containsKey(e.getKey()))
+				t = (t == null ? a.asTransient() : t).assoc(e.getKey(), e.getValue());
+			}
+		return t == null ? a : ((PersistentHashMap) t.persistent()).withMeta(a.meta());
+		}
+	int[] added = new int[1];
+	INode root = merge(UNION, a.root, b.root, added, Math.min(a.count, b.count) >= PARALLEL_MIN);
+	if(root == a.root && (a.hasNull || !b.hasNull))
+		return a;
+	return new PersistentHashMap(a.meta(), a.count + added[0] + (b.hasNull && !a.hasNull ? 1 : 0), root,
+	                             a.hasNull || b.hasNull, a.hasNull ? a.nullValue : b.nullValue);
+}
+
+/**
+ * The entries of a whose keys are in b, merged as by union. Returns a itself
+ * when nothing is removed.
+ */
+static public PersistentHashMap intersection(PersistentHashMap a, PersistentHashMap b){
+	if(b.count < a.count / SMALL_RATIO)
+		{
+		ITransientMap t = EMPTY.asTransient();
+		for(Iterator it = b.keyIterator(); it.hasNext();)
+			{
+			IMapEntry e = a.entryAt(it.next());
+			if(e != null)
+				t = t.assoc(e.key(), e.val());
+			}
+		return ((PersistentHashMap) t.persistent()).withMeta(a.meta());
+		}
+	if(a.count < b.count / SMALL_RATIO)
+		return retain(a, b, true);
+	int[] removed = new int[1];
+	INode root = merge(INTERSECTION, a.root, b.root, removed, Math.min(a.count, b.count) >= PARALLEL_MIN);
+	boolean hasNull = a.hasNull && b.hasNull;
+	if(root == a.root && hasNull == a.hasNull)
+		return a;
+	return new PersistentHashMap(a.meta(), a.count - (a.hasNull ? 1 : 0) - removed[0] + (hasNull ? 1 : 0), root,
+	                             hasNull, hasNull ? a.nullValue : null);
+}
+
+/**
+ * The entries of a whose keys are not in b, merged as by union. Returns a
+ * itself when nothing is removed.
+ */
+static public PersistentHashMap difference(PersistentHashMap a, PersistentHashMap b){
+	if(b.count < a.count / SMALL_RATIO)
+		{
+		ITransientMap t = null;
+		for(Iterator it = b.keyIterator(); it.hasNext();)
+			{
+			Object k = it.next();
+			if(a.containsKey(k))
+				t = (t == null ? a.asTransient() : t).without(k);
+			}
+		return t == null ? a : ((PersistentHashMap) t.persistent()).withMeta(a.meta());
+		}
+	if(a.count < b.count / SMALL_RATIO)
+		return retain(a, b, false);
+	boolean minus = b.count < a.count / 2;
+	int[] n = new int[1];
+	INode root = merge(minus ? MINUS : DIFFERENCE, a.root, b.root, n, Math.min(a.count, b.count) >= PARALLEL_MIN);
+	boolean hasNull = a.hasNull && !b.hasNull;
+	if(root == a.root && hasNull == a.hasNull)
+		return a;
+	int count = minus ? a.count - (a.hasNull ? 1 : 0) - n[0] : n[0];
+	return new PersistentHashMap(a.meta(), count + (hasNull ? 1 : 0), root, hasNull, hasNull ? a.nullValue : null);
+}
+
+//the entries of a whose keys are in b or not
+static PersistentHashMap retain(PersistentHashMap a, PersistentHashMap b, boolean in){
+	ITransientMap t = null;
+	for(Iterator it = a.keyIterator(); it.hasNext();)
+		{
+		Object k = it.next();
+		if(b.containsKey(k) != in)
+			t = (t == null ? a.asTransient() : t).without(k);
+		}
+	return t == null ? a : ((PersistentHashMap) t.persistent()).withMeta(a.meta());
+}
+
+static INode merge(int op, INode a, INode b, int[] n, boolean parallel){
+	if(!parallel || !FORK_JOIN || a == b || !(a instanceof ArrayNode) || !(b instanceof ArrayNode))
+		return merge(op, 0, a, b, n);
+	INode[] aa = ((ArrayNode) a).array;
+	int[] counts = new int[aa.length];
+	INode[] r = ParallelMerge.merge(op, aa, ((ArrayNode) b).array, counts);
+	for(int i = 0; i < counts.length; i++)
+		n[0] += counts[i];
+	return mergedArray(a, aa, r);
+}
+
+//a root slot of a parallel merge, loaded only when FORK_JOIN
+//the pool's workers are daemon threads, as are those of clojure.core.reducers
+static final class ParallelMerge extends RecursiveAction{
+	static final ForkJoinPool POOL = new ForkJoinPool();
+
+	final int op;
+	final int i;
+	final INode[] aa;
+	final INode[] ba;
+	final INode[] r;
+	final int[] counts;
+
+	ParallelMerge(int op, int i, INode[] aa, INode[] ba, INode[] r, int[] counts){
+		this.op = op;
+		this.i = i;
+		this.aa = aa;
+		this.ba = ba;
+		this.r = r;
+		this.counts = counts;
+	}
+
+	protected void compute(){
+		int[] c = new int[1];
+		r[i] = PersistentHashMap.merge(op, 5, aa[i], ba[i], c);
+		counts[i] = c[0];
+	}
+
+	static INode[] merge(int op, INode[] aa, INode[] ba, int[] counts){
+		INode[] r = new INode[aa.length];
+		final ParallelMerge[] tasks = new ParallelMerge[aa.length];
+		for(int i = 0; i < aa.length; i++)
+			tasks[i] = new ParallelMerge(op, i, aa, ba, r, counts);
+		RecursiveAction all = new RecursiveAction(){
+			protected void compute(){
+				invokeAll(tasks);
+			}
+		};
+		//already on a pool, as inside a reducers fold, fork there
+		if(ForkJoinTask.inForkJoinPool())
+			all.invoke();
+		else
+			POOL.invoke(all);
+		return r;
+	}
+}
+
+/**
+ * The node of the entries of a and b as by op, adding to n[0] the number of
+ * entries added to a (union), removed from a (intersection, minus) or kept
+ * (difference). Subtrees of a or b are returned as they are where possible,
+ * and the entry counts taken of those that decide the result.
+ */
+static INode merge(int op, int shift, INode a, INode b, int[] n){
+	if(a == b)
+		{
+		if(op == MINUS)
+			n[0] += size(a);
+		return op >= DIFFERENCE ? null : a;
+		}
+	if(a == null)
+		{
+		if(op != UNION)
+			return null;
+		n[0] += size(b);
+		return b;
+		}
+	if(b == null)
+		{
+		if(op == UNION)
+			return a;
+		if(op != MINUS)
+			n[0] += size(a);
+		return op >= DIFFERENCE ? a : null;
+		}
+	if(a instanceof HashCollisionNode || b instanceof HashCollisionNode)
+		return mergeEntries(op, shift, a, b, n);
+	if(a instanceof BitmapIndexedNode && b instanceof BitmapIndexedNode)
+		return mergeBitmaps(op, shift, (BitmapIndexedNode) a, (BitmapIndexedNode) b, n);
+	//an array node and another, slot by slot
+	INode[] aa = slots(shift, a);
+	INode[] ba = slots(shift, b);
+	INode[] r = new INode[32];
+	for(int i = 0; i < r.length; i++)
+		r[i] = merge(op, shift + 5, aa[i], ba[i], n);
+	return mergedArray(a, aa, r);
+}
+
+//the children of a node as those of an array node
+static INode[] slots(int shift, INode node){
+	if(node instanceof ArrayNode)
+		return ((ArrayNode) node).array;
+	BitmapIndexedNode x = (BitmapIndexedNode) node;
+	INode[] ret = new INode[32];
+	for(int i = 0, j = 0; i < 32; i++)
+		if((x.bitmap & (1 << i)) != 0)
+			{
+			ret[i] = slotNode(shift + 5, x.array[j], x.array[j + 1]);
+			j += 2;
+			}
+	return ret;
+}
+
+//a, if the merged children r are those of a, else a node of them
+static INode mergedArray(INode a, INode[] aa, INode[] r){
+	int count = 0;
+	boolean same = true;
+	for(int i = 0; i < r.length; i++)
+		{
+		if(r[i] != null)
+			count++;
+		if(r[i] != aa[i])
+			same = false;
+		}
+	if(same)
+		return a;
+	if(count == 0)
+		return null;
+	if(count > 8)
+		return new ArrayNode(null, count, r);
+	Object[] array = new Object[2 * count];
+	int bitmap = 0;
+	for(int i = 0, j = 1; i < r.length; i++)
+		if(r[i] != null)
+			{
+			array[j] = r[i];
+			bitmap |= 1 << i;
+			j += 2;
+			}
+	return new BitmapIndexedNode(null, bitmap, array);
+}
+
+static INode mergeBitmaps(int op, int shift, BitmapIndexedNode x, BitmapIndexedNode y, int[] n){
+	int bits = x.bitmap | y.bitmap;
+	Object[] array = new Object[2 * Integer.bitCount(bits)];
+	int bitmap = 0;
+	int j = 0;
+	boolean same = true;
+	for(; bits != 0; bits &= bits - 1)
+		{
+		int bit = bits & -bits;
+		Object ka = null, va = null, kb = null, vb = null;
+		if((x.bitmap & bit) != 0)
+			{
+			ka = x.array[2 * x.index(bit)];
+			va = x.array[2 * x.index(bit) + 1];
+			}
+		if((y.bitmap & bit) != 0)
+			{
+			kb = y.array[2 * y.index(bit)];
+			vb = y.array[2 * y.index(bit) + 1];
+			}
+		Object k = null, v = null;
+		if(kb == null && vb == null)
+			{
+			//only in x
+			if(op != INTERSECTION)
+				{
+				k = ka;
+				v = va;
+				}
+			if(op == INTERSECTION || op == DIFFERENCE)
+				n[0] += ka != null ? 1 : size((INode) va);
+			}
+		else if(ka == null && va == null)
+			{
+			//only in y
+			if(op == UNION)
+				{
+				k = kb;
+				v = vb;
+				n[0] += kb != null ? 1 : size((INode) vb);
+				}
+			}
+		else if(ka != null && kb != null)
+			{
+			if(Util.equiv(ka, kb))
+				{
+				if(op < DIFFERENCE)
+					{
+					k = ka;
+					v = va;
+					}
+				else if(op == MINUS)
+					n[0]++;
+				}
+			else
+				{
+				if(op != MINUS)
+					n[0]++;
+				if(op == UNION)
+					v = slotNode(shift + 5, ka, va).assoc(shift + 5, hash(kb), kb, vb, new Box(null));
+				else if(op >= DIFFERENCE)
+					{
+					k = ka;
+					v = va;
+					}
+				}
+			}
+		else
+			{
+			INode na = slotNode(shift + 5, ka, va);
+			INode r = merge(op, shift + 5, na, slotNode(shift + 5, kb, vb), n);
+			if(r == na)
+				{
+				k = ka;
+				v = va;
+				}
+			else
+				v = r;
+			}
+		if(k != ka || v != va)
+			same = false;
+		if(k != null || v != null)
+			{
+			bitmap |= bit;
+			array[j++] = k;
+			array[j++] = v;
+			}
+		}
+	if(same)
+		return x;
+	if(j == 0)
+		return null;
+	int count = Integer.bitCount(bitmap);
+	if(count > 16)
+		{
+		//as assoc would have made it
+		INode[] nodes = new INode[32];
+		for(int i = 0, b = bitmap; b != 0; b &= b - 1, i += 2)
+			nodes[Integer.numberOfTrailingZeros(b)] = slotNode(shift + 5, array[i], array[i + 1]);
+		return new ArrayNode(null, count, nodes);
+		}
+	if(j < array.length)
+		array = Arrays.copyOf(array, j);
+	return new BitmapIndexedNode(null, bitmap, array);
+}
+
+//different kinds of node, entry by entry
+static INode mergeEntries(int op, int shift, INode a, INode b, int[] n){
+	INode ret = a;
+	if(op == UNION)
+		{
+		Box addedLeaf = new Box(null);
+		for(ISeq s = b.nodeSeq(); s != null; s = s.next())
+			{
+			IMapEntry e = (IMapEntry) s.first();
+			int h = hash(e.key());
+			if(a.find(shift, h, e.key(), NOT_FOUND) == NOT_FOUND)
+				{
+				ret = ret.assoc(shift, h, e.key(), e.val(), addedLeaf);
+				n[0]++;
+				}
+			}
+		return ret;
+		}
+	for(ISeq s = a.nodeSeq(); s != null; s = s.next())
+		{
+		IMapEntry e = (IMapEntry) s.first();
+		int h = hash(e.key());
+		boolean inb = b.find(shift, h, e.key(), NOT_FOUND) != NOT_FOUND;
+		if(inb == (op >= DIFFERENCE))
+			{
+			ret = ret.without(shift, h, e.key());
+			if(op != DIFFERENCE)
+				n[0]++;
+			}
+		else if(op == DIFFERENCE)
+			n[0]++;
+		}
+	return ret;
+}
+
+//the number of entries under a node, null for none
+static int size(INode node){
+	if(node instanceof ArrayNode)
+		{
+		int ret = 0;
+		for(INode child : ((ArrayNode) node).array)
+			ret += size(child);
+		return ret;
+		}
+	if(node instanceof BitmapIndexedNode)
+		{
+		BitmapIndexedNode x = (BitmapIndexedNode) node;
+		int ret = 0;
+		for(int i = 0; i < 2 * Integer.bitCount(x.bitmap); i += 2)
+			ret += x.array[i] != null ? 1 : size((INode) x.array[i + 1]);
+		return ret;
+		}
+	if(node instanceof HashCollisionNode)
+		return ((HashCollisionNode) node).count;
+	return 0;
+}
+
 public boolean containsKey(Object key){
 	if(key == null)
 		return hasNull;
@@ -47,6 +47,21 @@ static public PersistentHashSet create(ISeq items){
 	return (PersistentHashSet)ret.persistent();
 }
 
+public boolean equiv(Object obj){
+	if(obj instanceof PersistentHashSet)
+		{
+		PersistentHashSet s = (PersistentHashSet) obj;
+		if(s == this)
+			return true;
+		if(s.count() != count())
+			return false;
+		//elements map to themselves, so the maps are equiv iff the sets are
+		if(impl instanceof PersistentHashMap && s.impl instanceof PersistentHashMap)
+			return impl.equiv(s.impl);
+		}
+	return super.equiv(obj);
+}
+
 public static PersistentHashSet createWithCheck(Object... init){
     ITransientSet ret = (ITransientSet)EMPTY.asTransient();
 	for(int i = 0; i < init.length; i++)
@@ -115,6 +130,32 @@ public IPersistentMap meta(){
 	return _meta;
 }
 
+/**
+ * The elements of a and those of b not in a, with a's metadata, merging the
+ * tries as PersistentHashMap.union does.
+ */
+static public PersistentHashSet union(PersistentHashSet a, PersistentHashSet b){
+	return a.withImpl(PersistentHashMap.union((PersistentHashMap) a.impl, (PersistentHashMap) b.impl));
+}
+
+/**
+ * The elements of a that are in b, with a's metadata.
+ */
+static public PersistentHashSet intersection(PersistentHashSet a, PersistentHashSet b){
+	return a.withImpl(PersistentHashMap.intersection((PersistentHashMap) a.impl, (PersistentHashMap) b.impl));
+}
+
+/**
+ * The elements of a that are not in b, with a's metadata.
+ */
+static public PersistentHashSet difference(PersistentHashSet a, PersistentHashSet b){
+	return a.withImpl(PersistentHashMap.difference((PersistentHashMap) a.impl, (PersistentHashMap) b.impl));
+}
+
+PersistentHashSet withImpl(IPersistentMap m){
+	return m == impl ? this : new PersistentHashSet(meta(), m);
+}
+
 static final class TransientHashSet extends ATransientSet {
 	TransientHashSet(ITransientMap impl) {
 		super(impl);
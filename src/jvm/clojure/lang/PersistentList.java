@@ -124,7 +124,7 @@ public Object reduce(IFn f, Object start) {
 }
 
 
-    static class EmptyList extends Obj implements IPersistentList, List, ISeq, Counted, IHashEq{
+    static class EmptyList extends Obj implements IPersistentList, List, ISeq, Counted, IHashEq, IReduce{
 	static final int hasheq = Murmur3.hashOrdered(Collections.EMPTY_LIST);
 
 	public int hashCode(){
@@ -167,6 +167,14 @@ public Object reduce(IFn f, Object start) {
 		return this;
 	}
 
+	public Object reduce(IFn f){
+		return f.invoke();
+	}
+
+	public Object reduce(IFn f, Object start){
+		return start;
+	}
+
 	public EmptyList withMeta(IPersistentMap meta){
 		if(meta != meta())
 			return new EmptyList(meta);
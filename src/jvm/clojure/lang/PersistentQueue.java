@@ -22,7 +22,7 @@ import java.util.NoSuchElementException;
  * so no reversing or suspensions required for persistent use
  */
 
-public class PersistentQueue extends Obj implements IPersistentList, Collection, Counted, IHashEq{
+public class PersistentQueue extends Obj implements IPersistentList, Collection, Counted, IHashEq, IReduce{
 
 final public static PersistentQueue EMPTY = new PersistentQueue(null, 0, null, null);
 
@@ -139,7 +139,40 @@ public PersistentQueue withMeta(IPersistentMap meta){
 	return new PersistentQueue(meta, cnt, f, r);
 }
 
-static class Seq extends ASeq{
+public Object reduce(IFn fn){
+	if(f == null)
+		return fn.invoke();
+	return reduce(f.next(), fn, f.first());
+}
+
+public Object reduce(IFn fn, Object start){
+	return reduce(f, fn, start);
+}
+
+//the front a chunk at a time, then the rear vector
+Object reduce(ISeq front, IFn fn, Object ret){
+	for(ISeq s = front; s != null;)
+		{
+		if(s instanceof IChunkedSeq)
+			{
+			IChunkedSeq cs = (IChunkedSeq) s;
+			ret = cs.chunkedFirst().reduce(fn, ret);
+			s = cs.chunkedNext();
+			}
+		else
+			{
+			ret = fn.invoke(ret, s.first());
+			s = s.next();
+			}
+		if(RT.isReduced(ret))
+			return ((IDeref) ret).deref();
+		}
+	if(r == null)
+		return ret;
+	return r.reduce(fn, ret);
+}
+
+static class Seq extends ASeq implements IChunkedSeq{
 	final ISeq f;
 	final ISeq rseq;
 
@@ -175,6 +208,30 @@ static class Seq extends ASeq{
 		return RT.count(f) + RT.count(rseq);
 	}
 
+	//the front is a vector seq, passed on a chunk at a time, or the one item
+	//list of a queue conj'd onto while empty, a chunk of its own
+	public IChunk chunkedFirst(){
+		if(f instanceof IChunkedSeq)
+			return ((IChunkedSeq) f).chunkedFirst();
+		return new ArrayChunk(new Object[]{f.first()});
+	}
+
+	public ISeq chunkedNext(){
+		ISeq f1 = f instanceof IChunkedSeq ? ((IChunkedSeq) f).chunkedNext() : f.next();
+		if(f1 == null)
+			return rseq;
+		if(rseq == null)
+			return f1;
+		return new Seq(f1, rseq);
+	}
+
+	public ISeq chunkedMore(){
+		ISeq s = chunkedNext();
+		if(s == null)
+			return PersistentList.EMPTY;
+		return s;
+	}
+
 	public Seq withMeta(IPersistentMap meta){
 		return new Seq(meta, f, rseq);
 	}
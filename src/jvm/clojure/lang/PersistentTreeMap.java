@@ -13,6 +13,7 @@
 package clojure.lang;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Persistent Red Black Tree
@@ -22,7 +23,7 @@ import java.util.*;
  * See Okasaki, Kahrs, Larsen et al
  */
 
-public class PersistentTreeMap extends APersistentMap implements IObj, Reversible, Sorted{
+public class PersistentTreeMap extends APersistentMap implements IObj, Reversible, Sorted, IEditableCollection{
 
 public final Comparator comp;
 public final Node tree;
@@ -69,25 +70,53 @@ PersistentTreeMap(IPersistentMap meta, Comparator comp, Node tree, int _count){
 }
 
 static public PersistentTreeMap create(ISeq items){
-	IPersistentMap ret = EMPTY;
-	for(; items != null; items = items.next().next())
-		{
-		if(items.next() == null)
-			throw new IllegalArgumentException(String.format("No value supplied for key: %s", items.first()));
-		ret = ret.assoc(items.first(), RT.second(items));
-		}
-	return (PersistentTreeMap) ret;
+	return create(RT.DEFAULT_COMPARATOR, items);
 }
 
 static public PersistentTreeMap create(Comparator comp, ISeq items){
-	IPersistentMap ret = new PersistentTreeMap(comp);
-	for(; items != null; items = items.next().next())
+	Object[] kvs = RT.seqToArray(items);
+	if(kvs.length % 2 == 1)
+		throw new IllegalArgumentException(String.format("No value supplied for key: %s", kvs[kvs.length - 1]));
+	return create(comp, kvs, 2);
+}
+
+/**
+ * A map of every step'th item of items to the item step - 1 after it, so the
+ * keys and vals in turn for step 2 and each key to itself for step 1. Keys in
+ * ascending order are built into a balanced tree in O(n), else they are added
+ * one at a time to a transient, later vals replacing earlier ones for step 2
+ * and earlier keys kept for step 1, as assoc and set conj do.
+ */
+static PersistentTreeMap create(Comparator comp, Object[] items, int step){
+	int n = items.length / step;
+	for(int i = 1; i < n; i++)
 		{
-		if(items.next() == null)
-			throw new IllegalArgumentException(String.format("No value supplied for key: %s", items.first()));
-		ret = ret.assoc(items.first(), RT.second(items));
+		if(comp.compare(items[(i - 1) * step], items[i * step]) >= 0)
+			{
+			TransientTreeMap t = new TransientTreeMap(new PersistentTreeMap(comp));
+			for(int j = 0; j < items.length; j += step)
+				t.add(items[j], items[j + step - 1], step == 2);
+			return (PersistentTreeMap) t.persistent();
+			}
 		}
-	return (PersistentTreeMap) ret;
+	//as java.util.TreeMap, the bottom level if not full is red, the rest black
+	int redLevel = 0;
+	for(int m = n - 1; m >= 0; m = m / 2 - 1)
+		redLevel++;
+	return new PersistentTreeMap(comp, build(items, step, 0, n - 1, 0, redLevel), n, null);
+}
+
+static Node build(Object[] items, int step, int lo, int hi, int level, int redLevel){
+	if(lo > hi)
+		return null;
+	int mid = (lo + hi) >>> 1;
+	Node left = build(items, step, lo, mid - 1, level + 1, redLevel);
+	Node right = build(items, step, mid + 1, hi, level + 1, redLevel);
+	Object key = items[mid * step];
+	Object val = items[mid * step + step - 1];
+	if(level == redLevel)
+		return red(key, val, left, right);
+	return black(key, val, left, right);
 }
 
 public boolean containsKey(Object key){
@@ -137,6 +166,10 @@ public ISeq seq(){
 	return null;
 }
 
+public ITransientMap asTransient(){
+	return new TransientTreeMap(this);
+}
+
 public IPersistentCollection empty(){
 	return new PersistentTreeMap(meta(), comp);	
 }
@@ -312,6 +345,100 @@ public int doCompare(Object k1, Object k2){
 //	return ((Comparable) k1).compareTo(k2);
 }
 
+/**
+ * The keys of the entries in only one of a and b, or whose values are not
+ * equiv, in order, for clojure.data/diff. The maps must have the same
+ * comparator. Both trees are walked in order, skipping the subtrees they
+ * share.
+ */
+static public IPersistentVector diffKeys(PersistentTreeMap a, PersistentTreeMap b){
+	ArrayList ret = new ArrayList();
+	Walk x = new Walk(a.tree);
+	Walk y = new Walk(b.tree);
+	while(x.n > 0 && y.n > 0)
+		{
+		Node p = x.nodes[x.n - 1];
+		Node q = y.nodes[y.n - 1];
+		boolean pw = x.whole[x.n - 1];
+		boolean qw = y.whole[y.n - 1];
+		if(pw && qw && p == q)
+			{
+			x.n--;
+			y.n--;
+			}
+		else if(pw && qw)
+			{
+			//the subtree with the greater key may hold the other under its left
+			int c = a.doCompare(p.key, q.key);
+			if(c <= 0)
+				y.expand();
+			if(c >= 0)
+				x.expand();
+			}
+		else if(pw)
+			x.expand();
+		else if(qw)
+			y.expand();
+		else
+			{
+			int c = a.doCompare(p.key, q.key);
+			if(c == 0 && !Util.equiv(p.val(), q.val()))
+				ret.add(p.key);
+			else if(c < 0)
+				ret.add(p.key);
+			else if(c > 0)
+				ret.add(q.key);
+			if(c <= 0)
+				x.n--;
+			if(c >= 0)
+				y.n--;
+			}
+		}
+	x.drain(ret);
+	y.drain(ret);
+	return LazilyPersistentVector.create(ret);
+}
+
+//an in order walk of a tree, a stack of subtrees and of nodes standing for their own entry
+static class Walk{
+	Node[] nodes = new Node[16];
+	boolean[] whole = new boolean[16];
+	int n;
+
+	Walk(Node t){
+		push(t, true);
+	}
+
+	void push(Node t, boolean w){
+		if(t == null)
+			return;
+		if(n == nodes.length)
+			{
+			nodes = Arrays.copyOf(nodes, 2 * n);
+			whole = Arrays.copyOf(whole, 2 * n);
+			}
+		nodes[n] = t;
+		whole[n++] = w;
+	}
+
+	void expand(){
+		Node t = nodes[--n];
+		push(t.right(), true);
+		push(t, false);
+		push(t.left(), true);
+	}
+
+	void drain(List ret){
+		while(n > 0)
+			{
+			if(whole[n - 1])
+				expand();
+			else
+				ret.add(nodes[--n].key);
+			}
+	}
+}
+
 Node add(Node t, Object key, Object val, Box found){
 	if(t == null)
 		{
@@ -538,6 +665,13 @@ static abstract class Node extends AMapEntry{
 
 	abstract Node replace(Object key, Object val, Node left, Node right);
 
+	//the node with a new left, right or val, changed in place if owned by edit, else an owned copy
+	abstract Node editLeft(AtomicReference<Thread> edit, Node left);
+
+	abstract Node editRight(AtomicReference<Thread> edit, Node right);
+
+	abstract Node editVal(AtomicReference<Thread> edit, Object val);
+
     public Object kvreduce(IFn f, Object init){
 	    if(left() != null){
             init = left().kvreduce(f, init);
@@ -590,6 +724,17 @@ static class Black extends Node{
 		return black(key, val, left, right);
 	}
 
+	Node editLeft(AtomicReference<Thread> edit, Node left){
+		return new EditBlack(edit, key, val(), left, right());
+	}
+
+	Node editRight(AtomicReference<Thread> edit, Node right){
+		return new EditBlack(edit, key, val(), left(), right);
+	}
+
+	Node editVal(AtomicReference<Thread> edit, Object val){
+		return new EditBlack(edit, key, val, left(), right());
+	}
 }
 
 static class BlackVal extends Black{
@@ -686,6 +831,17 @@ static class Red extends Node{
 		return red(key, val, left, right);
 	}
 
+	Node editLeft(AtomicReference<Thread> edit, Node left){
+		return new EditRed(edit, key, val(), left, right());
+	}
+
+	Node editRight(AtomicReference<Thread> edit, Node right){
+		return new EditRed(edit, key, val(), left(), right);
+	}
+
+	Node editVal(AtomicReference<Thread> edit, Object val){
+		return new EditRed(edit, key, val, left(), right());
+	}
 }
 
 static class RedVal extends Red{
@@ -770,6 +926,222 @@ static class RedBranchVal extends RedBranch{
 	}
 }
 
+//nodes made by a transient, changed in place while it is editable, and as the others after
+static final class EditBlack extends Black{
+	final AtomicReference<Thread> edit;
+	Object val;
+	Node left;
+	Node right;
+
+	EditBlack(AtomicReference<Thread> edit, Object key, Object val, Node left, Node right){
+		super(key);
+		this.edit = edit;
+		this.val = val;
+		this.left = left;
+		this.right = right;
+	}
+
+	public Object val(){
+		return val;
+	}
+
+	public Node left(){
+		return left;
+	}
+
+	public Node right(){
+		return right;
+	}
+
+	Node redden(){
+		return red(key, val, left, right);
+	}
+
+	Node editLeft(AtomicReference<Thread> edit, Node left){
+		if(this.edit != edit)
+			return super.editLeft(edit, left);
+		this.left = left;
+		return this;
+	}
+
+	Node editRight(AtomicReference<Thread> edit, Node right){
+		if(this.edit != edit)
+			return super.editRight(edit, right);
+		this.right = right;
+		return this;
+	}
+
+	Node editVal(AtomicReference<Thread> edit, Object val){
+		if(this.edit != edit)
+			return super.editVal(edit, val);
+		this.val = val;
+		return this;
+	}
+}
+
+static final class EditRed extends Red{
+	final AtomicReference<Thread> edit;
+	Object val;
+	Node left;
+	Node right;
+
+	EditRed(AtomicReference<Thread> edit, Object key, Object val, Node left, Node right){
+		super(key);
+		this.edit = edit;
+		this.val = val;
+		this.left = left;
+		this.right = right;
+	}
+
+	public Object val(){
+		return val;
+	}
+
+	public Node left(){
+		return left;
+	}
+
+	public Node right(){
+		return right;
+	}
+
+	Node balanceLeft(Node parent){
+		return red(key, val, left, right).balanceLeft(parent);
+	}
+
+	Node balanceRight(Node parent){
+		return red(key, val, left, right).balanceRight(parent);
+	}
+
+	Node blacken(){
+		return black(key, val, left, right);
+	}
+
+	Node editLeft(AtomicReference<Thread> edit, Node left){
+		if(this.edit != edit)
+			return super.editLeft(edit, left);
+		this.left = left;
+		return this;
+	}
+
+	Node editRight(AtomicReference<Thread> edit, Node right){
+		if(this.edit != edit)
+			return super.editRight(edit, right);
+		this.right = right;
+		return this;
+	}
+
+	Node editVal(AtomicReference<Thread> edit, Object val){
+		if(this.edit != edit)
+			return super.editVal(edit, val);
+		this.val = val;
+		return this;
+	}
+}
+
+/**
+ * Adds as assoc does, but changing the nodes on the path in place once the
+ * transient owns them rather than copying them for every add. Removal copies
+ * the path as without does.
+ */
+static final class TransientTreeMap extends ATransientMap{
+	final AtomicReference<Thread> edit;
+	final Comparator comp;
+	volatile Node root;
+	volatile int count;
+
+	TransientTreeMap(PersistentTreeMap m){
+		this.edit = new AtomicReference<Thread>(Thread.currentThread());
+		this.comp = m.comp;
+		this.root = m.tree;
+		this.count = m._count;
+	}
+
+	ITransientMap doAssoc(Object key, Object val){
+		add(key, val, true);
+		return this;
+	}
+
+	//replace false keeps the val of a key already present, for sets
+	void add(Object key, Object val, boolean replace){
+		Node t = add(root, key, val, replace);
+		if(t instanceof Red)
+			t = t.blacken();
+		if(t != root)
+			root = t;
+	}
+
+	Node add(Node t, Object key, Object val, boolean replace){
+		if(t == null)
+			{
+			count++;
+			return new EditRed(edit, key, val, null, null);
+			}
+		int c = comp.compare(key, t.key);
+		if(c == 0)
+			{
+			if(!replace || t.val() == val)
+				return t;
+			return t.editVal(edit, val);
+			}
+		if(c < 0)
+			{
+			Node ins = add(t.left(), key, val, replace);
+			if(t instanceof Black && redRed(ins))
+				return ins.balanceLeft(t);
+			if(ins == t.left())
+				return t;
+			return t.editLeft(edit, ins);
+			}
+		Node ins = add(t.right(), key, val, replace);
+		if(t instanceof Black && redRed(ins))
+			return ins.balanceRight(t);
+		if(ins == t.right())
+			return t;
+		return t.editRight(edit, ins);
+	}
+
+	//a red node with a red child, which its black parent rebalances
+	static boolean redRed(Node t){
+		return t instanceof Red && (t.left() instanceof Red || t.right() instanceof Red);
+	}
+
+	ITransientMap doWithout(Object key){
+		PersistentTreeMap m = new PersistentTreeMap(comp, root, count, null).without(key);
+		root = m.tree;
+		count = m._count;
+		return this;
+	}
+
+	Object doValAt(Object key, Object notFound){
+		Node t = root;
+		while(t != null)
+			{
+			int c = comp.compare(key, t.key);
+			if(c == 0)
+				return t.val();
+			t = c < 0 ? t.left() : t.right();
+			}
+		return notFound;
+	}
+
+	int doCount(){
+		return count;
+	}
+
+	IPersistentMap doPersistent(){
+		edit.set(null);
+		if(count == 0)
+			return new PersistentTreeMap(null, comp);
+		return new PersistentTreeMap(comp, root, count, null);
+	}
+
+	void ensureEditable(){
+		if(edit.get() == null)
+			throw new IllegalAccessError("Transient used after persistent! call");
+	}
+}
+
 
 static public class Seq extends ASeq{
 	final ISeq stack;
@@ -14,27 +14,17 @@ package clojure.lang;
 
 import java.util.Comparator;
 
-public class PersistentTreeSet extends APersistentSet implements IObj, Reversible, Sorted{
+public class PersistentTreeSet extends APersistentSet implements IObj, Reversible, Sorted, IEditableCollection{
 static public final PersistentTreeSet EMPTY = new PersistentTreeSet(null, PersistentTreeMap.EMPTY);
 final IPersistentMap _meta;
 
 
 static public PersistentTreeSet create(ISeq items){
-	PersistentTreeSet ret = EMPTY;
-	for(; items != null; items = items.next())
-		{
-		ret = (PersistentTreeSet) ret.cons(items.first());
-		}
-	return ret;
+	return create(RT.DEFAULT_COMPARATOR, items);
 }
 
 static public PersistentTreeSet create(Comparator comp, ISeq items){
-	PersistentTreeSet ret = new PersistentTreeSet(null, new PersistentTreeMap(null, comp));
-	for(; items != null; items = items.next())
-		{
-		ret = (PersistentTreeSet) ret.cons(items.first());
-		}
-	return ret;
+	return new PersistentTreeSet(null, PersistentTreeMap.create(comp, RT.seqToArray(items), 1));
 }
 
 PersistentTreeSet(IPersistentMap meta, IPersistentMap impl){
@@ -66,6 +56,10 @@ public PersistentTreeSet withMeta(IPersistentMap meta){
 	return new PersistentTreeSet(meta, impl);
 }
 
+public ITransientCollection asTransient(){
+	return new TransientTreeSet(((PersistentTreeMap) impl).asTransient());
+}
+
 public Comparator comparator(){
 	return ((Sorted)impl).comparator();
 }
@@ -87,4 +81,22 @@ public ISeq seqFrom(Object key, boolean ascending){
 public IPersistentMap meta(){
 	return _meta;
 }
+
+static final class TransientTreeSet extends ATransientSet{
+	TransientTreeSet(ITransientMap impl){
+		super(impl);
+	}
+
+	//keeps an element already present, as cons does
+	public ITransientSet conj(Object val){
+		PersistentTreeMap.TransientTreeMap m = (PersistentTreeMap.TransientTreeMap) impl;
+		m.ensureEditable();
+		m.add(val, val, false);
+		return this;
+	}
+
+	public IPersistentCollection persistent(){
+		return new PersistentTreeSet(null, impl.persistent());
+	}
+}
 }
@@ -424,6 +424,95 @@ public IPersistentCollection empty(){
 	return EMPTY.withMeta(meta());
 }
 
+public boolean equiv(Object obj){
+	if(obj instanceof PersistentVector)
+		{
+		PersistentVector v = (PersistentVector) obj;
+		if(v == this)
+			return true;
+		if(v.cnt != cnt)
+			return false;
+		//equal counts, so the tries have the same shape
+		return nodeEquiv(shift, root, v.root) && itemsEquiv(tail, v.tail, tail.length);
+		}
+	return super.equiv(obj);
+}
+
+//skips the subtrees the vectors share
+static boolean nodeEquiv(int level, Node a, Node b){
+	if(a == b)
+		return true;
+	if(level == 0)
+		return itemsEquiv(a.array, b.array, 32);
+	for(int i = 0; i < 32 && a.array[i] != null; i++)
+		{
+		if(!nodeEquiv(level - 5, (Node) a.array[i], (Node) b.array[i]))
+			return false;
+		}
+	return true;
+}
+
+/**
+ * The indexes at which a and b differ, including those past the end of the
+ * shorter one, for clojure.data/diff. Subtrees the vectors share are
+ * skipped.
+ */
+static public IPersistentVector diffIndices(PersistentVector a, PersistentVector b){
+	ArrayList ret = new ArrayList();
+	int n = Math.min(a.cnt, b.cnt);
+	//the indexes both have in their tries, where the same index is in the same place
+	int end = Math.min(a.tailoff(), b.tailoff());
+	if(end > 0)
+		{
+		Node x = a.root;
+		Node y = b.root;
+		int level = Math.min(a.shift, b.shift);
+		//a taller trie holds the shorter one's indexes under its first child
+		for(int s = a.shift; s > level; s -= 5)
+			x = (Node) x.array[0];
+		for(int s = b.shift; s > level; s -= 5)
+			y = (Node) y.array[0];
+		diffNodes(level, x, y, 0, end, ret);
+		}
+	for(int i = end; i < n; i += 32)
+		{
+		Object[] xs = a.arrayFor(i);
+		Object[] ys = b.arrayFor(i);
+		if(xs != ys)
+			for(int j = i; j < Math.min(i + 32, n); j++)
+				if(!Util.equiv(xs[j & 0x01f], ys[j & 0x01f]))
+					ret.add((long) j);
+		}
+	for(int i = n; i < Math.max(a.cnt, b.cnt); i++)
+		ret.add((long) i);
+	return LazilyPersistentVector.create(ret);
+}
+
+static void diffNodes(int level, Node a, Node b, int start, int end, List ret){
+	if(a == b)
+		return;
+	if(level == 0)
+		{
+		for(int j = 0; j < 32 && start + j < end; j++)
+			if(!Util.equiv(a.array[j], b.array[j]))
+				ret.add((long) (start + j));
+		return;
+		}
+	for(int i = 0; i < 32 && start + (i << level) < end; i++)
+		diffNodes(level - 5, (Node) a.array[i], (Node) b.array[i], start + (i << level), end, ret);
+}
+
+static boolean itemsEquiv(Object[] a, Object[] b, int n){
+	if(a == b)
+		return true;
+	for(int i = 0; i < n; i++)
+		{
+		if(!Util.equiv(a[i], b[i]))
+			return false;
+		}
+	return true;
+}
+
 //private Node pushTail(int level, Node node, Object[] tailNode, Box expansion){
 //	Object newchild;
 //	if(level == 0)
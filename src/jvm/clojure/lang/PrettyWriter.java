@@ -0,0 +1,488 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * The writer at the core of clojure.pprint, implementing the XP algorithm.
+ *
+ * Once a conditional newline has been seen, output is held as tokens (text,
+ * newlines, block starts and ends, indents) in a buffer that is written out
+ * as soon as it no longer fits on the current line, so the buffer never holds
+ * much more than a line's worth of output however large the value printed.
+ * Each newline in the buffer is then emitted or not depending on its kind,
+ * its logical block, *print-right-margin* and *print-miser-width*.
+ *
+ * Derefs to itself, and looks up :pretty-writer, :base, :mode, :miser-width
+ * and :logical-block-callback, so that (:base @@w) works as it did when the
+ * writer's fields were a ref of a map.
+ */
+public class PrettyWriter extends Writer implements IDeref, ILookup{
+
+static final Keyword PRETTY_WRITER = Keyword.intern(null, "pretty-writer");
+static final Keyword BASE = Keyword.intern(null, "base");
+static final Keyword MODE = Keyword.intern(null, "mode");
+static final Keyword MISER_WIDTH = Keyword.intern(null, "miser-width");
+static final Keyword LOGICAL_BLOCK_CALLBACK = Keyword.intern(null, "logical-block-callback");
+static final Keyword WRITING = Keyword.intern(null, "writing");
+static final Keyword BUFFERING = Keyword.intern(null, "buffering");
+
+static final Keyword LINEAR = Keyword.intern(null, "linear");
+static final Keyword MISER = Keyword.intern(null, "miser");
+static final Keyword FILL = Keyword.intern(null, "fill");
+static final Keyword MANDATORY = Keyword.intern(null, "mandatory");
+static final Keyword BLOCK = Keyword.intern(null, "block");
+static final Keyword CURRENT = Keyword.intern(null, "current");
+static final Keyword START = Keyword.intern(null, "start");
+static final Keyword END = Keyword.intern(null, "end");
+
+static final String NEWLINE = System.getProperty("line.separator");
+static final String SPACES = "                                                                ";
+
+static final int BLOB = 0;
+static final int NL = 1;
+static final int START_BLOCK = 2;
+static final int END_BLOCK = 3;
+static final int INDENT = 4;
+
+static final class LogicalBlock{
+	final LogicalBlock parent;
+	final String prefix;
+	final String perLinePrefix;
+	final String suffix;
+	int startCol;
+	int indent;
+	boolean doneNl;
+	boolean intraBlockNl;
+
+	LogicalBlock(LogicalBlock parent, String prefix, String perLinePrefix, String suffix){
+		this.parent = parent;
+		this.prefix = prefix;
+		this.perLinePrefix = perLinePrefix;
+		this.suffix = suffix;
+	}
+
+	//true if this block strictly encloses child
+	boolean isAncestorOf(LogicalBlock child){
+		for(LogicalBlock lb = child.parent; lb != null; lb = lb.parent)
+			if(lb == this)
+				return true;
+		return false;
+	}
+}
+
+//start and end are positions in the stream of output, for measuring the buffer
+static final class Token{
+	final int type;
+	final LogicalBlock lb;
+	final long start;
+	final long end;
+	String data;
+	String trailingWhiteSpace;
+	Keyword kind;
+	int offset;
+
+	Token(int type, LogicalBlock lb, long start, long end){
+		this.type = type;
+		this.lb = lb;
+		this.start = start;
+		this.end = end;
+	}
+}
+
+final ColumnWriter base;
+final ArrayList<Token> buffer = new ArrayList<Token>();
+LogicalBlock blocks = new LogicalBlock(null, null, null, null);
+boolean buffering;
+long pos;
+String trailingWhiteSpace;
+Object miserWidth;
+IFn logicalBlockCallback;
+
+public PrettyWriter(Writer writer, Object maxColumns, Object miserWidth){
+	this.base = new ColumnWriter(writer, maxColumns);
+	this.miserWidth = miserWidth;
+}
+
+public Object getMiserWidth(){
+	return miserWidth;
+}
+
+public void setMiserWidth(Object miserWidth){
+	this.miserWidth = miserWidth;
+}
+
+public void setLogicalBlockCallback(IFn f){
+	this.logicalBlockCallback = f;
+}
+
+public Object deref(){
+	return this;
+}
+
+public Object valAt(Object key){
+	return valAt(key, null);
+}
+
+public Object valAt(Object key, Object notFound){
+	if(key == PRETTY_WRITER)
+		return Boolean.TRUE;
+	if(key == BASE)
+		return base;
+	if(key == MODE)
+		return buffering ? BUFFERING : WRITING;
+	if(key == MISER_WIDTH)
+		return miserWidth;
+	if(key == LOGICAL_BLOCK_CALLBACK)
+		return logicalBlockCallback;
+	return notFound;
+}
+
+private void callback(Keyword event){
+	if(logicalBlockCallback != null)
+		logicalBlockCallback.invoke(event);
+}
+
+private void writeWhiteSpace() throws IOException{
+	if(trailingWhiteSpace != null)
+		{
+		base.write(trailingWhiteSpace);
+		trailingWhiteSpace = null;
+		}
+}
+
+private void writeToken(Token t) throws IOException{
+	LogicalBlock lb = t.lb;
+	switch(t.type)
+		{
+		case BLOB:
+			base.write(t.data);
+			break;
+		case NL:
+			if(t.kind == MANDATORY || t.kind != FILL && lb.doneNl)
+				emitNl(lb);
+			else if(trailingWhiteSpace != null)
+				base.write(trailingWhiteSpace);
+			trailingWhiteSpace = null;
+			break;
+		case START_BLOCK:
+			callback(START);
+			if(lb.prefix != null)
+				base.write(lb.prefix);
+			lb.startCol = lb.indent = base.column;
+			break;
+		case END_BLOCK:
+			callback(END);
+			if(lb.suffix != null)
+				base.write(lb.suffix);
+			break;
+		case INDENT:
+			lb.indent = t.offset + (t.kind == BLOCK ? lb.startCol : base.column);
+			break;
+		}
+}
+
+private void writeTokens(int from, int to, boolean forceTrailingWhiteSpace) throws IOException{
+	for(int i = from; i < to; i++)
+		{
+		Token t = buffer.get(i);
+		if(t.type != NL && trailingWhiteSpace != null)
+			base.write(trailingWhiteSpace);
+		writeToken(t);
+		trailingWhiteSpace = t.trailingWhiteSpace;
+		}
+	if(forceTrailingWhiteSpace)
+		writeWhiteSpace();
+}
+
+private boolean tokensFit(int from, int to){
+	Object max = base.maxColumn;
+	if(max == null)
+		return true;
+	long length = from == to ? 0 : buffer.get(to - 1).end - buffer.get(from).start;
+	return base.column + length < ((Number) max).longValue();
+}
+
+private boolean linearNl(LogicalBlock lb, int from, int to){
+	return lb.doneNl || !tokensFit(from, to);
+}
+
+private boolean miserNl(LogicalBlock lb, int from, int to){
+	Object max = base.maxColumn;
+	return miserWidth != null && max != null
+	       && lb.startCol >= ((Number) max).longValue() - ((Number) miserWidth).longValue()
+	       && linearNl(lb, from, to);
+}
+
+//the section of a newline runs to the next newline of an enclosing block,
+//its subsection to the next newline of its own block or an enclosing one
+private boolean takesNl(Token nl, int from, int sectionEnd, int subsectionEnd){
+	LogicalBlock lb = nl.lb;
+	if(nl.kind == LINEAR)
+		return linearNl(lb, from, sectionEnd);
+	if(nl.kind == MISER)
+		return miserNl(lb, from, sectionEnd);
+	if(nl.kind == FILL)
+		return lb.intraBlockNl || !tokensFit(from, subsectionEnd) || miserNl(lb, from, sectionEnd);
+	return true;
+}
+
+private void emitNl(LogicalBlock lb) throws IOException{
+	base.write(NEWLINE);
+	trailingWhiteSpace = null;
+	String prefix = lb.perLinePrefix;
+	if(prefix != null)
+		base.write(prefix);
+	for(int n = lb.indent - (prefix == null ? 0 : prefix.length()); n > 0; n -= SPACES.length())
+		base.write(SPACES, 0, Math.min(n, SPACES.length()));
+	lb.intraBlockNl = false;
+	lb.doneNl = true;
+	for(LogicalBlock p = lb.parent; p != null; p = p.parent)
+		{
+		p.doneNl = true;
+		p.intraBlockNl = true;
+		}
+}
+
+//writes the tokens up to the first newline, decides on that newline, and
+//writes its section too if the rest doesn't fit. Returns the index of the
+//first token not dealt with.
+private int writeTokenString(int from, int to) throws IOException{
+	int n = from;
+	while(n < to && buffer.get(n).type != NL)
+		n++;
+	if(n > from)
+		writeTokens(from, n, false);
+	if(n == to)
+		return to;
+	Token nl = buffer.get(n);
+	LogicalBlock lb = nl.lb;
+	int sectionEnd = n + 1;
+	for(Token t; sectionEnd < to; sectionEnd++)
+		if((t = buffer.get(sectionEnd)).type == NL && t.lb.isAncestorOf(lb))
+			break;
+	int subsectionEnd = n + 1;
+	for(Token t; subsectionEnd < to; subsectionEnd++)
+		if((t = buffer.get(subsectionEnd)).type == NL && (t.lb == lb || t.lb.isAncestorOf(lb)))
+			break;
+	int result = n;
+	if(takesNl(nl, n + 1, sectionEnd, subsectionEnd))
+		{
+		emitNl(lb);
+		result = n + 1;
+		}
+	if(!tokensFit(result, to))
+		{
+		int rest = writeTokenString(n + 1, sectionEnd);
+		if(rest == n + 1)
+			{
+			//no newline in the section was taken, so write it as it is
+			writeTokens(n + 1, sectionEnd, false);
+			result = sectionEnd;
+			}
+		else
+			result = rest;
+		}
+	return result;
+}
+
+private void writeLine() throws IOException{
+	while(!tokensFit(0, buffer.size()))
+		{
+		int k = writeTokenString(0, buffer.size());
+		if(k == 0)
+			break;
+		buffer.subList(0, k).clear();
+		}
+}
+
+private void addToBuffer(Token t) throws IOException{
+	buffer.add(t);
+	if(!tokensFit(0, buffer.size()))
+		writeLine();
+}
+
+private void writeBufferedOutput() throws IOException{
+	writeLine();
+	writeTokens(0, buffer.size(), true);
+	buffer.clear();
+}
+
+private Token blob(String data, String trailingWhiteSpace, int length){
+	Token t = new Token(BLOB, null, pos, pos += length);
+	t.data = data;
+	t.trailingWhiteSpace = trailingWhiteSpace;
+	return t;
+}
+
+//writes out the lines of s before its last newline, returning the rest
+private String writeInitialLines(String s) throws IOException{
+	int nl = s.indexOf('\n');
+	if(nl < 0)
+		return s;
+	String l = s.substring(0, nl);
+	if(buffering)
+		{
+		addToBuffer(blob(l, null, l.length()));
+		writeBufferedOutput();
+		}
+	else
+		{
+		writeWhiteSpace();
+		base.write(l);
+		}
+	base.write('\n');
+	int start = nl + 1;
+	while((nl = s.indexOf('\n', start)) >= 0)
+		{
+		base.write(s, start, nl - start);
+		base.write(NEWLINE);
+		start = nl + 1;
+		}
+	return s.substring(start);
+}
+
+static boolean isWhiteSpace(char c){
+	return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+}
+
+public void write(String x) throws IOException{
+	String s0 = writeInitialLines(x);
+	int e = s0.length();
+	while(e > 0 && isWhiteSpace(s0.charAt(e - 1)))
+		e--;
+	String s = s0.substring(0, e);
+	String whiteSpace = e < s0.length() ? s0.substring(e) : null;
+	if(buffering)
+		addToBuffer(blob(s, whiteSpace, s0.length()));
+	else
+		{
+		writeWhiteSpace();
+		base.write(s);
+		trailingWhiteSpace = whiteSpace;
+		}
+}
+
+public void write(String s, int off, int len) throws IOException{
+	write(s.substring(off, off + len));
+}
+
+public void write(char[] cbuf, int off, int len) throws IOException{
+	write(new String(cbuf, off, len));
+}
+
+public void write(int c) throws IOException{
+	if(buffering)
+		addToBuffer(blob(String.valueOf((char) c), null, 1));
+	else
+		{
+		writeWhiteSpace();
+		base.write(c);
+		}
+}
+
+/**
+ * Writes out the buffered output without flushing the underlying writer.
+ */
+public void ppflush() throws IOException{
+	if(buffering)
+		{
+		writeTokens(0, buffer.size(), true);
+		buffer.clear();
+		}
+	else
+		writeWhiteSpace();
+}
+
+public void flush() throws IOException{
+	ppflush();
+	base.flush();
+}
+
+public void close() throws IOException{
+	flush();
+}
+
+public void startBlock(String prefix, String perLinePrefix, String suffix) throws IOException{
+	LogicalBlock lb = new LogicalBlock(blocks, prefix, perLinePrefix, suffix);
+	blocks = lb;
+	if(buffering)
+		{
+		long start = pos;
+		pos += prefix == null ? 0 : prefix.length();
+		addToBuffer(new Token(START_BLOCK, lb, start, pos));
+		}
+	else
+		{
+		writeWhiteSpace();
+		callback(START);
+		if(prefix != null)
+			base.write(prefix);
+		lb.startCol = lb.indent = base.column;
+		}
+}
+
+public void endBlock() throws IOException{
+	LogicalBlock lb = blocks;
+	if(buffering)
+		{
+		long start = pos;
+		pos += lb.suffix == null ? 0 : lb.suffix.length();
+		addToBuffer(new Token(END_BLOCK, lb, start, pos));
+		}
+	else
+		{
+		writeWhiteSpace();
+		if(lb.suffix != null)
+			base.write(lb.suffix);
+		callback(END);
+		}
+	blocks = lb.parent;
+}
+
+/**
+ * A conditional newline, kind being :linear, :miser, :fill or :mandatory.
+ */
+public void nl(Keyword kind) throws IOException{
+	if(kind != LINEAR && kind != MISER && kind != FILL && kind != MANDATORY)
+		throw new IllegalArgumentException("Unknown newline kind: " + kind);
+	buffering = true;
+	Token t = new Token(NL, blocks, pos, pos);
+	t.kind = kind;
+	addToBuffer(t);
+}
+
+/**
+ * Sets the indent of the current block to offset from its start (relativeTo
+ * :block) or from the current column (relativeTo :current).
+ */
+public void indent(Keyword relativeTo, Object offset) throws IOException{
+	if(relativeTo != BLOCK && relativeTo != CURRENT)
+		throw new IllegalArgumentException("No matching clause: " + relativeTo);
+	LogicalBlock lb = blocks;
+	int n = ((Number) offset).intValue();
+	if(buffering)
+		{
+		Token t = new Token(INDENT, lb, pos, pos);
+		t.kind = relativeTo;
+		t.offset = n;
+		addToBuffer(t);
+		}
+	else
+		{
+		writeWhiteSpace();
+		lb.indent = n + (relativeTo == BLOCK ? lb.startCol : base.column);
+		}
+}
+}
@@ -1553,6 +1553,8 @@ static public IPersistentSet set(Object... init){
 }
 
 static public IPersistentVector vector(Object... init){
+	if(init.length <= Tuple.MAX_SIZE)
+		return Tuple.createFromArray(init);
 	return LazilyPersistentVector.createOwning(init);
 }
 
@@ -0,0 +1,532 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+/**
+ * Vectors of up to MAX_SIZE items held in fields, made by vector literals and
+ * vector. They hash and compare as any other vector, caching their hashes, and
+ * conj, pop and assoc stay tuples while they fit. Anything needing a trie
+ * (metadata, transients, growing past MAX_SIZE) is done on a PersistentVector
+ * copy.
+ */
+public class Tuple{
+
+static public final int MAX_SIZE = 6;
+
+static public IPersistentVector create(){
+	return PersistentVector.EMPTY;
+}
+
+static public T1 create(Object v0){
+	return new T1(v0);
+}
+
+static public T2 create(Object v0, Object v1){
+	return new T2(v0, v1);
+}
+
+static public T3 create(Object v0, Object v1, Object v2){
+	return new T3(v0, v1, v2);
+}
+
+static public T4 create(Object v0, Object v1, Object v2, Object v3){
+	return new T4(v0, v1, v2, v3);
+}
+
+static public T5 create(Object v0, Object v1, Object v2, Object v3, Object v4){
+	return new T5(v0, v1, v2, v3, v4);
+}
+
+static public T6 create(Object v0, Object v1, Object v2, Object v3, Object v4, Object v5){
+	return new T6(v0, v1, v2, v3, v4, v5);
+}
+
+/**
+ * A tuple of the items, or a PersistentVector owning the array when there are
+ * more than MAX_SIZE.
+ */
+static public IPersistentVector createFromArray(Object[] items){
+	switch(items.length)
+		{
+		case 0:
+			return PersistentVector.EMPTY;
+		case 1:
+			return new T1(items[0]);
+		case 2:
+			return new T2(items[0], items[1]);
+		case 3:
+			return new T3(items[0], items[1], items[2]);
+		case 4:
+			return new T4(items[0], items[1], items[2], items[3]);
+		case 5:
+			return new T5(items[0], items[1], items[2], items[3], items[4]);
+		case 6:
+			return new T6(items[0], items[1], items[2], items[3], items[4], items[5]);
+		}
+	return LazilyPersistentVector.createOwning(items);
+}
+
+static public abstract class ATuple extends APersistentVector implements IObj, IEditableCollection, IReduce{
+
+	//read back from the #=(clojure.lang.Tuple$Tn/create [...]) print-dup writes for collections
+	static public IPersistentVector create(Object coll){
+		return createFromArray(RT.toArray(coll));
+	}
+
+	PersistentVector vec(){
+		return new PersistentVector(count(), 5, PersistentVector.EMPTY_NODE, toArray());
+	}
+
+	public IPersistentMap meta(){
+		return null;
+	}
+
+	public IObj withMeta(IPersistentMap meta){
+		if(meta == null)
+			return this;
+		return vec().withMeta(meta);
+	}
+
+	public IPersistentCollection empty(){
+		return PersistentVector.EMPTY;
+	}
+
+	public ITransientCollection asTransient(){
+		return vec().asTransient();
+	}
+
+	public Object[] toArray(){
+		Object[] ret = new Object[count()];
+		for(int i = 0; i < ret.length; i++)
+			ret[i] = nth(i);
+		return ret;
+	}
+
+	public int hashCode(){
+		if(_hash == -1)
+			{
+			int hash = 1;
+			for(int i = 0; i < count(); i++)
+				{
+				Object obj = nth(i);
+				hash = 31 * hash + (obj == null ? 0 : obj.hashCode());
+				}
+			_hash = hash;
+			}
+		return _hash;
+	}
+
+	//as Murmur3.hashOrdered, without an iterator
+	public int hasheq(){
+		if(_hasheq == -1)
+			{
+			int hash = 1;
+			for(int i = 0; i < count(); i++)
+				hash = 31 * hash + Util.hasheq(nth(i));
+			_hasheq = Murmur3.mixCollHash(hash, count());
+			}
+		return _hasheq;
+	}
+
+	public boolean equiv(Object obj){
+		if(this == obj)
+			return true;
+		if(obj instanceof ATuple)
+			{
+			ATuple t = (ATuple) obj;
+			if(t.count() != count())
+				return false;
+			for(int i = 0; i < count(); i++)
+				if(!Util.equiv(nth(i), t.nth(i)))
+					return false;
+			return true;
+			}
+		return super.equiv(obj);
+	}
+
+	public boolean equals(Object obj){
+		if(this == obj)
+			return true;
+		if(obj instanceof ATuple)
+			{
+			ATuple t = (ATuple) obj;
+			if(t.count() != count() || t.hashCode() != hashCode())
+				return false;
+			for(int i = 0; i < count(); i++)
+				if(!Util.equals(nth(i), t.nth(i)))
+					return false;
+			return true;
+			}
+		return super.equals(obj);
+	}
+
+	public Object reduce(IFn f){
+		Object ret = nth(0);
+		for(int i = 1; i < count(); i++)
+			{
+			ret = f.invoke(ret, nth(i));
+			if(RT.isReduced(ret))
+				return ((IDeref) ret).deref();
+			}
+		return ret;
+	}
+
+	public Object reduce(IFn f, Object init){
+		for(int i = 0; i < count(); i++)
+			{
+			init = f.invoke(init, nth(i));
+			if(RT.isReduced(init))
+				return ((IDeref) init).deref();
+			}
+		return init;
+	}
+
+	public Object kvreduce(IFn f, Object init){
+		for(int i = 0; i < count(); i++)
+			{
+			init = f.invoke(init, i, nth(i));
+			if(RT.isReduced(init))
+				return ((IDeref) init).deref();
+			}
+		return init;
+	}
+}
+
+static public final class T1 extends ATuple{
+	public final Object v0;
+
+	public T1(Object v0){
+		this.v0 = v0;
+	}
+
+	public int count(){
+		return 1;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T1(val);
+			case 1:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new T2(v0, o);
+	}
+
+	public IPersistentStack pop(){
+		return PersistentVector.EMPTY;
+	}
+}
+
+static public final class T2 extends ATuple{
+	public final Object v0;
+	public final Object v1;
+
+	public T2(Object v0, Object v1){
+		this.v0 = v0;
+		this.v1 = v1;
+	}
+
+	public int count(){
+		return 2;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			case 1:
+				return v1;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T2(val, v1);
+			case 1:
+				return new T2(v0, val);
+			case 2:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new T3(v0, v1, o);
+	}
+
+	public IPersistentStack pop(){
+		return new T1(v0);
+	}
+}
+
+static public final class T3 extends ATuple{
+	public final Object v0;
+	public final Object v1;
+	public final Object v2;
+
+	public T3(Object v0, Object v1, Object v2){
+		this.v0 = v0;
+		this.v1 = v1;
+		this.v2 = v2;
+	}
+
+	public int count(){
+		return 3;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			case 1:
+				return v1;
+			case 2:
+				return v2;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T3(val, v1, v2);
+			case 1:
+				return new T3(v0, val, v2);
+			case 2:
+				return new T3(v0, v1, val);
+			case 3:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new T4(v0, v1, v2, o);
+	}
+
+	public IPersistentStack pop(){
+		return new T2(v0, v1);
+	}
+}
+
+static public final class T4 extends ATuple{
+	public final Object v0;
+	public final Object v1;
+	public final Object v2;
+	public final Object v3;
+
+	public T4(Object v0, Object v1, Object v2, Object v3){
+		this.v0 = v0;
+		this.v1 = v1;
+		this.v2 = v2;
+		this.v3 = v3;
+	}
+
+	public int count(){
+		return 4;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			case 1:
+				return v1;
+			case 2:
+				return v2;
+			case 3:
+				return v3;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T4(val, v1, v2, v3);
+			case 1:
+				return new T4(v0, val, v2, v3);
+			case 2:
+				return new T4(v0, v1, val, v3);
+			case 3:
+				return new T4(v0, v1, v2, val);
+			case 4:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new T5(v0, v1, v2, v3, o);
+	}
+
+	public IPersistentStack pop(){
+		return new T3(v0, v1, v2);
+	}
+}
+
+static public final class T5 extends ATuple{
+	public final Object v0;
+	public final Object v1;
+	public final Object v2;
+	public final Object v3;
+	public final Object v4;
+
+	public T5(Object v0, Object v1, Object v2, Object v3, Object v4){
+		this.v0 = v0;
+		this.v1 = v1;
+		this.v2 = v2;
+		this.v3 = v3;
+		this.v4 = v4;
+	}
+
+	public int count(){
+		return 5;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			case 1:
+				return v1;
+			case 2:
+				return v2;
+			case 3:
+				return v3;
+			case 4:
+				return v4;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T5(val, v1, v2, v3, v4);
+			case 1:
+				return new T5(v0, val, v2, v3, v4);
+			case 2:
+				return new T5(v0, v1, val, v3, v4);
+			case 3:
+				return new T5(v0, v1, v2, val, v4);
+			case 4:
+				return new T5(v0, v1, v2, v3, val);
+			case 5:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new T6(v0, v1, v2, v3, v4, o);
+	}
+
+	public IPersistentStack pop(){
+		return new T4(v0, v1, v2, v3);
+	}
+}
+
+static public final class T6 extends ATuple{
+	public final Object v0;
+	public final Object v1;
+	public final Object v2;
+	public final Object v3;
+	public final Object v4;
+	public final Object v5;
+
+	public T6(Object v0, Object v1, Object v2, Object v3, Object v4, Object v5){
+		this.v0 = v0;
+		this.v1 = v1;
+		this.v2 = v2;
+		this.v3 = v3;
+		this.v4 = v4;
+		this.v5 = v5;
+	}
+
+	public int count(){
+		return 6;
+	}
+
+	public Object nth(int i){
+		switch(i)
+			{
+			case 0:
+				return v0;
+			case 1:
+				return v1;
+			case 2:
+				return v2;
+			case 3:
+				return v3;
+			case 4:
+				return v4;
+			case 5:
+				return v5;
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector assocN(int i, Object val){
+		switch(i)
+			{
+			case 0:
+				return new T6(val, v1, v2, v3, v4, v5);
+			case 1:
+				return new T6(v0, val, v2, v3, v4, v5);
+			case 2:
+				return new T6(v0, v1, val, v3, v4, v5);
+			case 3:
+				return new T6(v0, v1, v2, val, v4, v5);
+			case 4:
+				return new T6(v0, v1, v2, v3, val, v5);
+			case 5:
+				return new T6(v0, v1, v2, v3, v4, val);
+			case 6:
+				return cons(val);
+			}
+		throw new IndexOutOfBoundsException();
+	}
+
+	public IPersistentVector cons(Object o){
+		return new PersistentVector(7, 5, PersistentVector.EMPTY_NODE, new Object[]{v0, v1, v2, v3, v4, v5, o});
+	}
+
+	public IPersistentStack pop(){
+		return new T5(v0, v1, v2, v3, v4);
+	}
+}
+}
@@ -0,0 +1,99 @@
+/**
+ *   Copyright (c) Rich Hickey. All rights reserved.
+ *   The use and distribution terms for this software are covered by the
+ *   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+ *   which can be found in the file epl-v10.html at the root of this distribution.
+ *   By using this software in any fashion, you are agreeing to be bound by
+ * 	 the terms of this license.
+ *   You must not remove this notice, or any other, from this software.
+ **/
+
+package clojure.lang;
+
+import java.util.UUID;
+
+/**
+ * Reads and prints #uuid literals for clojure.uuid. The canonical 36 char form
+ * is converted straight to and from the two longs of a UUID, anything else is
+ * left to UUID.fromString, which accepts and rejects it as it always has.
+ */
+public class UUIDs{
+
+//the literal #uuid "xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx"
+static public final int LENGTH = 44;
+
+static final char[] HEX = "0123456789abcdef".toCharArray();
+
+static int hex(char c){
+	if(c >= '0' && c <= '9')
+		return c - '0';
+	if(c >= 'a' && c <= 'f')
+		return c - 'a' + 10;
+	if(c >= 'A' && c <= 'F')
+		return c - 'A' + 10;
+	return -1;
+}
+
+//the bits of hex digits from i to end, or -1 (an impossible result for the 8 digits taken at most) if not hex
+static long hex(String s, int i, int end){
+	long v = 0;
+	for(; i < end; i++)
+		{
+		int d = hex(s.charAt(i));
+		if(d < 0)
+			return -1;
+		v = (v << 4) | d;
+		}
+	return v;
+}
+
+static public UUID parse(String s){
+	if(s.length() == 36 && s.charAt(8) == '-' && s.charAt(13) == '-' && s.charAt(18) == '-' && s.charAt(23) == '-')
+		{
+		long a = hex(s, 0, 8);
+		long b = hex(s, 9, 13);
+		long c = hex(s, 14, 18);
+		long d = hex(s, 19, 23);
+		long e = hex(s, 24, 30);
+		long f = hex(s, 30, 36);
+		if((a | b | c | d | e | f) >= 0)
+			return new UUID(a << 32 | b << 16 | c, d << 48 | e << 24 | f);
+		}
+	return UUID.fromString(s);
+}
+
+static void putHex(char[] buf, int i, long v, int digits){
+	for(int j = i + digits - 1; j >= i; j--)
+		{
+		buf[j] = HEX[(int) (v & 0xF)];
+		v >>>= 4;
+		}
+}
+
+/**
+ * Writes the literal of u into buf at i, which must have room for LENGTH
+ * chars, and returns its end.
+ */
+static public int print(UUID u, char[] buf, int i){
+	"#uuid \"".getChars(0, 7, buf, i);
+	i += 7;
+	long hi = u.getMostSignificantBits();
+	long lo = u.getLeastSignificantBits();
+	putHex(buf, i, hi >>> 32, 8);
+	buf[i + 8] = '-';
+	putHex(buf, i + 9, hi >>> 16, 4);
+	buf[i + 13] = '-';
+	putHex(buf, i + 14, hi, 4);
+	buf[i + 18] = '-';
+	putHex(buf, i + 19, lo >>> 48, 4);
+	buf[i + 23] = '-';
+	putHex(buf, i + 24, lo, 12);
+	buf[i + 36] = '"';
+	return i + 37;
+}
+
+static public String printString(UUID u){
+	char[] buf = new char[LENGTH];
+	return new String(buf, 0, print(u, buf, 0));
+}
+}
@@ -164,12 +164,13 @@ static public int hash(Object o){
 public static int hasheq(Object o){
 	if(o == null)
 		return 0;
+	//String is final and caches its hashCode, test it before the interfaces
+	if(o instanceof String)
+		return Murmur3.hashInt(o.hashCode());
 	if(o instanceof IHashEq)
 		return dohasheq((IHashEq) o);	
 	if(o instanceof Number)
 		return Numbers.hasheq((Number)o);
-	if(o instanceof String)
-		return Murmur3.hashInt(o.hashCode());
 	return o.hashCode();
 }
 
@@ -0,0 +1,57 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; BinaryWriter and BinaryReader against pr-str/read-string, edn and Java
+;; serialization, writing and reading a vector of event maps. Not run by the
+;; test suite, see clojure.bench.timing for how to run it. Prints the size
+;; of each encoding, and the best ms of runs (default 10) for each case,
+;; after warmup.
+
+(ns clojure.bench.binary-format
+  (:require [clojure.edn :as edn]
+            [clojure.bench.timing :as t])
+  (:import (clojure.lang BinaryWriter BinaryReader)
+           (java.io ByteArrayInputStream ByteArrayOutputStream
+                    ObjectInputStream ObjectOutputStream)))
+
+(defn- serialize ^bytes [x]
+  (let [bout (ByteArrayOutputStream.)]
+    (with-open [out (ObjectOutputStream. bout)]
+      (.writeObject out x))
+    (.toByteArray bout)))
+
+(defn- deserialize [^bytes b]
+  (with-open [in (ObjectInputStream. (ByteArrayInputStream. b))]
+    (.readObject in)))
+
+(defn -main [& args]
+  (let [runs (t/runs args 10)
+        n 50000
+        events (vec (for [i (range n)]
+                      {:id i
+                       :type (nth [:click :view :purchase] (mod i 3))
+                       :user (str "user-" (mod i 977))
+                       :at (java.util.Date. (+ 1400000000000 (* i 1000)))
+                       :session (java.util.UUID. i (* 31 i))
+                       :amount (/ i 100.0)
+                       :items (vec (range (mod i 5)))
+                       :tags #{(keyword "tag" (str "t" (mod i 11))) 'sym}
+                       :ok (even? i)}))
+        s (pr-str events)
+        java (serialize events)
+        bin (BinaryWriter/toBytes events)]
+    (assert (= events (read-string s) (edn/read-string s) (deserialize java) (BinaryReader/fromBytes bin)))
+    (println (format "%d event maps: pr-str %,d chars, Java serialization %,d bytes, binary %,d bytes"
+                     n (count s) (alength java) (alength bin)))
+    (t/bench "write, pr-str" runs #(pr-str events))
+    (t/bench "write, Java serialization" runs #(serialize events))
+    (t/bench "write, BinaryWriter" runs #(BinaryWriter/toBytes events))
+    (t/bench "read, read-string" runs #(read-string s))
+    (t/bench "read, edn/read-string" runs #(edn/read-string s))
+    (t/bench "read, Java serialization" runs #(deserialize java))
+    (t/bench "read, BinaryReader" runs #(BinaryReader/fromBytes bin))))
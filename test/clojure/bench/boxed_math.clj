@@ -0,0 +1,40 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; Boxed arithmetic in reduce over vectors. Not run by the test suite, see
+;; clojure.bench.timing for how to run it. Prints the best ns/element of runs
+;; (default 40) for each case, after warmup.
+
+(ns clojure.bench.boxed-math
+  (:require [clojure.bench.timing :as t]))
+
+(def ^:private n 200000)
+
+(defn- bench [runs label f]
+  (t/bench label runs f n "element"))
+
+(defn -main [& args]
+  (let [runs (t/runs args 40)
+        longs (vec (range n))
+        doubles (mapv double longs)
+        mixed (vec (interleave (take (/ n 2) longs) (take (/ n 2) doubles)))
+        ratios (mapv #(/ % 3) (range 1 100))]
+    ;; make the call sites see every number type before timing
+    (dotimes [_ 100]
+      (doseq [v [longs doubles mixed ratios (mapv bigint (range 100))]]
+        (reduce + v) (reduce max v) (reduce (fn [a b] (if (< a b) b a)) v)))
+    (bench runs "reduce + longs" #(reduce + longs))
+    (bench runs "reduce + doubles" #(reduce + doubles))
+    (bench runs "reduce + longs/doubles" #(reduce + mixed))
+    (bench runs "reduce +' longs" #(reduce +' longs))
+    (bench runs "reduce - longs" #(reduce - longs))
+    (bench runs "reduce * doubles" #(reduce * doubles))
+    (bench runs "reduce max longs" #(reduce max longs))
+    (bench runs "reduce < longs" #(reduce (fn [a b] (if (< a b) b a)) longs))
+    (bench runs "reduce inc count longs" #(reduce (fn [c _] (inc c)) 0 longs))
+    (bench runs "sort longs" #(sort (rseq longs)))))
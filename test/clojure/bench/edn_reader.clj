@@ -0,0 +1,54 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; clojure.edn/buffer-reader against edn/read over a PushbackReader, reading
+;; a log of event maps. Not run by the test suite, see clojure.bench.timing
+;; for how to run it. Prints the best ms of runs (default 10) for each case,
+;; after warmup.
+
+(ns clojure.bench.edn-reader
+  (:require [clojure.edn :as edn]
+            [clojure.bench.timing :as t])
+  (:import (java.io PushbackReader StringReader)))
+
+(defn- read-all
+  "Count of the objects read from stream."
+  [stream]
+  (let [eof (Object.)
+        opts {:eof eof}]
+    (loop [n 0]
+      (if (identical? eof (edn/read opts stream))
+        n
+        (recur (inc n))))))
+
+(defn -main [& args]
+  (let [runs (t/runs args 10)
+        n 20000
+        events (for [i (range n)]
+                 {:id i
+                  :type (nth [:click :view :purchase] (mod i 3))
+                  :user (str "user-" (mod i 977))
+                  :at (java.util.Date. (+ 1400000000000 (* i 1000)))
+                  :session (java.util.UUID. i (* 31 i))
+                  :amount (/ i 100.0)
+                  :items (vec (range (mod i 5)))
+                  :tags #{(keyword "tag" (str "t" (mod i 11))) 'sym}
+                  :ok (even? i)})
+        log (apply str (interleave (map pr-str events) (repeat "\n")))
+        all (str "[" log "]")
+        mb (/ (count log) 1048576.0)]
+    (assert (= n (read-all (PushbackReader. (StringReader. log)))
+               (read-all (edn/buffer-reader log))
+               (count (edn/read-string all))))
+    (println (format "%d event maps, %.1f MB" n mb))
+    (t/bench "edn/read, PushbackReader" runs #(read-all (PushbackReader. (StringReader. log))))
+    (t/bench "edn/read-string of a vector of them" runs #(edn/read-string all))
+    (t/bench "edn/read, buffer-reader over String" runs #(read-all (edn/buffer-reader log)))
+    (t/bench "edn/read, buffer-reader over Reader" runs #(read-all (edn/buffer-reader (StringReader. log))))
+    (t/bench "read-elements of a vector of them" runs
+             #(reduce (fn [n _] (inc n)) 0 (edn/read-elements (StringReader. all))))))
@@ -0,0 +1,71 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; clojure.set/join and hash-join against the join they replaced, which
+;; indexed on select-keys maps. Not run by the test suite, see
+;; clojure.bench.timing for how to run it. Prints the best ms of runs
+;; (default 10) for each case, after warmup.
+
+(ns clojure.bench.hash-join
+  (:require [clojure.set :as set]
+            [clojure.bench.timing :as t]))
+
+(defn- old-index [xrel ks]
+  (reduce
+   (fn [m x]
+     (let [ik (select-keys x ks)]
+       (assoc m ik (conj (get m ik #{}) x))))
+   {} xrel))
+
+(defn- old-join
+  ([xrel yrel]
+   (if (and (seq xrel) (seq yrel))
+     (let [ks (set/intersection (set (keys (first xrel))) (set (keys (first yrel))))
+           [r s] (if (<= (count xrel) (count yrel))
+                   [xrel yrel]
+                   [yrel xrel])
+           idx (old-index r ks)]
+       (reduce (fn [ret x]
+                 (let [found (idx (select-keys x ks))]
+                   (if found
+                     (reduce #(conj %1 (merge %2 x)) ret found)
+                     ret)))
+               #{} s))
+     #{}))
+  ([xrel yrel km]
+   (let [[r s k] (if (<= (count xrel) (count yrel))
+                   [xrel yrel (set/map-invert km)]
+                   [yrel xrel km])
+         idx (old-index r (vals k))]
+     (reduce (fn [ret x]
+               (let [found (idx (set/rename-keys (select-keys x (keys k)) k))]
+                 (if found
+                   (reduce #(conj %1 (merge %2 x)) ret found)
+                   ret)))
+             #{} s))))
+
+(defn- count-reduced [coll]
+  (reduce (fn [n _] (inc n)) 0 coll))
+
+(defn -main [& args]
+  (let [runs (t/runs args 10)
+        customers (set (for [i (range 1000)] {:customer i :name (str "c" i) :region (mod i 7)}))
+        orders (set (for [i (range 100000)] {:order i :customer (mod (* i 31) 1200) :total (mod i 97)}))
+        regions (set (for [i (range 7)] {:region-id i :region-name (str "r" i)}))
+        sales (set (for [i (range 100000)] {:order i :region (mod i 7) :year (+ 2000 (mod i 3))}))
+        targets (set (for [r (range 7) y (range 2000 2003)] {:region r :year y :target (* r y)}))]
+    (assert (= (old-join customers orders) (set/join customers orders)))
+    (assert (= (old-join regions customers {:region-id :region}) (set/join regions customers {:region-id :region})))
+    (assert (= (old-join targets sales) (set/join targets sales)))
+    (doseq [[label x y km] [["natural, 1k x 100k on one key" customers orders]
+                            ["natural, 21 x 100k on two keys" targets sales]
+                            ["keymap, 7 x 1k" regions customers {:region-id :region}]]]
+      (let [args (if km [x y km] [x y])]
+        (t/bench (str label ", old join") runs #(apply old-join args))
+        (t/bench (str label ", join") runs #(apply set/join args))
+        (t/bench (str label ", hash-join") runs #(count-reduced (apply set/hash-join args)))))))
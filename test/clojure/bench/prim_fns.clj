@@ -0,0 +1,64 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; Calls of fns with primitive signatures the IFn$ interfaces can't express
+;; (int, float and boolean, or more than 4 args), against the same fns
+;; unhinted, which box their args and results. Not run by the test suite,
+;; see clojure.bench.timing for how to run it. Prints the best ns/call of
+;; runs (default 10) for each case, after warmup, and the bytes allocated
+;; per call, as counted by the JVM for the calling thread. Escape analysis
+;; can remove boxing once calls are inlined, so allocation may be 0 even
+;; for the boxed fns.
+
+(ns clojure.bench.prim-fns
+  (:require [clojure.bench.timing :as t])
+  (:import (java.lang.management ManagementFactory)))
+
+(def ^:private ^:const n 10000000)
+
+;; past the Long cache, so boxing allocates
+(def ^:private ^:const base 1000000)
+
+(defn six-longs ^long [^long a ^long b ^long c ^long d ^long e ^long f] (+ a b c d e f))
+(defn six-boxed [a b c d e f] (+ a b c d e f))
+(defn two-ints ^long [^int a ^int b] (+ a b))
+(defn two-boxed [a b] (+ a b))
+(defn float-scale ^double [^float x ^double s] (* x s))
+(defn boxed-scale [x s] (* x s))
+(defn between ^boolean [^long lo ^long x ^long hi] (and (<= lo x) (< x hi)))
+(defn boxed-between [lo x hi] (and (<= lo x) (< x hi)))
+
+(defn- allocated-bytes []
+  (.getThreadAllocatedBytes ^com.sun.management.ThreadMXBean (ManagementFactory/getThreadMXBean)
+                            (.getId (Thread/currentThread))))
+
+(defn- bench [runs label f]
+  (let [ns (t/best-ns runs f)
+        before (allocated-bytes)]
+    (f)
+    (println (format "%-28s %8.2f ns/call %8.1f B/call"
+                     label (/ ns (double n)) (/ (- (allocated-bytes) before) (double n))))))
+
+(defn -main [& args]
+  (let [runs (t/runs args 10)]
+    (bench runs "6 longs, prim"
+           #(loop [i base acc 0] (if (< i (+ base n)) (recur (inc i) (+ acc (six-longs i i i i i i))) acc)))
+    (bench runs "6 args, boxed"
+           #(loop [i base acc 0] (if (< i (+ base n)) (recur (inc i) (+ acc (six-boxed i i i i i i))) acc)))
+    (bench runs "2 ints, prim"
+           #(loop [i base acc 0] (if (< i (+ base n)) (let [j (unchecked-int i)] (recur (inc i) (+ acc (two-ints j j)))) acc)))
+    (bench runs "2 args, boxed"
+           #(loop [i base acc 0] (if (< i (+ base n)) (let [j (unchecked-int i)] (recur (inc i) (+ acc (two-boxed j j)))) acc)))
+    (bench runs "float and double, prim"
+           #(loop [i base acc 0.0] (if (< i (+ base n)) (recur (inc i) (+ acc (float-scale (float i) 0.5))) acc)))
+    (bench runs "float and double, boxed"
+           #(loop [i base acc 0.0] (if (< i (+ base n)) (recur (inc i) (+ acc (boxed-scale (float i) 0.5))) acc)))
+    (bench runs "3 longs to boolean, prim"
+           #(loop [i base acc 0] (if (< i (+ base n)) (recur (inc i) (if (between base i (+ base 100)) (inc acc) acc)) acc)))
+    (bench runs "3 args to boolean, boxed"
+           #(loop [i base acc 0] (if (< i (+ base n)) (recur (inc i) (if (boxed-between base i (+ base 100)) (inc acc) acc)) acc)))))
@@ -0,0 +1,43 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; Draining and reducing queues, against vectors and lists. Not run by the
+;; test suite, see clojure.bench.timing for how to run it. Prints the best ms
+;; of runs (default 15) for each case, after warmup, over 1M longs.
+
+(ns clojure.bench.queue-drain
+  (:require [clojure.bench.timing :as t]))
+
+(def ^:private n 1000000)
+
+(defn- bench [runs label f]
+  (t/bench label runs f))
+
+(defn- drain
+  "Sum of q, taken with peek and pop."
+  [q]
+  (loop [q q acc 0]
+    (if (empty? q)
+      acc
+      (recur (pop q) (+ acc (peek q))))))
+
+(defn -main [& args]
+  (let [runs (t/runs args 15)
+        q (into clojure.lang.PersistentQueue/EMPTY (range n))
+        popped (pop q)
+        v (vec (range n))
+        l (apply list (range n))]
+    (bench runs "queue peek/pop drain" #(drain q))
+    (bench runs "vector nth walk" #(loop [i 0 acc 0] (if (< i n) (recur (inc i) (+ acc (nth v i))) acc)))
+    (bench runs "queue reduce +" #(reduce + q))
+    (bench runs "popped queue reduce +" #(reduce + popped))
+    (bench runs "vector reduce +" #(reduce + v))
+    (bench runs "list reduce +" #(reduce + l))
+    (bench runs "queue (count (filter odd? (map inc)))" #(count (filter odd? (map inc q))))
+    (bench runs "vector (count (filter odd? (map inc)))" #(count (filter odd? (map inc v))))
+    (bench runs "list (count (filter odd? (map inc)))" #(count (filter odd? (map inc l))))))
@@ -0,0 +1,39 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; LispReader throughput, reading every form of clojure/core.clj and of a
+;; large data literal through a LineNumberingPushbackReader, as load does.
+;; Not run by the test suite, see clojure.bench.timing for how to run it.
+;; Prints the best ms of runs (default 20) for each case, after warmup. To
+;; compare readers, run it against jars of each.
+
+(ns clojure.bench.reader
+  (:require [clojure.java.io :as io]
+            [clojure.bench.timing :as t])
+  (:import (clojure.lang LineNumberingPushbackReader)
+           (java.io StringReader)))
+
+(defn- read-all
+  "Count of the forms in s."
+  [^String s]
+  (let [r (LineNumberingPushbackReader. (StringReader. s))
+        eof (Object.)]
+    (binding [*ns* (the-ns 'clojure.core)]
+      (loop [n 0]
+        (if (identical? eof (read r false eof))
+          n
+          (recur (inc n)))))))
+
+(defn -main [& args]
+  (let [runs (t/runs args 20)
+        core (slurp (io/resource "clojure/core.clj"))
+        data (pr-str (vec (for [i (range 20000)]
+                            {:id i :name (str "item-" i) :price (/ i 7.0) :ratio (/ i 7)
+                             :tags #{:a (keyword (str "t" (mod i 13)))} :ref 'some.ns/sym})))]
+    (t/bench (format "clojure/core.clj (%d KB)" (quot (count core) 1024)) runs #(read-all core))
+    (t/bench (format "20k-map data literal (%d KB)" (quot (count data) 1024)) runs #(read-all data))))
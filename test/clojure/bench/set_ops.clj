@@ -0,0 +1,62 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+;; clojure.set union, intersection and difference of hash sets, which merge
+;; the tries, against the reduce conj/disj they replaced. Not run by the test
+;; suite, see clojure.bench.timing for how to run it. Prints the best ms of
+;; runs (default 7) for each case, after warmup.
+;;
+;; Sets of 65536 elements or more are merged on a fork/join pool. Run with
+;; -XX:ActiveProcessorCount=1 to see them merged on one core.
+
+(ns clojure.bench.set-ops
+  (:require [clojure.set :as set]
+            [clojure.bench.timing :as t]))
+
+(defn- old-union [s1 s2]
+  (if (< (count s1) (count s2))
+    (reduce conj s2 s1)
+    (reduce conj s1 s2)))
+
+(defn- old-intersection [s1 s2]
+  (if (< (count s2) (count s1))
+    (recur s2 s1)
+    (reduce (fn [result item]
+              (if (contains? s2 item)
+                result
+                (disj result item)))
+            s1 s1)))
+
+(defn- old-difference [s1 s2]
+  (if (< (count s1) (count s2))
+    (reduce (fn [result item]
+              (if (contains? s2 item)
+                (disj result item)
+                result))
+            s1 s1)
+    (reduce disj s1 s2)))
+
+(defn- compare-ops [runs label s1 s2]
+  (doseq [[op old-op new-op] [["union" old-union set/union]
+                        ["intersection" old-intersection set/intersection]
+                        ["difference" old-difference set/difference]]]
+    (t/bench (str op ", " label ", old") runs #(old-op s1 s2))
+    (t/bench (str op ", " label ", new") runs #(new-op s1 s2))))
+
+(defn -main [& args]
+  (let [runs (t/runs args 7)
+        n 1000000
+        big (set (range n))
+        r (java.util.Random. 42)
+        rand-set (fn [n] (set (repeatedly n #(.nextInt r (int (* 1.5 n))))))]
+    (println "processors:" (.availableProcessors (Runtime/getRuntime)))
+    (compare-ops runs "1M sharing all but 1k" (into big (range n (+ n 1000))) (reduce disj big (range 1000)))
+    (compare-ops runs "1M random, half overlap" (rand-set n) (rand-set n))
+    (compare-ops runs "100k random, half overlap" (rand-set 100000) (rand-set 100000))
+    (compare-ops runs "50k random, half overlap" (rand-set 50000) (rand-set 50000))
+    (compare-ops runs "1M and 1k" big (set (range (- n 500) (+ n 500))))))
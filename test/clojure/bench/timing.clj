@@ -0,0 +1,56 @@
+;   Copyright (c) Rich Hickey. All rights reserved.
+;   The use and distribution terms for this software are covered by the
+;   Eclipse Public License 1.0 (http://opensource.org/licenses/eclipse-1.0.php)
+;   which can be found in the file epl-v10.html at the root of this distribution.
+;   By using this software in any fashion, you are agreeing to be bound by
+;   the terms of this license.
+;   You must not remove this notice, or any other, from this software.
+
+(ns clojure.bench.timing
+  "System/nanoTime timing for the benchmarks in test/clojure/bench. There is
+  no JMH harness in this build. Each case is instead run for a warmup period,
+  long enough for the JIT to compile it, and then timed a number of runs, the
+  best of which is reported.
+
+  The benchmarks are namespaces with a -main, and are not run by the test
+  suite. Run each in a JVM of its own, so that the profile one builds up
+  doesn't skew the next:
+
+    java -server -cp <clojure jar>:test clojure.main -m clojure.bench.<name> [runs]
+
+  where runs is the number of timed runs of each case."
+  (:import (java.util.concurrent.atomic AtomicReference)))
+
+(def ^:dynamic *warmup-ms*
+  "Time, in ms, each case is run for before it is timed."
+  2000)
+
+;; results are kept here, so the JIT can't find them unused
+(def ^:private ^AtomicReference sink (AtomicReference.))
+
+(defn best-ns
+  "Calls (f) for *warmup-ms*, then times runs calls, returning the least
+  time in ns."
+  [runs f]
+  (let [end (+ (System/nanoTime) (* *warmup-ms* 1000000))]
+    (while (< (System/nanoTime) end)
+      (.lazySet sink (f))))
+  (loop [i 0 best Long/MAX_VALUE]
+    (if (< i runs)
+      (let [t (System/nanoTime)]
+        (.lazySet sink (f))
+        (recur (inc i) (min best (- (System/nanoTime) t))))
+      best)))
+
+(defn runs
+  "The number of timed runs given as the first of args, or default."
+  [args default]
+  (if (seq args) (Long/parseLong (first args)) default))
+
+(defn bench
+  "Prints label and the best time of runs calls of (f), after warmup, in ms,
+  or in ns per each of n things if given, e.g. (bench label runs f n \"element\")."
+  ([label runs f]
+     (println (format "%-44s %10.2f ms" label (/ (best-ns runs f) 1e6))))
+  ([label runs f n thing]
+     (println (format "%-44s %10.2f ns/%s" label (/ (best-ns runs f) (double n)) thing))))
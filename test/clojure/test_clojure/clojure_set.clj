@@ -124,6 +124,62 @@
       (set/difference #{1 2 3} #{1 3 4} #{1 3}) #{2}
       (set/difference #{1 2 3} #{3 4 5} #{8 2 3}) #{1} ))
 
+(deftype CollidingElement [n]
+  clojure.lang.IHashEq
+  (hasheq [_] (mod n 3))
+  Object
+  (hashCode [_] (mod n 3))
+  (equals [_ o] (and (instance? CollidingElement o) (= n (.n ^CollidingElement o)))))
+
+(deftest test-hash-set-merges
+  (let [check (fn [s1 s2]
+                (let [u (set/union s1 s2) i (set/intersection s1 s2) d (set/difference s1 s2)]
+                  (is (= u (into (set s1) s2) (set (concat s1 s2))))
+                  (is (= i (set (filter #(contains? s2 %) s1))))
+                  (is (= d (set (remove #(contains? s2 %) s1))))
+                  (is (= (count u) (count (seq u))))
+                  (is (= (count i) (count (seq i))))
+                  (is (= (count d) (count (seq d))))))
+        a (set (range 5000))]
+    (testing "shared structure"
+      (check a (into a (range 5000 5100)))
+      (check (into a (range 5000 5100)) a)
+      (check a (reduce disj a (range 0 5000 7)))
+      (check (reduce disj a (range 0 5000 7)) a)
+      (check a a))
+    (testing "unrelated sets of any size"
+      (doseq [n [0 1 10 100 1000 20000] m [0 1 10 100 1000 20000]]
+        (check (set (range n)) (set (range (quot n 2) (+ (quot n 2) m))))))
+    (testing "nil and colliding elements"
+      (let [cs (map ->CollidingElement (range 20))]
+        (check (set (cons nil (take 12 cs))) (set (drop 8 cs)))
+        (check (set (take 12 cs)) (set (cons nil (drop 8 cs))))
+        (check (into a (take 12 cs)) (into (set (range 2500 7500)) (drop 8 cs)))))
+    (testing "large sets, merged in parallel without keeping the JVM alive"
+      (let [threads #(set (remove (fn [^Thread t] (.isDaemon t)) (keys (Thread/getAllStackTraces))))
+            before (threads)
+            s1 (set (range 100000))
+            s2 (set (range 50000 150000))]
+        (check s1 s2)
+        (check (into s1 (range 100000 100100)) s1)
+        (is (empty? (remove before (threads))))
+        (testing "from a fork/join pool"
+          (let [pool (java.util.concurrent.ForkJoinPool.)]
+            (try
+              (is (= (set (range 150000))
+                     (.invoke pool (java.util.concurrent.ForkJoinTask/adapt ^Callable #(set/union s1 s2)))))
+              (is (= (set (range 50000))
+                     (.invoke pool (java.util.concurrent.ForkJoinTask/adapt ^Callable #(set/difference s1 s2)))))
+              (finally (.shutdown pool)))))))
+    (testing "unchanged sets and metadata"
+      (let [m (with-meta a {:a 1})]
+        (is (identical? m (set/union m #{1 2})))
+        (is (identical? m (set/intersection m (conj a -1))))
+        (is (identical? m (set/difference m #{-1 -2})))
+        (is (= {:a 1} (meta (set/union m (set (range 4000 6000))))))
+        (is (= {:a 1} (meta (set/difference m #{1}))))
+        (is (= {:a 1} (meta (set/intersection m (conj a -1 -2)))))))))
+
 (deftest test-select
   (are [x y] (= x y)
     (set/select integer? #{}) #{}
@@ -176,8 +232,42 @@
     (set/join compositions compositions) compositions
     (set/join compositions #{{:name "Art of the Fugue" :genre "Classical"}})
                            #{{:name "Art of the Fugue" :composer "J. S. Bach" :genre "Classical"}}
+    (set/join compositions #{{:title "Requiem" :who "W. A. Mozart" :year 1791}}
+              {:name :title :composer :who})
+                           #{{:name "Requiem" :composer "W. A. Mozart" :title "Requiem" :who "W. A. Mozart" :year 1791}}
+    (set/join #{{:a 1} {:a nil} {}} #{{:a 1 :b 1} {:a nil :b 2} {:b 3}})
+                           #{{:a 1 :b 1} {:a nil :b 2} {:b 3}}
+    (set/join #{{:a 1}} #{{:b 2}}) #{{:a 1 :b 2}}
+    (set/join #{} compositions) #{}
     ))
 
+(deftest test-hash-join
+  (let [nations #{{:composer "J. S. Bach" :nation "Germany"}
+                  {:composer "W. A. Mozart" :nation "Austria"}}
+        by-nation #{{:composer "J. S. Bach" :name "Art of the Fugue" :nation "Germany"}
+                    {:composer "J. S. Bach" :name "Musical Offering" :nation "Germany"}
+                    {:composer "W. A. Mozart" :name "Requiem" :nation "Austria"}}]
+    (is (= by-nation (set (set/hash-join nations compositions))))
+    (is (= by-nation (set (set/hash-join nations compositions [:composer]))))
+    (is (= by-nation (set (set/hash-join nations compositions {:composer :composer}))))
+    (is (= (set/join nations compositions) (set (set/hash-join nations compositions))))
+    (is (= 3 (count (into [] (set/hash-join nations compositions)))))
+    (is (= 4 (count (seq (set/hash-join #{{:a 1} {:a 2}} [{:b 1} {:b 2}])))))
+    (is (= 1 (count (into [] (take 1) (set/hash-join nations compositions)))))
+    (is (empty? (set/hash-join #{} compositions)))
+    (is (empty? (set/hash-join nations [])))
+    (testing "a yrel that is only reducible"
+      (let [yrel (reify clojure.lang.IReduceInit
+                   (reduce [_ f init] (reduce f init compositions)))]
+        (is (= by-nation (set (into [] (set/hash-join nations yrel)))))
+        (is (= by-nation (set (into [] (set/hash-join nations yrel [:composer])))))))
+    (testing "multi-key joins on renamed keys"
+      (let [xrel (set (for [i (range 20) j (range 3)] {:i i :j j :x (* i j)}))
+            yrel (for [i (range 0 40 2) j (range 3)] {:ii i :jj j :y (+ i j)})]
+        (is (= (set (for [x xrel y yrel :when (and (= (:i x) (:ii y)) (= (:j x) (:jj y)))] (merge x y)))
+               (set (set/hash-join xrel yrel {:i :ii :j :jj}))
+               (set/join xrel (set yrel) {:i :ii :j :jj})))))))
+
 (deftest test-map-invert
   (are [x y] (= x y)
        (set/map-invert {:a "one" :b "two"}) {"one" :a "two" :b}))
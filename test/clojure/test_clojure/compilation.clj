@@ -10,12 +10,12 @@
 
 
 (ns clojure.test-clojure.compilation
-  (:import (clojure.lang Compiler Compiler$CompilerException))
+  (:import (clojure.lang Compiler Compiler$C Compiler$CompilerException))
   (:require [clojure.test.generative :refer (defspec)]
             [clojure.data.generators :as gen]
             [clojure.test-clojure.compilation.line-number-examples :as line])
   (:use clojure.test
-        [clojure.test-helper :only (should-not-reflect should-print-err-message)]))
+        [clojure.test-helper :only (should-not-reflect should-print-err-message with-err-string-writer)]))
 
 ; http://clojure.org/compilation
 
@@ -176,6 +176,116 @@
   (should-print-err-message #"(?s).*k is not matching primitive.*"
     #(loop [k (clojure.test-clojure.compilation/primfn)] (recur :foo))))
 
+(defn prim-int ^long [^int a ^int b] (+ a b))
+(defn prim-bool ^boolean [^long a] (> a 3))
+(defn prim-6 ^long [^long a ^long b ^long c ^long d ^long e ^long f] (+ a b c d e f))
+
+(deftest direct-primitive-fns
+  (is (= 3 (prim-int 1 2)))
+  (is (= 3 (apply prim-int [1 2])))
+  (is (= 21 (prim-6 1 2 3 4 5 6)))
+  (is (= [false true] (map prim-bool [1 5])))
+  (is (= :f (if (prim-bool 1) :t :f)))
+  (should-not-reflect #(loop [k 5] (recur (clojure.test-clojure.compilation/prim-6 k 1 2 3 4 5))))
+  (should-not-reflect #(loop [k 5] (recur (clojure.test-clojure.compilation/prim-int k 1))))
+  (testing "call sites survive redefinition"
+    (let [ns (create-ns (gensym "prim-redef"))]
+      (binding [*ns* ns]
+        (eval '(clojure.core/refer-clojure))
+        (eval '(defn f ^long [^int a ^long b ^long c ^long d ^long e] (+ a b c d e)))
+        (eval '(defn g [] (f 1 2 3 4 5)))
+        (is (= 15 (eval '(g))))
+        (eval '(defn f ^long [^int a ^long b ^long c ^long d ^long e] (* a b c d e)))
+        (is (= 120 (eval '(g))))
+        (eval '(defn f [a b c d e] 0))
+        (is (= 0 (eval '(g)))))
+      (remove-ns (.name ns)))))
+
+(defn- no-closure [] (fn [x] (inc x)))
+(defn- closure [y] (fn [x] (+ x y)))
+
+(def op-expansions (atom 0))
+(defmacro counted-op [] (swap! op-expansions inc) `identity)
+
+(deftest immediately-invoked-fns
+  (is (= 3 ((fn [x y] (+ x y)) 1 2)))
+  (testing "args are evaluated outside the params' scope"
+    (is (= [2 1] (let [x 1] ((fn [x y] [x y]) 2 x)))))
+  (testing "recur to the fn head"
+    (is (= 45 ((fn [i acc] (if (< i 10) (recur (inc i) (+ acc i)) acc)) 0 0)))
+    (is (= [45] [((fn [i acc] (if (< i 10) (recur (inc i) (+ acc i)) acc)) 0 0)]))
+    (is (= 3 (loop [i 0] (if (< i 3) (recur ((fn [x] (inc x)) i)) i)))))
+  (is (= :done ((fn self [x] (if (pos? x) (self (dec x)) :done)) 3)))
+  (is (= [5 '(6) 9] [((fn ([] 0) ([x] x)) 5) ((fn [x & r] r) 5 6) ((fn [{:keys [a]}] a) {:a 9})]))
+  (is (= 4 ((fn [x] (inc ^long x)) 3)))
+  (testing "a macro in operator position is expanded once"
+    (reset! op-expansions 0)
+    (is (= 1 ((eval '(fn [] ((clojure.test-clojure.compilation/counted-op) 1))))))
+    (is (= 1 @op-expansions))
+    (is (= 2 ((eval '(fn [] ((fn [x] ((clojure.test-clojure.compilation/counted-op) x)) 2))))))
+    (is (= 2 @op-expansions))))
+
+(deftest fn-forms-make-distinct-objects
+  (is (not (identical? (no-closure) (no-closure))))
+  (is (= 3 (count (set (for [i (range 3)] (fn [] 1))))))
+  (is (= 2 ((no-closure) 1)))
+  (is (not (identical? (closure 1) (closure 1))))
+  (is (= 3 ((closure 1) 2))))
+
+(deftest infer-types
+  (binding [*compiler-options* (assoc *compiler-options* :infer-types true)]
+    (should-not-reflect #(fn [x] (if (instance? String x) (.length x) -1)))
+    (should-not-reflect #(fn [x] (and (instance? String x) (.isEmpty x))))
+    (is (= [3 -1] (map (eval '(fn [x] (if (instance? String x) (.length x) -1))) ["abc" 1])))
+    (testing "report of remaining reflective sites"
+      (binding [*warn-on-reflection* true]
+        (is (re-find #"Reflection report, .*: 1 reflective site\(s\) left\n  .* - reference to field foo \(loop depth 1\)"
+                     (with-err-string-writer (load-string "(fn [x] (loop [] (.foo x)))")))))))
+  (should-print-err-message #"Reflection warning.*\n"
+    #(fn [x] (if (instance? String x) (.length x) -1))))
+
+(deftest constant-folding
+  (let [expr-type #(.getSimpleName (class (Compiler/analyze Compiler$C/EXPRESSION %)))]
+    (is (= "NumberExpr" (expr-type '(+ 1 2))))
+    (is (= "NumberExpr" (expr-type '(* 1.5 2))))
+    (is (= "ConstantExpr" (expr-type '(/ 1 3))))
+    (testing "calls that throw or depend on dynamic state are left alone"
+      (is (= "StaticMethodExpr" (expr-type '(/ 1 0))))
+      (is (= "StaticMethodExpr" (expr-type '(+ 1M 2))))))
+  (is (= 3 ((eval '(fn [] (+ 1 2))))))
+  (is (= 1/3 ((eval '(fn [] (/ 1 3))))))
+  (is (thrown? ArithmeticException ((eval '(fn [] (+ Long/MAX_VALUE 1))))))
+  (is (= 0.33M (with-precision 2 ((eval '(fn [] (/ 1M 3))))))))
+
+(deftest hoist-vars
+  (let [ns (create-ns (gensym "hoist-vars-example"))
+        run (fn [hoist? body]
+              (binding [*compiler-options* (assoc *compiler-options* :hoist-vars hoist?)]
+                (eval '(defn step [x] (inc x)))
+                (eval `(loop [~'i 0 ~'acc []]
+                         (if (< ~'i 3)
+                           (do (when (= ~'i 1) (alter-var-root #'~'step (constantly (constantly 2))))
+                               (recur (inc ~'i) (conj ~'acc ~body)))
+                           ~'acc)))))]
+    (binding [*ns* ns]
+      (refer-clojure)
+      (eval '(def ^:dynamic *step* 1))
+      (testing "without the option, loops see roots altered while they run"
+        (is (= [1 2 2] (run false '(step 0)))))
+      (is (= [1 1 1] (run true '(step 0))))
+      (testing "locals shadowing a hoisted var"
+        (is (= [[1 :let :letfn :arg :loop] [1 :let :letfn :arg :loop] [1 :let :letfn :arg :loop]]
+               (run true '[(step 0)
+                           (let [step (fn [_] :let)] (step 0))
+                           (letfn [(step [_] :letfn)] (step 0))
+                           ((fn [step] (step 0)) (fn [_] :arg))
+                           (loop [step (fn [_] :loop)] (step 0))]))))
+      (testing "fns made in the loop read the root when called"
+        (is (= [[1 1] [1 2] [1 2]] (run true '(let [f (fn [] (step 0))] [(step 0) (f)])))))
+      (testing "dynamic vars are not hoisted"
+        (is (= [1 2 3] (run true '(binding [*step* (inc i)] *step*))))))
+    (remove-ns (ns-name ns))))
+
 #_(deftest CLJ-1154-use-out-after-compile
   ;; This test creates a dummy file to compile, sets up a dummy
   ;; compiled output directory, and a dummy output stream, and
@@ -297,6 +407,24 @@
          (class (clojure.test_clojure.compilation.examples.T.))
          (class (clojure.test-clojure.compilation.examples/->T)))))
 
+(deftest test-merge-fns
+  (binding [*compile-path* "target/test-classes"
+            *compiler-options* (assoc *compiler-options* :merge-fns true)]
+    (compile 'clojure.test-clojure.compilation.fn-group-examples))
+  (require 'clojure.test-clojure.compilation.fn-group-examples :reload)
+  (let [f #(deref (ns-resolve 'clojure.test-clojure.compilation.fn-group-examples %))]
+    (is (re-find #"\$fn_group__" (.getName (class (f 'add)))))
+    (is (= (class (f 'add)) (class (f 'kw-sum)) (class (f 'greet)) (class (f 'fact))))
+    (is (not= (class (f 'add)) (class (f 'variadic))))
+    (is (= 3 ((f 'add) 1 2)))
+    (is (= 3 ((f 'kw-sum) {:a 1 :b 2})))
+    (is (= "hello world" ((f 'greet))))
+    (is (= "hello you" ((f 'greet) "you")))
+    (is (= 120 ((f 'fact) 5)))
+    (is (= 3 ((f 'variadic) 1 2 3)))
+    (is (thrown-with-msg? clojure.lang.ArityException #"fn-group-examples/add"
+                          ((f 'add) 1)))))
+
 (deftest clj-1568
   (let [compiler-fails-at?
           (fn [row col source]
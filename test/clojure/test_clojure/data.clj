@@ -30,3 +30,38 @@
        [{:a {:c [1]}} {:a {:c [0]}} {:a {:c [nil 2] :b 1}}] {:a {:b 1 :c [1 2]}} {:a {:b 1 :c [0 2]}}
        [{:a nil} {:a false} {:b nil :c false}] {:a nil :b nil :c false} {:a false :b nil :c false}))
 
+
+(deftype CollidingKey [n]
+  clojure.lang.IHashEq
+  (hasheq [_] 42)
+  Object
+  (hashCode [_] 42)
+  (equals [_ o] (and (instance? CollidingKey o) (= n (.n ^CollidingKey o)))))
+
+(deftest diff-of-shared-structure
+  (let [m (zipmap (range 1000) (map (fn [i] {:i i}) (range 1000)))
+        m2 (-> m (assoc-in [5 :i] :x) (dissoc 7) (assoc 1000 nil))]
+    (is (= [{5 {:i 5} 7 {:i 7}}
+            {5 {:i :x} 1000 nil}
+            (dissoc m 5 7)]
+           (diff m m2)))
+    (is (= [nil nil m] (diff m (into {} m))))
+    (is (= [{nil 1} {nil 2} m] (diff (assoc m nil 1) (assoc m nil 2)))))
+  (let [m (zipmap (range 20) (range 20))
+        k1 (->CollidingKey 1)
+        k2 (->CollidingKey 2)]
+    (is (= [{k1 :v} {k2 :v} m] (diff (assoc m k1 :v) (assoc m k2 :v))))
+    (is (= [{k1 :v} {k1 :w} (assoc m k2 :v)]
+           (diff (assoc m k1 :v k2 :v) (assoc m k2 :v k1 :w)))))
+  (let [m (into (sorted-map) (zipmap (range 1000) (range 1000)))
+        m2 (-> m (assoc 5 :x) (dissoc 7) (assoc -1 -1))]
+    (is (= [{5 5 7 7} {5 :x -1 -1} (dissoc m 5 7)] (diff m m2)))
+    (is (= [{5 5} {5 :x} (dissoc m 5)]
+           (diff m (assoc (into (sorted-map-by >) m) 5 :x)))))
+  (let [v (vec (range 1000))]
+    (is (= [[nil nil 2] [nil nil :x] (assoc v 2 nil)] (diff v (assoc v 2 :x))))
+    (is (= [nil (conj (vec (repeat 1000 nil)) 1000) v] (diff v (conj v 1000))))
+    (is (= [(assoc (vec (repeat 1000 nil)) 998 998 999 999) nil (pop (pop v))]
+           (diff v (pop (pop v)))))
+    (is (= [[nil {:a 1}] [nil {:a 2}] (into [0 {:b 0}] (range 40))]
+           (diff (into [0 {:a 1 :b 0}] (range 40)) (into [0 {:a 2 :b 0}] (range 40)))))))
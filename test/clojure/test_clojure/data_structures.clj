@@ -14,7 +14,8 @@
         [clojure.test.generative :exclude (is)])
   (:require [clojure.test-clojure.generators :as cgen]
             [clojure.data.generators :as gen]
-            [clojure.string :as string]))
+            [clojure.string :as string]
+            [clojure.core.reducers :as r]))
 
 
 ;; *** Helper functions ***
@@ -965,6 +966,45 @@
       (disj #{#{nil}} #{nil}) #{} ))
 
 
+;; *** B+tree maps and sets ***
+
+(deftest test-btree-maps-and-sets
+  (let [ks (shuffle (range 2000))
+        ops (map vector ks (cycle [:assoc :assoc :dissoc]))
+        edit (fn [m [k op]] (if (= op :assoc) (assoc m k (- k)) (dissoc m k)))
+        s (reduce edit (sorted-map) ops)
+        b (reduce edit (btree-map) ops)]
+    (is (= s b))
+    (is (= b s))
+    (is (= (hash s) (hash b)))
+    (is (= (seq s) (seq b)))
+    (is (= (rseq s) (rseq b)))
+    (is (= (get s 7 :none) (get b 7 :none)))
+    (is (= (nth (seq s) 500) (nth b 500)))
+    (is (= 500 (.rank b (key (nth b 500)))))
+    (is (= (reduce-kv #(+ %1 %2 %3) 0 s) (reduce-kv #(+ %1 %2 %3) 0 b)))
+    (is (= (r/fold 10 + #(+ %1 %2 %3) s) (r/fold 10 + #(+ %1 %2 %3) b)))
+    (doseq [k [-1 0 7 1000 1999 2000]
+            test [< <= > >=]]
+      (is (= (subseq s test k) (subseq b test k)))
+      (is (= (rsubseq s test k) (rsubseq b test k))))
+    (is (= (subseq s > 100 <= 200) (subseq b > 100 <= 200)))
+    (is (= {} (reduce dissoc b (keys b)))))
+  (let [s (apply btree-set (shuffle (range 100)))]
+    (is (= (range 100) (seq s)))
+    (is (= (range 99 -1 -1) (rseq s)))
+    (is (= 50 (nth s 50)))
+    (is (= (set (range 100)) s))
+    (is (= (range 10 20) (subseq s >= 10 < 20)))
+    (is (= (reduce + (range 100)) (r/fold 8 + + s))))
+  (are [x y] (= x y)
+    {1 3 2 2} (btree-map 1 1 2 2 1 3)
+    [3 2 1] (keys (btree-map-by > 1 1 3 3 2 2))
+    ["a" "b"] (seq (btree-set-by #(compare (.toLowerCase %1) (.toLowerCase %2)) "a" "A" "b"))
+    nil (seq (btree-map))
+    {:m 1} (meta (assoc (with-meta (btree-map) {:m 1}) 1 1))))
+
+
 ;; *** Queues ***
 
 (deftest test-queues
@@ -989,6 +1029,36 @@
                     (into (range 7))
                     pop))))
 
+(deftest queue-and-list-reduce-and-chunks
+  (let [EMPTY clojure.lang.PersistentQueue/EMPTY
+        stop-at-50 (fn [a x] (if (= x 50) (reduced a) (+ a x)))]
+    (doseq [n [0 1 32 33 100]
+            pops [0 1 40]
+            :let [expected (drop pops (range n))
+                  q (nth (iterate pop (into EMPTY (range n))) pops)
+                  l (apply list expected)]
+            c [q l]]
+      (is (= (seq expected) (seq c) (seq (map identity c))))
+      (is (= (filter odd? expected) (filter odd? c)))
+      (is (= (reduce + expected) (reduce + c) (reduce + 0 c)))
+      (is (= (reduce conj [] expected) (reduce conj [] c)))
+      (is (= (reduce stop-at-50 0 expected) (reduce stop-at-50 0 c)))
+      (is (= (into [] (map inc) expected) (into [] (map inc) c)))
+      (when (and (seq c) (instance? clojure.lang.PersistentQueue c))
+        (let [s (seq c)
+              ch (chunk-first s)]
+          (is (chunked-seq? s))
+          (is (= expected (concat (map #(nth ch %) (range (count ch))) (chunk-rest s))))))))
+  (testing "lists are not chunked, map and filter over them realize one item at a time"
+    (let [realized (atom 0)
+          l (apply list (range 100))]
+      (is (not (chunked-seq? (seq l))))
+      (is (= 0 (first (map #(do (swap! realized inc) %) l))))
+      (is (= 1 @realized))))
+  (is (= 0 (reduce + ())))
+  (is (= 5 (reduce + 5 ())))
+  (is (= [:a :b] (reduce conj [] (conj clojure.lang.PersistentQueue/EMPTY :a :b)))))
+
 
 (deftest test-duplicates
   (let [equal-sets-incl-meta (fn [s1 s2]
@@ -1138,6 +1208,92 @@
     (doseq [m1 maps1, m2 maps1]
       (is-same-collection m1 m2))))
 
+;; equiv of same-class collections skips shared structure
+
+(deftype CollidingKey [n]
+  clojure.lang.IHashEq
+  (hasheq [_] 42)
+  Object
+  (hashCode [_] 42)
+  (equals [_ o] (and (instance? CollidingKey o) (= n (.n ^CollidingKey o)))))
+
+(deftest shared-structure-equality-test
+  (let [m (zipmap (range 2000) (range 2000))]
+    (is (= m (assoc m 5 5)))
+    (is (not= m (assoc m 5 6)))
+    (is (= m (dissoc (assoc m :x 1) :x)))
+    (is (= m (into {} (reverse (seq m)))))
+    (is (= m (-> m (dissoc 7 1500) (assoc 1500 1500 7 7))))
+    (is (= (assoc m 1 1.0) (assoc m 1 1.0)))
+    (is (not= (assoc m 2000 1) (assoc m 2001 1)))
+    (is (= (assoc m nil 1) (assoc m nil 1)))
+    (is (not= (assoc m nil 1) (assoc m nil 2)))
+    (is (not= (assoc m nil 1) (assoc m -1 1)))
+    (let [m2 (assoc m 1 :x)]
+      (hash m) (hash m2)
+      (is (not= m m2))))
+  (testing "maps of different shapes"
+    (let [ks (range 40)
+          a (reduce #(assoc %1 %2 %2) {} ks)
+          b (reduce #(dissoc %1 %2) (reduce #(assoc %1 %2 %2) {} (range 200)) (range 40 200))]
+      (is (= a b))
+      (is (= b a))
+      (is (not= a (assoc b 3 4)))
+      (is (not= (assoc b 3 4) a))))
+  (testing "hash collisions"
+    (let [ks (map ->CollidingKey (range 5))
+          a (zipmap ks (range))
+          b (zipmap (reverse ks) (reverse (range 5)))]
+      (is (= a b))
+      (is (not= a (assoc b (->CollidingKey 0) 1)))
+      (is (= (set ks) (set (reverse ks))))))
+  (testing "emptied maps and sets whose root is left a node"
+    (doseq [n [1 2 33]
+            :let [xs (range n)
+                  s (reduce disj (set xs) xs)
+                  m (reduce dissoc (zipmap xs xs) xs)]]
+      (is (= s (hash-set) s))
+      (is (= (hash-set) s))
+      (is (= m (hash-map)))
+      (is (= (hash-map) m))))
+  (let [s (set (range 2000))]
+    (is (= s (conj s 5)))
+    (is (= s (disj (conj s 2000) 2000)))
+    (is (not= s (conj (disj s 1) 2000)))
+    (is (= (conj s 1.5) (conj s 1.5)))
+    (is (not= (conj s 1.5) (conj s 2.5))))
+  (let [v (vec (range 5000))]
+    (is (= v (assoc v 4000 4000)))
+    (is (not= v (assoc v 4000 0)))
+    (is (not= v (assoc v 10 0)))
+    (is (= (assoc v 10 1N) (assoc v 10 1)))
+    (is (= v (pop (conj v 1))))
+    (is (not= v (conj (pop v) 0)))
+    (is (= v (into [] (range 5000))))
+    (let [v2 (assoc v 0 :x)]
+      (hash v) (hash v2)
+      (is (not= v v2))))
+  (testing "= is the same before and after hashing, for items = but not hashing alike"
+    (let [big (vec (range 100))
+          pairs [[[0.0 1] [-0.0 1]]
+                 [[(float 1.5) 1] [1.5 1]]
+                 [(conj big 0.0) (conj big -0.0)]
+                 [(hash-map :k 0.0) (hash-map :k -0.0)]
+                 [(hash-map :k (float 1.5)) (hash-map :k 1.5)]
+                 [(hash-set 0.0) (hash-set -0.0)]
+                 [(hash-set (float 1.5)) (hash-set 1.5)]]]
+      (is (= [0.0 1] [-0.0 1]))
+      (doseq [[a b] pairs
+              :let [before [(= a b) (= b a)]]]
+        (hash a) (hash b)
+        (is (= before [(= a b) (= b a)])))
+      (let [[a b] [[0.0 1] [-0.0 1]]]
+        (hash a) (hash b)
+        (is (= a b)))
+      (let [[a b] [(hash-map :k 0.0) (hash-map :k -0.0)]]
+        (hash a) (hash b)
+        (is (= a b))))))
+
 ;; *** Collection hashes ***
 ;; See: http://clojure.org/data_structures#hash
 
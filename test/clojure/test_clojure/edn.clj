@@ -10,6 +10,7 @@
 
 
 (ns clojure.test-clojure.edn
+  (:use clojure.test)
   (:require [clojure.test.generative :refer (defspec)]
             [clojure.test-clojure.generators :as cgen]
             [clojure.edn :as edn]))
@@ -36,3 +37,58 @@
   [^{:tag cgen/non-ednable} o]
   (when-not (instance? Throwable %)
     (throw (ex-info "edn/read should have thrown, see ex-data" {:printed o :read %}))))
+
+(defn buffer-roundtrip
+  "Like roundtrip, reading with a buffer-reader."
+  [o]
+  (binding [*print-length* nil
+            *print-dup* nil
+            *print-level* nil]
+    (try
+     (edn/read {} (edn/buffer-reader (pr-str o)))
+     (catch Throwable t t))))
+
+(defspec types-that-should-roundtrip-buffered
+  buffer-roundtrip
+  [^{:tag cgen/ednable} o]
+  (when-not (= o %)
+    (throw (ex-info "Value cannot roundtrip, see ex-data" {:printed o :read %}))))
+
+(defn read-result [f s]
+  (try
+    (let [v (f s)] [v (map class (tree-seq coll? seq v)) (meta v)])
+    (catch Exception e [(class e) (.getMessage e)])))
+
+(deftest buffer-reader-matches-edn-read
+  (doseq [s ["0" "-0" "07" "09" "0x1F" "36rZZ" "1N" "1234567890123456789" "99999999999999999999"
+             "1.5" "-0.0" "1." "1E-5" "1.5M" "1e" "00.5" "-3/6" "1e23" "12345678901234567e-3"
+             "foo" ":foo/bar" "a/b/c" "/" "foo/" "a/1" ":1" "::foo" "foo:" "-a" "a#b" "nil?" ":é" "a@b" "@a"
+             "\"a\\nb\"" "\"\\u00e9\"" "\"\\u00e\"" "\"\\101\"" "\"\\18\"" "\"abc" "\\a" "\\newline" "\\o101" "\\abc"
+             "{:a 1 :a 2}" "{:a}" "#{1 1}" "[1 2" "]" "#" "#_ 1 2" "; c\n5" "^:a [1]" "^1 []" "#<foo>" "#foo 1" "#1 2"
+             "#inst \"2010-01-01T00:00:00Z\"" "{:a [1 {:b #{:c}}] \"x\" (1.5 -2 3/4)}" ""
+             "[]" "[1 2]" "[[1] [2 3 4 5 6 7 8]]" "[1 2 3 4 5 6 7]"]]
+    (is (= (read-result #(edn/read-string {:eof ::eof} %) s)
+           (read-result #(edn/read {:eof ::eof} (edn/buffer-reader %)) s)
+           (read-result #(edn/read {:eof ::eof} (edn/buffer-reader (java.io.StringReader. %))) s))
+        s))
+  (testing "successive reads"
+    (let [s (apply str (repeat 2000 "{:k \"v\" :n [1.5 sym]} "))
+          r (edn/buffer-reader (java.io.StringReader. s))]
+      (is (= (repeat 2000 '{:k "v" :n [1.5 sym]})
+             (take-while #(not= ::eof %) (repeatedly #(edn/read {:eof ::eof} r))))))))
+
+(deftest read-elements
+  (is (= [2 3 4] (into [] (map inc) (edn/read-elements "[1 2 3]"))))
+  (is (= '[a c] (vec (edn/read-elements " ; c\n #_ x (a #_b c ;d\n)"))))
+  (is (= '({:a 1} #{2}) (seq (edn/read-elements (java.io.StringReader. "[{:a 1} #{2}]")))))
+  (testing "reduction stops reading when reduced"
+    (is (= 6 (transduce (comp (filter even?) (take 2)) + (edn/read-elements "[1 2 3 4 5")))))
+  (testing "the reader can be read from afterwards"
+    (let [r (edn/buffer-reader "[1 2] [3]")]
+      (is (= [1 2] (vec (edn/read-elements r))))
+      (is (= [3] (edn/read {} r)))))
+  (is (thrown-with-msg? RuntimeException #"Expected a vector or list" (vec (edn/read-elements "{:a 1}"))))
+  (is (thrown-with-msg? RuntimeException #"EOF while reading" (vec (edn/read-elements "[1 2"))))
+  (let [e (edn/read-elements "[1]")]
+    (vec e)
+    (is (thrown? IllegalStateException (vec e)))))
@@ -9,6 +9,7 @@
 (ns clojure.test-clojure.java.io
   (:use clojure.test clojure.java.io
         [clojure.test-helper :only [platform-newlines]])
+  (:require clojure.edn clojure.string)
   (:import (java.io File BufferedInputStream
                     FileInputStream InputStreamReader InputStream
                     FileOutputStream OutputStreamWriter OutputStream
@@ -226,3 +227,50 @@
       (is (instance? OutputStream (output-stream client-socket)))
       (finally (.close server-socket)
                (.close client-socket)))))
+
+(deftest test-mapped-input
+  (let [f (temp-file "clojure.java.io" "test-mapped")
+        content "one\r\ntwo \u00e9\n\nthree\rfour"
+        lines ["one" "two \u00e9" "" "three" "four"]]
+    (doseq [enc ["UTF-8" "ISO-8859-1" "UTF-16"]]
+      (spit f content :encoding enc)
+      (is (= lines (into [] (mapped-lines f :encoding enc))))
+      (is (= ["one"] (reduce #(reduced [%2]) nil (mapped-lines f :encoding enc))))
+      (is (= content (str (mapped-chars f :encoding enc))))
+      (is (= ["two" "three" "four"] (re-seq #"t\w+|f\w+" (mapped-chars f :encoding enc)))))
+    (testing "ascii text is a view of the mapped bytes"
+      (spit f "(a b)\n{:c [1 2]}")
+      (let [s (mapped-chars f)]
+        (is (instance? clojure.lang.MappedFile$ByteChars s))
+        (is (= ["a" "b"] (clojure.string/split (.subSequence s 1 4) #" ")))))
+    (testing "readers"
+      (spit f "(a b)\n{:c [1 2 \"\u00e9\"]}")
+      (with-open [r (mapped-reader f)]
+        (is (= '(a b) (read r)))
+        (is (= {:c [1 2 "\u00e9"]} (clojure.edn/read r)))
+        (is (= 2 (.getLineNumber r)))
+        (is (= -1 (.read r)))))
+    (spit f "")
+    (is (= [] (into [] (mapped-lines f))))
+    (is (= "" (str (mapped-chars f))))))
+
+(deftest test-reducible-records
+  (let [f (temp-file "clojure.java.io" "test-records")
+        closed (atom 0)
+        stream #(proxy [ByteArrayInputStream] [(.getBytes "ab,c\r\n\r\nd,,efg\rh" "UTF-8")]
+                  (close [] (swap! closed inc)))]
+    (is (= ["ab,c" "" "d,,efg" "h"] (into [] (reducible-lines (stream)))))
+    (is (= 1 @closed))
+    (is (= "ab,c" (reduce (fn [_ line] (reduced line)) nil (reducible-lines (stream)))))
+    (is (= 2 @closed))
+    (is (thrown? ArithmeticException
+                 (reduce (fn [_ _] (/ 1 0)) nil (reducible-lines (stream)))))
+    (is (= 3 @closed))
+    (is (= "ab,c||d,,efg|h" (reduce #(str %1 "|" %2) (reducible-lines (stream)))))
+    (is (= [["ab" "c"] [""] ["d" "" "efg"] ["h"]] (into [] (delimited-records (stream) \,))))
+    (is (= [["ab" ",c"] ["" ""] ["d," ",e"] ["h" ""]] (into [] (fixed-width-records (stream) [2 2]))))
+    (spit f "caf\u00e9\nna\u00efve" :encoding "ISO-8859-1")
+    (is (= ["caf\u00e9" "na\u00efve"] (into [] (reducible-lines f :encoding "ISO-8859-1"))))
+    (is (= ["caf\u00e9" "na\u00efve"] (into [] (reducible-lines (java.io.StringReader. "caf\u00e9\nna\u00efve")))))
+    (spit f "" )
+    (is (= 0 (reduce + (reducible-lines f))))))
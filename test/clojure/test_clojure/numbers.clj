@@ -799,3 +799,35 @@ Math/pow overflows to Infinity."
        (<= 1000 Double/NaN) (<= 1000 (Double. Double/NaN))
        (> 1000 Double/NaN) (> 1000 (Double. Double/NaN))
        (>= 1000 Double/NaN) (>= 1000 (Double. Double/NaN))))
+
+(deftest boxed-long-and-double-arithmetic
+  (let [box identity
+        lmax (box Long/MAX_VALUE)
+        lmin (box Long/MIN_VALUE)]
+    (testing "overflow of boxed longs"
+      (is (thrown? ArithmeticException (+ lmax (box 1))))
+      (is (thrown? ArithmeticException (- lmin (box 1))))
+      (is (thrown? ArithmeticException (* lmax (box 2))))
+      (is (thrown? ArithmeticException (inc lmax)))
+      (is (thrown? ArithmeticException (dec lmin)))
+      ;; as (+ x (- y)), which overflows for Long/MIN_VALUE
+      (is (thrown? ArithmeticException (- (box -1) lmin)))
+      (is (= (+ 1N Long/MAX_VALUE) (+' lmax (box 1)) (inc' lmax)))
+      (is (= (- Long/MIN_VALUE 1N) (-' lmin (box 1)) (dec' lmin)))
+      (is (= 9223372036854775807N (-' (box -1) lmin)))
+      (is (instance? clojure.lang.BigInt (-' (box -1) lmin)))
+      (is (= (* 2N Long/MIN_VALUE) (*' lmin (box 2))))
+      (is (= (* -1N Long/MIN_VALUE) (*' lmin (box -1)))))
+    (testing "mixed longs and doubles"
+      (is (= 3.5 (+ (box 1) (box 2.5)) (+ (box 2.5) (box 1)) (+' (box 1) (box 2.5))))
+      (is (= -1.5 (- (box 1) (box 2.5)) (-' (box 1) (box 2.5))))
+      (is (= 5.0 (* (box 2) (box 2.5))))
+      (is (< (box 1) (box 1.5) (box 2)))
+      (is (== (box 2) (box 2.0)))
+      (is (not (= (box 2) (box 2.0))))
+      (is (= -1 (compare (box 1) (box 1.5))))
+      (is (= 0 (compare (box 1.0) (box Double/NaN)))))
+    (testing "small longs"
+      (is (= -1024 (dec (box -1023))))
+      (is (= 1024 (inc (box 1023))))
+      (is (= [-1025 -1024 1023 1024] (map #(+ % (box 0)) [-1025 -1024 1023 1024]))))))
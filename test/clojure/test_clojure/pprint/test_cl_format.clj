@@ -823,3 +823,11 @@ but it was called with an argument of type short-float.\n")
 |    -2/3 |    | panda |            dog |
 "
   )
+
+(deftest format-string-cache
+  (let [fs (map #(str "~a-~d-~s " %) (range 1000))]
+    (is (= (map #(str "x-1-\"y\" " %) (range 1000))
+           (map #(cl-format nil % "x" 1 "y") fs)
+           (map #(cl-format nil % "x" 1 "y") fs))))
+  (is (<= (.size ^java.util.Map @#'clojure.pprint/format-cache)
+          @#'clojure.pprint/format-cache-size)))
@@ -369,3 +369,19 @@ It is implemented with a number of custom enlive templates.\"
       (pprint (range 50)))
     (is (= @flush-count-atom 0) "pprint flushes on newline")))
 
+
+(deftest test-pretty-writer-streams
+  (let [sw (java.io.StringWriter.)
+        w (binding [*print-right-margin* 20] (get-pretty-writer sw))]
+    (binding [*out* w]
+      (pprint-logical-block :prefix "[" :suffix "]"
+        (dotimes [i 1000]
+          (print i)
+          (pprint-newline :fill)
+          (print " ")))
+      (is (pos? (.length (.getBuffer sw))) "output is written before the block ends"))
+    (.flush w)
+    (let [lines (str/split-lines (str sw))]
+      (is (= (range 1000) (map #(Long/parseLong %) (mapcat #(re-seq #"\d+" %) lines))))
+      (is (every? #(< (count %) 20) lines)))
+    (is (identical? sw (:base @@(:base @@w))))))
@@ -119,3 +119,30 @@
        #'var-with-meta "#'clojure.test-clojure.printer/var-with-meta"
        #'var-with-type "#'clojure.test-clojure.printer/var-with-type"))
 
+(defrecord PrintRecord [a])
+
+(defn- print-method-str
+  "pr-str of x with every value going through print-method."
+  [x]
+  (with-redefs-fn {#'clojure.core/builtin-print-methods nil} #(pr-str x)))
+
+(deftest direct-printing-matches-print-method
+  (let [vals [nil true 1 -42 Long/MIN_VALUE 1.5 -0.0 Double/NaN (float 2.5) (int 3) 1/3 7N 1.5M (biginteger 5)
+              "a\"b\\c\n\t\r\f\b" \a \newline \space \" :k :n/k 'sym '() '(1 2) [1 [2]] (first {:a 1})
+              {} {:a 1 "b" [2]} (zipmap (range 20) (range 20)) #{1 :a} (sorted-map 2 1 1 2) (range 3) (lazy-seq nil)
+              (subvec [1 2 3] 1) (vector-of :long 1 2) (->PrintRecord {:b 1}) #"a\"b" (java.util.ArrayList. [1 {:a 1}])
+              (with-meta [1] {:tag 'x}) (with-meta 'a {:a 1}) (with-meta {:a 1} {:type :foo})]]
+    (doseq [v vals]
+      (is (= (print-method-str v) (pr-str v))))
+    (binding [*print-meta* true]
+      (is (= (print-method-str vals) (pr-str vals))))
+    (binding [*print-length* 1 *print-level* 2]
+      (is (= (print-method-str vals) (pr-str vals))))))
+
+(deftest direct-printing-respects-print-method
+  (try
+    (defmethod print-method clojure.lang.PersistentArrayMap [m ^java.io.Writer w] (.write w "#am"))
+    (is (= "[#am #{#am}]" (pr-str [{:a 1} #{{}}])))
+    (finally
+      (remove-method print-method clojure.lang.PersistentArrayMap)))
+  (is (= "[{:a 1}]" (pr-str [{:a 1}]))))
@@ -12,7 +12,8 @@
 (ns clojure.test-clojure.serialization
   (:use clojure.test)
   (:import (java.io ObjectOutputStream ObjectInputStream
-             ByteArrayOutputStream ByteArrayInputStream)))
+             ByteArrayOutputStream ByteArrayInputStream)
+           (clojure.lang BinaryWriter BinaryReader)))
 
 (defn- serialize
   "Serializes a single object, returning a byte array."
@@ -166,4 +167,51 @@
 
     ;; stateful seqs
     (enumeration-seq (java.util.Collections/enumeration (range 50)))
-    (iterator-seq (.iterator (range 50)))))
\ No newline at end of file
+    (iterator-seq (.iterator (range 50)))))
+
+(defn- binary-roundtrip
+  [v]
+  (let [rt (BinaryReader/fromBytes (BinaryWriter/toBytes v))]
+    (and (= v rt) (= (class v) (class rt)) (= (meta v) (meta rt)))))
+
+(deftest binary-serialization
+  (are [val] (binary-roundtrip val)
+    nil true false 0 -32 95 96 Long/MIN_VALUE Long/MAX_VALUE 1.5 -0.0 (float 1.5) (int -3)
+    -7/2 12345678901234567890N -3.2e-10M "" "\u00e9\u20ac\ud83d\ude00" (apply str (repeat 5000 "x\u20ac"))
+    \a :k :n/k 'n/sym [1 [2 [3]]] (into [] (range 100)) {:a 1 "b" [2]} (zipmap (range 50) (range 50))
+    #{1 :a "s"} (sorted-map 3 1 1 2) (sorted-set 3 1 2) (java.util.Date. 12345) (java.util.UUID. 1 2)
+    (with-meta [1] {:tag 'x}) (with-meta 'a {:a 1}) (tagged-literal 'foo/bar [1 2]) [:k :k 'n/s 'n/s])
+  (is (= '(0 1 2) (BinaryReader/fromBytes (BinaryWriter/toBytes (range 3)))))
+  (is (= [1 2] (BinaryReader/fromBytes (BinaryWriter/toBytes (java.util.ArrayList. [1 2])))))
+  (is (thrown? IllegalArgumentException (BinaryWriter/toBytes (->SerializationRecord 1 2 3))))
+  (is (thrown? IllegalArgumentException (BinaryWriter/toBytes (sorted-map-by > 1 2))))
+  (is (thrown-with-msg? RuntimeException #"bad header" (BinaryReader/fromBytes (.getBytes "nope!"))))
+  (is (thrown-with-msg? RuntimeException #"EOF" (BinaryReader/fromBytes (java.util.Arrays/copyOf (BinaryWriter/toBytes [1 2 3]) 7)))))
+
+(deftest binary-streams-and-handlers
+  (let [bout (ByteArrayOutputStream.)
+        w (BinaryWriter. bout {:handlers {SerializationRecord #(tagged-literal 'test/R (into {} %))}})
+        rec (->SerializationRecord 1 2 3)]
+    (.write w [rec :x])
+    (.write w :x)
+    (.flush w)
+    (let [bytes (.toByteArray bout)
+          r (BinaryReader. (ByteArrayInputStream. bytes) {:readers {'test/R map->SerializationRecord}})]
+      (is (= [rec :x] (.read r)))
+      (is (= :x (.read r)))
+      (is (= ::eof (.read r false ::eof)))
+      (is (= (tagged-literal 'test/R {:a 1 :b 2 :c 3})
+             (first (BinaryReader/fromBytes bytes)))))))
+
+(deftest binary-strings-are-utf-8
+  (let [s "a\u00e9\u20ac\ud83d\ude00"
+        bytes (BinaryWriter/toBytes s)
+        utf8 (.getBytes s "UTF-8")]
+    (is (= 4 (- (count utf8) 6)))
+    (is (= (seq utf8) (take-last (count utf8) bytes))))
+  (doseq [s ["\ud83d\ude00"
+             (str (apply str (repeat 1023 "x")) "\ud83d\ude00" "y")
+             (apply str (repeat 3000 "\ud834\udd1e\u20ac"))
+             "unpaired \ud83d and \ude00"]]
+    (is (= s (BinaryReader/fromBytes (BinaryWriter/toBytes s))))
+    (is (= [s s] (.read (BinaryReader. (ByteArrayInputStream. (BinaryWriter/toBytes [s s])) {}))))))
@@ -53,3 +53,33 @@
         t2 @(future (conj! t 4))
         p (persistent! t2)]
     (is (= [1 2 3 4] p))))
+
+(deftest sorted-transients
+  (let [ks (shuffle (range 500))
+        m (into (sorted-map) (map vector (range 0 500 2) (range 0 500 2)))
+        ops (map vector ks (cycle [:assoc :assoc :dissoc]))
+        edit (fn [assoc dissoc]
+               (fn [m [k op]] (if (= op :assoc) (assoc m k (- k)) (dissoc m k))))
+        t (reduce (edit assoc! dissoc!) (transient m) ops)
+        p (persistent! t)]
+    (is (= (reduce (edit assoc dissoc) m ops) p))
+    (is (= (range 0 500 2) (keys m)) "source unchanged")
+    (is (= (sort (keys p)) (keys p)))
+    (is (= (assoc p 1000 0) (persistent! (assoc! (transient p) 1000 0))))
+    (is (thrown? IllegalAccessError (assoc! t 1 1))))
+  (let [s (sorted-set-by > 1 2)]
+    (is (= [5 4 3 2 1] (seq (into s [3 5 4 3]))))
+    (is (= [2] (seq (persistent! (disj! (transient s) 1))))))
+  (let [ci #(compare (.toLowerCase ^String %1) (.toLowerCase ^String %2))]
+    (is (= "a" (get (into (sorted-set-by ci "a") ["A"]) "A")))
+    (is (= "a" (first (into (sorted-set-by ci) ["a" "A"]))))))
+
+(deftest sorted-build
+  (are [x y] (= x y)
+    (range 100) (keys (apply sorted-map (interleave (range 100) (range 100))))
+    (range 100) (seq (apply sorted-set (range 100)))
+    (reverse (range 100)) (seq (apply sorted-set-by > (reverse (range 100))))
+    {1 3 2 2} (sorted-map 1 1 2 2 1 3)
+    [[1 :a] [2 :b]] (seq (sorted-map 2 :b 1 :a))
+    #{} (sorted-set)
+    [1] (seq (sorted-set 1 1))))
@@ -9,7 +9,8 @@
 ; Author: Stuart Halloway, Daniel Solano Gómez
 
 (ns clojure.test-clojure.vectors
-  (:use clojure.test))
+  (:use clojure.test)
+  (:require clojure.edn))
 
 (deftest test-reversed-vec
   (let [r (range 6)
@@ -407,3 +408,112 @@
   (is (= [0 1 2 3] (vec (reify clojure.lang.IReduceInit
                           (reduce [_ f start]
                             (reduce f start (range 4))))))))
+
+(deftest test-numeric-array-ops
+  (doseq [[t arr] [[:long long-array] [:double double-array] [:int int-array]]
+          n [0 1 31 32 33 100 1056 1057 40000]]
+    (let [xs (map #(- (* 7 (rem (* % 31) 101)) 350) (range n))
+          a (arr xs)
+          v (into (vector-of t) xs)
+          same (fn [expected & actual]
+                 (apply = (mapv double expected) (map #(mapv double %) actual)))]
+      (testing (str t " " n)
+        (is (== (reduce + 0 xs) (asum a) (asum v)))
+        (is (== (reduce + 0 (map * xs xs)) (adot a a) (adot v v)))
+        (is (same (map #(+ (* 3 %) %) xs) (axpy 3 a a) (axpy 3 v v)))
+        (is (same (rest (reductions + 0 xs)) (aprefix-sum a) (aprefix-sum v)))
+        (is (same (sort xs) (asort a) (asort v)))
+        (is (= (into (vector-of t) (sort xs)) (asort v)))
+        (is (same (conj (vec (sort xs)) 5) (conj (asort v) 5)))
+        (when (pos? n)
+          (is (== (apply min xs) (amin a) (amin v)))
+          (is (== (apply max xs) (amax a) (amax v)))
+          (is (same (pop (vec (sort xs))) (pop (asort v)))))
+        (is (= n (reduce + (ahistogram a 7 -350 350)) (reduce + (ahistogram v 7 -350 350)))))))
+  (testing "histogram bins"
+    (is (= [1 0 0 3] (vec (ahistogram (long-array [3 1 2 -5]) 4 -5 3))))
+    (is (= [1 1] (vec (ahistogram (double-array [0.0 1.0 Double/NaN 1.5 -0.5]) 2 0 1)))))
+  (testing "integer overflow throws, as with + and *"
+    (is (thrown? ArithmeticException (asum (long-array [Long/MAX_VALUE 1]))))
+    (is (thrown? ArithmeticException (adot (long-array [Long/MAX_VALUE]) (long-array [2]))))
+    (is (thrown? ArithmeticException (axpy 2 (long-array [Long/MAX_VALUE]) (long-array [0]))))
+    (is (thrown? ArithmeticException (aprefix-sum (int-array [Integer/MAX_VALUE 1]))))
+    (is (thrown? ArithmeticException (axpy 2 (int-array [Integer/MAX_VALUE]) (int-array [0]))))
+    (is (= 0 (adot (long-array [3000000000 -3000000000]) (long-array [2 2]))))
+    (is (= (* 2 Integer/MAX_VALUE) (asum (int-array [Integer/MAX_VALUE Integer/MAX_VALUE])))))
+  (testing "arguments"
+    (is (thrown? IllegalArgumentException (axpy 1.5 (long-array [2]) (long-array [0]))))
+    (is (thrown? IllegalArgumentException (axpy 1/2 (int-array [2]) (int-array [0]))))
+    (is (thrown? IllegalArgumentException (axpy 2.0 (vector-of :long 2) (vector-of :long 0))))
+    (is (= [4 6]
+           (vec (axpy 2N (long-array [2 3]) (long-array [0 0])))
+           (vec (axpy (short 2) (int-array [2 3]) (int-array [0 0])))))
+    (is (= [3.0] (vec (axpy 1.5 (double-array [2]) (double-array [0])))))
+    (is (thrown? IllegalArgumentException (asum [1 2])))
+    (is (thrown? IllegalArgumentException (asum (vector-of :float 1))))
+    (is (thrown? IllegalArgumentException (adot (long-array 2) (double-array 2))))
+    (is (thrown? IllegalArgumentException (adot (long-array 2) (long-array 3))))
+    (is (thrown? IllegalArgumentException (amin (long-array 0))))
+    (is (thrown? IllegalArgumentException (ahistogram (long-array 1) 0 0 1)))))
+
+
+(deftest test-tuples
+  (let [x 1]
+    (testing "small vectors are tuples"
+      (is (instance? clojure.lang.Tuple$T1 [x]))
+      (is (instance? clojure.lang.Tuple$T3 [x 2 3]))
+      (is (instance? clojure.lang.Tuple$T6 [1 2 3 4 5 6]))
+      (is (instance? clojure.lang.Tuple$T5 (vector x 2 3 4 5)))
+      (is (instance? clojure.lang.Tuple$T6 (apply vector (range 6))))
+      (is (instance? clojure.lang.PersistentVector [x 2 3 4 5 6 7]))
+      (is (instance? clojure.lang.PersistentVector (vector 1 2 3 4 5 6 7)))
+      (is (identical? [] (vector))))
+    (testing "the edn reader reads the same classes as the reader"
+      (doseq [s ["[]" "[1]" "[1 2 3]" "[1 2 3 4 5 6]" "[1 2 3 4 5 6 7]" "{:a [[1 2] [3]]}"]]
+        (is (= (read-string s) (clojure.edn/read-string s)))
+        (is (= (map class (tree-seq coll? seq (read-string s)))
+               (map class (tree-seq coll? seq (clojure.edn/read-string s)))))))
+    (testing "conj, pop and assoc"
+      (is (instance? clojure.lang.Tuple$T4 (conj [x 2 3] 4)))
+      (is (instance? clojure.lang.PersistentVector (conj [x 2 3 4 5 6] 7)))
+      (is (= [1 2 3 4 5 6 7] (conj [x 2 3 4 5 6] 7)))
+      (is (= [1 2] (pop [x 2 3])))
+      (is (= [] (pop [x])))
+      (is (= [1 :b 3] (assoc [x 2 3] 1 :b)))
+      (is (= [1 2 3 4] (assoc [x 2 3] 3 4)))
+      (is (thrown? IndexOutOfBoundsException (assoc [x 2 3] 4 4)))
+      (is (thrown? IndexOutOfBoundsException (nth [x 2 3] 3)))
+      (is (= :nf (nth [x 2 3] 3 :nf)))
+      (is (= 3 (peek [x 2 3])))
+      (is (= [1 2 3 4 5 6 7 8] (reduce conj [x] (range 2 9)))))
+    (testing "same as other vectors"
+      (doseq [n (range 1 7)
+              :let [t (apply vector (range n))
+                    v (into [] (range n))]]
+        (is (instance? clojure.lang.Tuple$ATuple t))
+        (is (instance? clojure.lang.PersistentVector v))
+        (is (= t v))
+        (is (= v t))
+        (is (.equals t v))
+        (is (.equals v t))
+        (is (= (hash t) (hash v)))
+        (is (= (.hashCode t) (.hashCode v)))
+        (is (= (seq t) (seq v)))
+        (is (= 0 (compare t v)))
+        (is (= (pr-str v) (pr-str t)))
+        (is (= v (read-string (binding [*print-dup* true] (pr-str t)))))
+        (is (= v (persistent! (transient t))))
+        (is (= (reduce + v) (reduce + t) (transduce (map identity) + t) (reduce + 0 t)))
+        (is (= (reduce-kv + 0 v) (reduce-kv + 0 t)))
+        (is (= v (into [] t)))
+        (is (= (set v) (set t)))
+        (is (= 1 (get {t 1} v) (get {v 1} t)))))
+    (testing "equality with mixed numbers"
+      (is (= [x 2.0] [1 2.0]))
+      (is (= [x 2] '(1 2)))
+      (is (not= [x 2] [1 2 3]))
+      (is (not= [x 2] [2 1])))
+    (testing "metadata makes a PersistentVector"
+      (let [t (with-meta [x 2] {:a 1})]
+        (is (= {:a 1} (meta t)))
+        (is (= [1 2] t))))))